@@ -0,0 +1,389 @@
+package jpabook.jpashop.mapper.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * {@code @MapFrom} 이 붙은 DTO 마다 {DTO}Mapper 소스를 생성한다.
+ * <p>
+ * 손으로 작성한 생성자(new OrderDto(order)) 대신
+ * - stream / lambda 없이 getter -> setter 를 한 줄씩 호출하고, 컬렉션은 크기를 정한 ArrayList 에 for 문으로 담는다
+ * - 매핑 중 읽는 연관관계 경로를 ASSOCIATIONS 로 공개한다
+ * -> 조회하는 쪽은 ASSOCIATIONS 를 fetch join / EntityGraph 로 함께 가져와서 매핑 중 지연 로딩이 일어나지 않게 한다
+ * <p>
+ * 엔티티 getter 는 롬복이 만들기 때문에 이 프로세서에서는 보이지 않을 수 있다.
+ * -> 경로는 엔티티의 필드로 확인하고, getter 는 이름 규칙(getXxx / isXxx)으로 호출한다
+ */
+@SupportedAnnotationTypes(MapperProcessor.MAP_FROM)
+public class MapperProcessor extends AbstractProcessor {
+
+    static final String MAP_FROM = "jpabook.jpashop.mapper.MapFrom";
+    static final String MAP_PATH = "jpabook.jpashop.mapper.MapPath";
+    private static final String ENTITY = "javax.persistence.Entity";
+
+    private Elements elements;
+    private Types types;
+    private Filer filer;
+    private Messager messager;
+
+    private final Map<String, Mapping> mappings = new HashMap<>();
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        filer = processingEnv.getFiler();
+        messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (TypeElement dto : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(annotation))) {
+                try {
+                    Mapping mapping = analyze(dto);
+                    if (generated.add(mapping.mapperQualifiedName())) {
+                        write(mapping);
+                    }
+                } catch (MappingException e) {
+                    messager.printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+                } catch (IOException e) {
+                    messager.printMessage(Diagnostic.Kind.ERROR, "매퍼 생성 실패: " + e.getMessage(), dto);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * DTO 필드마다 엔티티 경로를 확인한다 (중첩 DTO 도 같이 분석한다)
+     */
+    private Mapping analyze(TypeElement dto) {
+        String key = dto.getQualifiedName().toString();
+        Mapping cached = mappings.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        TypeMirror sourceType = annotationValue(dto, MAP_FROM, TypeMirror.class);
+        if (sourceType == null) {
+            throw new MappingException(dto, "@MapFrom 이 없는 DTO 입니다: " + key);
+        }
+
+        Mapping mapping = new Mapping(dto, sourceType);
+        for (VariableElement field : ElementFilter.fieldsIn(dto.getEnclosedElements())) {
+            if (field.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            String path = annotationValue(field, MAP_PATH, String.class);
+            if (path == null) {
+                path = field.getSimpleName().toString();
+            }
+
+            Path source = resolve(sourceType, path, field);
+            mapping.associations.addAll(source.associations);
+
+            TypeElement nestedDto = listElementDto(field.asType());
+            if (nestedDto != null) {
+                if (!isCollection(source.type)) {
+                    throw new MappingException(field, path + " 는 컬렉션이 아닙니다");
+                }
+                Mapping nested = analyze(nestedDto);
+                for (String association : nested.associations) {
+                    mapping.associations.add(path + "." + association);
+                }
+                mapping.fields.add(new FieldMapping(field, source, nested));
+            } else {
+                if (!isAssignable(source.type, field.asType())) {
+                    throw new MappingException(field,
+                            path + " (" + source.type + ") 를 " + field.asType() + " 에 넣을 수 없습니다");
+                }
+                mapping.fields.add(new FieldMapping(field, source, null));
+            }
+        }
+
+        mappings.put(key, mapping);
+        return mapping;
+    }
+
+    /**
+     * "member.name" -> source.getMember().getName()
+     * -> 지나가는 엔티티, 컬렉션 경로를 연관관계로 기록한다
+     */
+    private Path resolve(TypeMirror sourceType, String path, Element at) {
+        TypeMirror current = sourceType;
+        StringBuilder expression = new StringBuilder("source");
+        List<String> associations = new ArrayList<>();
+
+        String prefix = null;
+        for (String segment : path.split("\\.")) {
+            if (isCollection(current)) {
+                throw new MappingException(at, path + ": 컬렉션을 지나가는 경로는 지원하지 않습니다 (중첩 DTO 를 사용)");
+            }
+            VariableElement field = findField(current, segment);
+            if (field == null) {
+                throw new MappingException(at, current + " 에 " + segment + " 필드가 없습니다");
+            }
+            expression.append('.').append(getterName(field)).append("()");
+            current = field.asType();
+
+            prefix = prefix == null ? segment : prefix + "." + segment;
+            if (isEntity(current) || isCollection(current)) {
+                associations.add(prefix);
+            }
+        }
+        return new Path(expression.toString(), current, associations);
+    }
+
+    private VariableElement findField(TypeMirror type, String name) {
+        TypeElement typeElement = asTypeElement(type);
+        while (typeElement != null) {
+            for (VariableElement field : ElementFilter.fieldsIn(typeElement.getEnclosedElements())) {
+                if (!field.getModifiers().contains(Modifier.STATIC) && field.getSimpleName().contentEquals(name)) {
+                    return field;
+                }
+            }
+            typeElement = asTypeElement(typeElement.getSuperclass());
+        }
+        return null;
+    }
+
+    private void write(Mapping mapping) throws IOException {
+        String packageName = elements.getPackageOf(mapping.dto).getQualifiedName().toString();
+        String dtoName = mapping.dto.getQualifiedName().toString();
+        String sourceName = types.erasure(mapping.sourceType).toString();
+
+        try (Writer out = filer.createSourceFile(mapping.mapperQualifiedName(), mapping.dto).openWriter()) {
+            out.write("package " + packageName + ";\n\n");
+            out.write("/**\n");
+            out.write(" * " + sourceName + " -> " + dtoName + "\n");
+            out.write(" * <p>\n");
+            out.write(" * MapperProcessor 가 생성한 코드 (직접 수정하지 않는다)\n");
+            out.write(" */\n");
+            out.write("@javax.annotation.processing.Generated(\"" + MapperProcessor.class.getName() + "\")\n");
+            out.write("public final class " + mapping.mapperSimpleName() + " {\n\n");
+
+            out.write("    /**\n");
+            out.write("     * map() 이 읽는 연관관계 경로\n");
+            out.write("     * -> 조회할 때 fetch join / EntityGraph 로 함께 가져오면 매핑 중 추가 쿼리가 나가지 않는다\n");
+            out.write("     */\n");
+            out.write("    public static final java.util.List<String> ASSOCIATIONS = java.util.List.of("
+                    + mapping.associations.stream().distinct().map(a -> "\"" + a + "\"").collect(Collectors.joining(", "))
+                    + ");\n\n");
+
+            out.write("    private " + mapping.mapperSimpleName() + "() {\n    }\n\n");
+
+            out.write("    public static " + dtoName + " map(" + sourceName + " source) {\n");
+            out.write("        " + dtoName + " target = new " + dtoName + "();\n");
+            for (FieldMapping field : mapping.fields) {
+                if (field.nested == null) {
+                    out.write("        target." + field.setterName() + "(" + field.source.expression + ");\n");
+                } else {
+                    writeCollection(out, field);
+                }
+            }
+            out.write("        return target;\n");
+            out.write("    }\n\n");
+
+            out.write("    public static java.util.List<" + dtoName + "> mapAll(java.util.List<? extends " + sourceName + "> sources) {\n");
+            out.write("        java.util.List<" + dtoName + "> targets = new java.util.ArrayList<>(sources.size());\n");
+            out.write("        for (int i = 0; i < sources.size(); i++) {\n");
+            out.write("            targets.add(map(sources.get(i)));\n");
+            out.write("        }\n");
+            out.write("        return targets;\n");
+            out.write("    }\n");
+            out.write("}\n");
+        }
+    }
+
+    private void writeCollection(Writer out, FieldMapping field) throws IOException {
+        String name = field.field.getSimpleName().toString();
+        String elementSource = types.erasure(field.nested.sourceType).toString();
+        String elementTarget = field.nested.dto.getQualifiedName().toString();
+        String mapper = field.nested.mapperQualifiedName();
+
+        out.write("        java.util.Collection<? extends " + elementSource + "> " + name + "Sources = "
+                + field.source.expression + ";\n");
+        out.write("        java.util.List<" + elementTarget + "> " + name + " = new java.util.ArrayList<>("
+                + name + "Sources.size());\n");
+        out.write("        for (" + elementSource + " element : " + name + "Sources) {\n");
+        out.write("            " + name + ".add(" + mapper + ".map(element));\n");
+        out.write("        }\n");
+        out.write("        target." + field.setterName() + "(" + name + ");\n");
+    }
+
+    /**
+     * List<X> 이고 X 가 @MapFrom DTO 이면 X
+     */
+    private TypeElement listElementDto(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED || !isCollection(type)) {
+            return null;
+        }
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        if (arguments.size() != 1) {
+            return null;
+        }
+        TypeElement element = asTypeElement(arguments.get(0));
+        return element != null && annotationMirror(element, MAP_FROM) != null ? element : null;
+    }
+
+    private boolean isAssignable(TypeMirror from, TypeMirror to) {
+        if (types.isAssignable(from, to)) {
+            return true;
+        }
+        return from.getKind().isPrimitive()
+                && types.isAssignable(types.boxedClass(types.getPrimitiveType(from.getKind())).asType(), to);
+    }
+
+    private boolean isCollection(TypeMirror type) {
+        TypeMirror collection = types.erasure(elements.getTypeElement("java.util.Collection").asType());
+        return type.getKind() == TypeKind.DECLARED && types.isAssignable(types.erasure(type), collection);
+    }
+
+    private boolean isEntity(TypeMirror type) {
+        TypeElement element = asTypeElement(type);
+        return element != null && annotationMirror(element, ENTITY) != null;
+    }
+
+    private TypeElement asTypeElement(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return (TypeElement) ((DeclaredType) type).asElement();
+    }
+
+    private String getterName(VariableElement field) {
+        String prefix = field.asType().getKind() == TypeKind.BOOLEAN ? "is" : "get";
+        return prefix + capitalize(field.getSimpleName().toString());
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private AnnotationMirror annotationMirror(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private <T> T annotationValue(Element element, String annotationName, Class<T> valueType) {
+        AnnotationMirror mirror = annotationMirror(element, annotationName);
+        if (mirror == null) {
+            return null;
+        }
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals("value")) {
+                return valueType.cast(entry.getValue().getValue());
+            }
+        }
+        return null;
+    }
+
+    private class Mapping {
+        final TypeElement dto;
+        final TypeMirror sourceType;
+        final List<FieldMapping> fields = new ArrayList<>();
+        final List<String> associations = new ArrayList<>();
+
+        Mapping(TypeElement dto, TypeMirror sourceType) {
+            this.dto = dto;
+            this.sourceType = sourceType;
+        }
+
+        /**
+         * OrderDto -> OrderDtoMapper, MemberApiController.MemberDto -> MemberApiController_MemberDtoMapper
+         */
+        String mapperSimpleName() {
+            StringBuilder name = new StringBuilder(dto.getSimpleName());
+            Element enclosing = dto.getEnclosingElement();
+            while (enclosing instanceof TypeElement) {
+                name.insert(0, enclosing.getSimpleName() + "_");
+                enclosing = enclosing.getEnclosingElement();
+            }
+            return name.append("Mapper").toString();
+        }
+
+        String mapperQualifiedName() {
+            return elements.getPackageOf(dto).getQualifiedName() + "." + mapperSimpleName();
+        }
+    }
+
+    private static class FieldMapping {
+        final VariableElement field;
+        final Path source;
+        final Mapping nested;
+
+        FieldMapping(VariableElement field, Path source, Mapping nested) {
+            this.field = field;
+            this.source = source;
+            this.nested = nested;
+        }
+
+        String setterName() {
+            return "set" + capitalize(field.getSimpleName().toString());
+        }
+    }
+
+    private static class Path {
+        final String expression;
+        final TypeMirror type;
+        final List<String> associations;
+
+        Path(String expression, TypeMirror type, List<String> associations) {
+            this.expression = expression;
+            this.type = type;
+            this.associations = associations;
+        }
+    }
+
+    private static class MappingException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final Element element;
+
+        MappingException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package jpabook.jpashop.mapper;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.service.query.OrderDto;
+import jpabook.jpashop.service.query.OrderDtoMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * OrderDto 생성자(stream + lambda) vs 컴파일 시점에 생성된 OrderDtoMapper (for 루프)
+ * -> 엔티티는 메모리에만 만들어서 DB / 지연로딩 비용 없이 매핑 비용만 잰다
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OrderDtoMapperBenchmark {
+
+    @Param({"100"})
+    int orderCount;
+
+    @Param({"2", "10"})
+    int itemsPerOrder;
+
+    List<Order> orders;
+
+    @Setup
+    public void setUp() {
+        orders = new ArrayList<>(orderCount);
+        for (int i = 0; i < orderCount; i++) {
+            Member member = new Member();
+            member.setName("user" + i);
+            member.setAddress(new Address("서울", "강가", "123-123"));
+
+            Delivery delivery = new Delivery();
+            delivery.setAddress(member.getAddress());
+
+            OrderItem[] orderItems = new OrderItem[itemsPerOrder];
+            for (int j = 0; j < itemsPerOrder; j++) {
+                Book book = new Book();
+                book.setName("BOOK" + j);
+                book.setPrice(10000);
+                book.setStockQuantity(Integer.MAX_VALUE);
+                orderItems[j] = OrderItem.createOrderItem(book, 10000, 1);
+            }
+            orders.add(Order.createOrder(member, delivery, orderItems));
+        }
+    }
+
+    @Benchmark
+    public List<OrderDto> constructor() {
+        return orders.stream()
+                .map(OrderDto::new)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<OrderDto> generatedMapper() {
+        return OrderDtoMapper.mapAll(orders);
+    }
+}
@@ -4,6 +4,7 @@ package jpabook.jpashop;
 import jpabook.jpashop.domain.*;
 import jpabook.jpashop.domain.item.Book;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -12,7 +13,9 @@ import javax.persistence.EntityManager;
 
 /**
  * 조회용 샘플 데이터 입력용 클래스
+ * -> 운영(prod 프로파일)에서는 샘플 데이터를 넣지 않는다
  */
+@Profile("!prod")
 @Component
 @RequiredArgsConstructor
 public class InitDb {
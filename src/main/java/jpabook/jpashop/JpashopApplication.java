@@ -3,13 +3,21 @@ package jpabook.jpashop;
 import com.fasterxml.jackson.datatype.hibernate5.Hibernate5Module;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
+@EnableScheduling
 @SpringBootApplication
 public class JpashopApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(JpashopApplication.class, args);
+        ConfigurableApplicationContext context = SpringApplication.run(JpashopApplication.class, args);
+
+        // AppCDS 아카이브 덤프용 기동(build.gradle 의 appCdsArchive)은 기동이 끝나면 바로 종료한다
+        if (Boolean.getBoolean("jpashop.cds.training")) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
 
     @Bean
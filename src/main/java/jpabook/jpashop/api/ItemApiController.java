@@ -0,0 +1,28 @@
+package jpabook.jpashop.api;
+
+import jpabook.jpashop.service.query.ItemAutocomplete;
+import jpabook.jpashop.service.query.ItemSuggestion;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class ItemApiController {
+
+    private final ItemAutocomplete itemAutocomplete;
+
+    /**
+     * 상품 이름 자동완성 (주문 화면)
+     * - DB 를 조회하지 않고 메모리의 이름 인덱스에서 찾는다
+     */
+    @GetMapping("/api/v1/items/autocomplete")
+    public List<ItemSuggestion> autocomplete(
+            @RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return itemAutocomplete.suggest(query, limit);
+    }
+}
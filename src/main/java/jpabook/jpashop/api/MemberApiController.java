@@ -2,15 +2,16 @@ package jpabook.jpashop.api;
 
 import jpabook.jpashop.domain.Member;
 import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.mapper.MapFrom;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
 import java.util.List;
-import java.util.stream.Collectors;
 
 
 /**
@@ -50,9 +51,7 @@ public class MemberApiController {
     @GetMapping("/api/v2/members")
     public Result membersV2() {
         List<Member> findMembers = memberService.findMembers();
-        List<MemberDto> collect = findMembers.stream()
-                .map(m -> new MemberDto(m.getName()))
-                .collect(Collectors.toList());
+        List<MemberDto> collect = MemberApiController_MemberDtoMapper.mapAll(findMembers);
         return new Result(collect.size(), collect);
     }
 
@@ -68,7 +67,9 @@ public class MemberApiController {
     }
 
     @Data
+    @NoArgsConstructor
     @AllArgsConstructor
+    @MapFrom(Member.class)
     static class MemberDto {
         private String name;
     }
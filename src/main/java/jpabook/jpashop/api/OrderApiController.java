@@ -1,22 +1,33 @@
 package jpabook.jpashop.api;
 
-import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.DeliveryStatus;
 import jpabook.jpashop.domain.Order;
-import jpabook.jpashop.domain.OrderItem;
 import jpabook.jpashop.domain.OrderStatus;
-import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.repository.OrderSearch;
 import jpabook.jpashop.repository.order.query.OrderFlatDto;
-import jpabook.jpashop.repository.order.query.OrderItemQueryDto;
+import jpabook.jpashop.repository.order.query.OrderFlatGrouper;
 import jpabook.jpashop.repository.order.query.OrderQueryDto;
 import jpabook.jpashop.repository.order.query.OrderQueryRepository;
+import jpabook.jpashop.service.OrderImportResult;
+import jpabook.jpashop.service.OrderImportService;
+import jpabook.jpashop.service.OrderService;
+import jpabook.jpashop.service.OrderStatusCounters;
+import jpabook.jpashop.service.OrderStatusCounts;
+import jpabook.jpashop.service.query.CoalescingOrderQueryService;
+import jpabook.jpashop.service.query.OrderDto;
+import jpabook.jpashop.service.query.OrderQueryService;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.time.LocalDateTime;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -37,15 +48,26 @@ import java.util.stream.Collectors;
  * - 페이징 가능
  * V5. JPA에서 DTO로 바로 조회, 컬렉션 1 조회 최적화 버전 (1 + 1 Query)
  * - 페이징 가능
+ * V5.1 V5 를 청크 단위로 조회하면서 JSON 을 바로 응답에 쓴다 (스트리밍)
+ * - 대량 응답에서 메모리 사용량을 청크 하나로 제한
  * V6. JPA에서 DTO로 바로 조회, 플랫 데이터(1Query) (1 Query)
  * - 페이징 불가능...
+ * V6.1 V6 를 주문 단위로 묶으면서 바로 응답에 쓴다 (스트리밍)
+ * - 주문 기준 keyset 페이징 가능
  */
 @RestController
 @RequiredArgsConstructor
 public class OrderApiController {
 
-    private final OrderRepository orderRepository;
+    private static final int MAX_CHUNK_SIZE = 10000;
+
     private final OrderQueryRepository orderQueryRepository;
+    private final OrderQueryService orderQueryService;
+    private final CoalescingOrderQueryService coalescingOrderQueryService;
+    private final OrderService orderService;
+    private final OrderImportService orderImportService;
+    private final OrderStatusCounters orderStatusCounters;
+    private final ResultStreamWriter resultStreamWriter;
 
     /**
      * V1. 엔티티 직접 노출
@@ -56,15 +78,8 @@ public class OrderApiController {
      */
     @GetMapping("/api/v1/orders")
     public List<Order> ordersV1() {
-        List<Order> all = orderRepository.findAllByString(new OrderSearch());
-        for (Order order : all) {
-            order.getMember().getName(); // -> Order의 Member : LAZY 강제 초기화
-            order.getDelivery().getAddress();// -> Order의 Delivery : LAZY 강제 초기화
-            List<OrderItem> orderItems = order.getOrderItems(); // -> Order의 OrderItem : LAZY 강제 초기화
-            orderItems.forEach(o -> o.getItem().getName());  // -> OrderItem의 Item : LAZY 강제 초기화
-        }
-
-        return all;
+        // OSIV 가 꺼져 있으므로 강제 초기화는 OrderQueryService 의 트랜잭션 안에서 한다
+        return orderQueryService.ordersV1();
     }
 
     /**
@@ -81,50 +96,7 @@ public class OrderApiController {
      */
     @GetMapping("/api/v2/orders")
     public List<OrderDto> ordersV2() {
-        List<Order> orders = orderRepository.findAllByString(new OrderSearch());
-        List<OrderDto> collect = orders.stream()
-                .map(OrderDto::new)
-                .collect(Collectors.toList());
-        return collect;
-    }
-
-    /**
-     * private List<OrderItem> orderItems;
-     * -> DTO가 아닌 엔티티 OrderItem 을 사용하면 안된다.
-     * -> private List<OrderItemDto> orderItems;
-     */
-    @Data
-    static class OrderDto {
-        private Long orderId;
-        private String name;
-        private LocalDateTime orderDate; //주문시간
-        private OrderStatus orderStatus;
-        private Address address;
-        private List<OrderItemDto> orderItems;
-
-        public OrderDto(Order order) {
-            orderId = order.getId();
-            name = order.getMember().getName();
-            orderDate = order.getOrderDate();
-            orderStatus = order.getStatus();
-            address = order.getDelivery().getAddress();
-            orderItems = order.getOrderItems().stream()
-                    .map(OrderItemDto::new)
-                    .collect(Collectors.toList());
-        }
-    }
-
-    @Data
-    static class OrderItemDto {
-        private String itemName;//상품 명
-        private int orderPrice; //주문 가격
-        private int count; //주문 수량
-
-        public OrderItemDto(OrderItem orderItem) {
-            itemName = orderItem.getItem().getName();
-            orderPrice = orderItem.getOrderPrice();
-            count = orderItem.getCount();
-        }
+        return orderQueryService.ordersV2();
     }
 
     /**
@@ -134,13 +106,20 @@ public class OrderApiController {
      * 단점 : 최적화된 페이징 불가능
      * => Order를 기준으로 페이징 하고 싶은데, 다(N)인 OrderItem을 조인하면 OrderItem이 기준이
      * 되어버린다
+     * <p>
+     * fields= 를 주면 그 필드만 응답한다 (예: fields=orderId,status,member.name,orderItems.item.name)
+     * => 요청한 필드에 필요한 연관관계만 조인한다
      */
     @GetMapping("/api/v3/orders")
-    public List<OrderDto> ordersV3() {
-        List<Order> orders = orderRepository.findAllWithItem();
-        return orders.stream()
-                .map(OrderDto::new)
-                .collect(Collectors.toList());
+    public List<?> ordersV3(@RequestParam(value = "fields", required = false) String fields) {
+        if (fields == null) {
+            return orderQueryService.ordersV3();
+        }
+        try {
+            return orderQueryService.ordersV3(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
     }
 
     /**
@@ -183,13 +162,7 @@ public class OrderApiController {
             @RequestParam(value = "offset", defaultValue = "0") int offset,
             @RequestParam(value = "limit", defaultValue = "100") int limit
     ) {
-        List<Order> orders = orderRepository.findAllWithMemberDelivery(offset, limit);
-
-        List<OrderDto> result = orders.stream()
-                .map(o -> new OrderDto(o))
-                .collect(Collectors.toList());
-
-        return result;
+        return orderQueryService.ordersV3_page(offset, limit);
     }
 
     /**
@@ -221,7 +194,28 @@ public class OrderApiController {
      */
     @GetMapping("/api/v5/orders")
     public List<OrderQueryDto> ordersV5() {
-        return orderQueryRepository.findAllByDto_optimization();
+        return coalescingOrderQueryService.findAllByDto_optimization();
+    }
+
+    /**
+     * V5.1: V5 스트리밍 버전
+     * <p>
+     * - V5 는 List<OrderQueryDto> 를 다 만든 다음 Jackson 에 넘긴다
+     * -> 주문이 수십만 건이면 DTO List 와 직렬화 결과가 동시에 메모리에 올라간다
+     * - V5.1 은 chunkSize 만큼씩 keyset 페이징으로 조회하고, 조회된 청크를 바로 응답에 쓴다
+     * -> 청크 하나당 Query: 루트 1번, 컬렉션 1번
+     * -> 응답 모양은 Result{count, data} 와 같지만 count 가 맨 뒤에 온다
+     * - chunkSize 는 1 ~ MAX_CHUNK_SIZE (너무 크면 청크 하나가 V5 처럼 메모리에 다 올라간다)
+     */
+    @GetMapping("/api/v5.1/orders")
+    public void ordersV5_stream(
+            @RequestParam(value = "chunkSize", defaultValue = "1000") int chunkSize,
+            HttpServletResponse response
+    ) throws IOException {
+        if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "chunkSize 는 1 ~ " + MAX_CHUNK_SIZE + " 이어야 합니다.");
+        }
+        resultStreamWriter.write(response, () -> orderQueryRepository.streamAllByDto_optimization(chunkSize));
     }
 
     /**
@@ -236,19 +230,104 @@ public class OrderApiController {
      */
     @GetMapping("/api/v6/orders")
     public List<OrderQueryDto> ordersV6() {
-        List<OrderFlatDto> flats = orderQueryRepository.findAllByDto_flat();
+        List<OrderFlatDto> flats = coalescingOrderQueryService.findAllByDto_flat();
 
-        // 중복된 데이터인 flats 을 스트림을 활용하여 중복제거한다.
-        // 개 복잡 ㅎㄷㄷ
-        return flats.stream()
-                .collect(Collectors.groupingBy(o -> new OrderQueryDto(o.getOrderId(), o.getName(), o.getOrderDate(), o.getOrderStatus(), o.getAddress()),
-                        Collectors.mapping(o -> new OrderItemQueryDto(o.getOrderId(), o.getItemName(), o.getOrderPrice(), o.getCount()), Collectors.toList())
-                )).entrySet().stream()
-                .map(e -> new OrderQueryDto(e.getKey().getOrderId(),
-                        e.getKey().getName(), e.getKey().getOrderDate(), e.getKey().getOrderStatus(),
-                        e.getKey().getAddress(), e.getValue()))
+        // 중복된 데이터인 flats 을 orderId 가 바뀔 때마다 하나의 주문으로 묶는다.
+        // (groupingBy + HashMap 대신 정렬된 row 를 한 번만 훑는다 -> 쿼리 정렬 순서도 유지)
+        return OrderFlatGrouper.group(flats.stream())
                 .collect(Collectors.toList());
     }
+
+    /**
+     * V6.1: V6 스트리밍 + 주문 기준 페이징
+     * <p>
+     * - 플랫 row 를 DB 에서 하나씩 읽으면서 orderId 가 바뀔 때마다 주문 1건을 응답에 쓴다
+     * -> 메모리에는 주문 1건만 남는다
+     * - lastOrderId 다음 주문부터 limit 건의 "주문" 을 내려준다 (row 기준이 아니라 주문 기준 페이징)
+     * -> 다음 페이지는 응답의 마지막 orderId 를 lastOrderId 로 넘겨서 조회한다
+     */
+    @GetMapping("/api/v6.1/orders")
+    public void ordersV6_stream(
+            @RequestParam(value = "lastOrderId", defaultValue = "0") Long lastOrderId,
+            @RequestParam(value = "limit", defaultValue = "1000") int limit,
+            HttpServletResponse response
+    ) throws IOException {
+        resultStreamWriter.write(response,
+                () -> OrderFlatGrouper.group(orderQueryRepository.streamAllByDto_flat(lastOrderId)).limit(limit));
+    }
+
+    /**
+     * 주문 일괄 취소
+     * - orderIds 가 있으면 해당 주문들을, 없으면 검색 조건에 맞는 주문들을 취소한다
+     * -> 검색 조건은 주문 검색(OrderRepository.findOrderIds)과 같다 (memberName, orderStatus, memberId, deliveryStatus, orderDateFrom, orderDateTo)
+     * - 벌크 연산으로 처리하므로 주문 수와 상관없이 청크당 쿼리 수가 일정하다
+     * - orderIds 도 검색 조건도 없으면 전체 주문이 취소되므로 400 으로 거절한다
+     */
+    @PostMapping("/api/v1/orders/cancel")
+    public CancelOrdersResponse cancelOrders(@RequestBody CancelOrdersRequest request) {
+        int count;
+        if (request.getOrderIds() != null && !request.getOrderIds().isEmpty()) {
+            count = orderService.cancelOrders(request.getOrderIds());
+        } else {
+            if (!request.hasSearchCondition()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "orderIds 또는 검색 조건이 필요합니다.");
+            }
+            count = orderService.cancelOrders(request.toOrderSearch());
+        }
+        return new CancelOrdersResponse(count);
+    }
+
+    /**
+     * 파트너 주문 파일(CSV: memberId,itemId,count) 대량 가져오기
+     * - 요청 본문을 한 줄씩 읽으면서 청크 단위로 커밋한다
+     * - 실패하면 같은 source 로 다시 보내면 된다 (커밋된 줄은 건너뛴다)
+     */
+    @PostMapping(value = "/api/v1/orders/import", consumes = "text/csv")
+    public OrderImportResult importOrders(@RequestParam("source") String source, Reader csv) throws IOException {
+        return orderImportService.importOrders(source, csv);
+    }
+
+    /**
+     * 주문 상태별 / 배송 상태별 건수와 오늘 매출 (운영 대시보드)
+     * - DB 를 조회하지 않고 OrderStatusCounters 의 메모리 카운터를 읽는다
+     */
+    @GetMapping("/api/v1/orders/status-counts")
+    public OrderStatusCounts statusCounts() {
+        return orderStatusCounters.snapshot();
+    }
+
+    @Data
+    static class CancelOrdersRequest {
+        private List<Long> orderIds;
+        private String memberName;
+        private OrderStatus orderStatus;
+        private Long memberId;
+        private DeliveryStatus deliveryStatus;
+        private LocalDate orderDateFrom;
+        private LocalDate orderDateTo;
+
+        boolean hasSearchCondition() {
+            return StringUtils.hasText(memberName) || orderStatus != null || memberId != null
+                    || deliveryStatus != null || orderDateFrom != null || orderDateTo != null;
+        }
+
+        OrderSearch toOrderSearch() {
+            OrderSearch orderSearch = new OrderSearch();
+            orderSearch.setMemberName(memberName);
+            orderSearch.setOrderStatus(orderStatus);
+            orderSearch.setMemberId(memberId);
+            orderSearch.setDeliveryStatus(deliveryStatus);
+            orderSearch.setOrderDateFrom(orderDateFrom);
+            orderSearch.setOrderDateTo(orderDateTo);
+            return orderSearch;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class CancelOrdersResponse {
+        private int count;
+    }
 }
 /**
  * [정리]
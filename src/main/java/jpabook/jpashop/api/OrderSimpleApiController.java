@@ -1,20 +1,21 @@
 package jpabook.jpashop.api;
 
-import jpabook.jpashop.domain.Address;
 import jpabook.jpashop.domain.Order;
-import jpabook.jpashop.domain.OrderStatus;
-import jpabook.jpashop.repository.OrderRepository;
-import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.repository.order.archive.OrderArchiveRepository;
 import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryDto;
-import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryRepository;
-import lombok.Data;
+import jpabook.jpashop.service.query.CoalescingOrderQueryService;
+import jpabook.jpashop.service.query.OrderQueryService;
+import jpabook.jpashop.service.query.SimpleOrderDto;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * xToOne(ManyToOne, OneToOne) 관계 최적화
@@ -24,8 +25,9 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class OrderSimpleApiController {
 
-    private final OrderRepository orderRepository;
-    private final OrderSimpleQueryRepository orderSimpleQueryRepository;
+    private final OrderQueryService orderQueryService;
+    private final CoalescingOrderQueryService coalescingOrderQueryService;
+    private final OrderArchiveRepository orderArchiveRepository;
 
     /**
      * DTO가 아닌 엔티티를 사용한 경우
@@ -45,14 +47,7 @@ public class OrderSimpleApiController {
      */
     @GetMapping("/api/v1/simple-orders")
     public List<Order> ordersV1() {
-        List<Order> all = orderRepository.findAllByString(new OrderSearch());
-        for (Order order : all) {
-            // LAZY 로딩된 Member 에 값을 채우기 위해
-            // 강제 초기화
-            order.getMember().getName();
-            order.getMember().getAddress();
-        }
-        return all;
+        return orderQueryService.simpleOrdersV1();
     }
 
     /**
@@ -75,11 +70,7 @@ public class OrderSimpleApiController {
      */
     @GetMapping("/api/v2/simple-orders")
     public List<SimpleOrderDto> ordersV2() {
-        List<Order> orders = orderRepository.findAllByString(new OrderSearch());
-
-        return orders.stream()
-                .map(SimpleOrderDto::new)
-                .collect(Collectors.toList());
+        return orderQueryService.simpleOrdersV2();
     }
 
     /**
@@ -93,28 +84,7 @@ public class OrderSimpleApiController {
      */
     @GetMapping("/api/v3/simple-orders")
     public List<SimpleOrderDto> ordersV3() {
-        List<Order> all = orderRepository.findAllWithMemberDelivery();
-        return all.stream()
-                .map(SimpleOrderDto::new)
-                .collect(Collectors.toList());
-    }
-
-    @Data
-    @RequiredArgsConstructor
-    static class SimpleOrderDto {
-        private Long orderId;
-        private String name;
-        private LocalDateTime orderDate; //주문시간
-        private OrderStatus orderStatus;
-        private Address address;
-
-        public SimpleOrderDto(Order order) {
-            orderId = order.getId();
-            orderDate = order.getOrderDate();
-            orderStatus = order.getStatus();
-            name = order.getMember().getName(); // LAZY 초기화
-            address = order.getDelivery().getAddress(); // LAZY 초기화
-        }
+        return orderQueryService.simpleOrdersV3();
     }
 
     /**
@@ -132,9 +102,26 @@ public class OrderSimpleApiController {
      */
     @GetMapping("/api/v4/simple-orders")
     public List<OrderSimpleQueryDto> ordersV4() {
-        return orderSimpleQueryRepository.findOrderDtos();
+        return coalescingOrderQueryService.findOrderDtos();
     }
 
+    /**
+     * V4 기간 조회 (보관된 주문 포함)
+     * <p>
+     * 다른 주문 조회 API 는 hot 테이블(orders)만 조회한다.
+     * -> 보관 기간보다 오래된 이력은 이 API 나 주문 목록 화면(/orders)의 기간 검색으로 볼 수 있다.
+     * 기간을 지정해서 이력을 요청할 때만 orders_archive 까지 조회해서 합친다.
+     */
+    @GetMapping("/api/v4/simple-orders/history")
+    public List<OrderSimpleQueryDto> ordersV4_history(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to
+    ) {
+        List<OrderSimpleQueryDto> result = new ArrayList<>(orderArchiveRepository.findOrderDtos(from, to));
+        result.addAll(coalescingOrderQueryService.findOrderDtos(from, to));
+        result.sort(Comparator.comparing(OrderSimpleQueryDto::getOrderDate));
+        return result;
+    }
 
     /*
      * 쿼리 방식 선택 권장 순서 정리
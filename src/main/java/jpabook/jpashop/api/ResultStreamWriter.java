@@ -0,0 +1,66 @@
+package jpabook.jpashop.api;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Result{count, data} 응답을 JsonGenerator 로 직접 쓴다.
+ * <p>
+ * List 를 다 만든 뒤 Jackson 에 넘기면
+ * -> 조회 결과 List + 직렬화 중인 JSON 버퍼, 두 벌의 데이터가 동시에 메모리에 올라간다
+ * <p>
+ * 조회 결과를 Stream 으로 받아 한 건씩 바로 응답에 쓰면
+ * -> 메모리에는 조회 중인 청크 하나만 남는다
+ * -> 첫 청크를 쓰는 즉시 클라이언트가 응답을 받기 시작한다
+ * <p>
+ * count 는 data 를 다 쓴 뒤에야 알 수 있으므로 마지막에 쓴다.
+ * => {"data": [...], "count": N}
+ * <p>
+ * OSIV 가 꺼져 있으므로 rows 는 이 메소드의 읽기 전용 트랜잭션 안에서 연다
+ * -> DB 커서(getResultStream)가 응답을 다 쓸 때까지 열려 있어야 하기 때문이다
+ */
+@Component
+@RequiredArgsConstructor
+public class ResultStreamWriter {
+
+    private static final int FLUSH_INTERVAL = 100;
+
+    private final ObjectMapper objectMapper;
+
+    @Transactional(readOnly = true)
+    public void write(HttpServletResponse response, Supplier<Stream<?>> rowsSupplier) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+
+        try (Stream<?> rows = rowsSupplier.get();
+             JsonGenerator generator = objectMapper.getFactory()
+                     .createGenerator(response.getOutputStream(), JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("data");
+
+            int count = 0;
+            Iterator<?> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                generator.writeObject(iterator.next());
+                if (++count % FLUSH_INTERVAL == 0) {
+                    generator.flush();
+                }
+            }
+
+            generator.writeEndArray();
+            generator.writeNumberField("count", count);
+            generator.writeEndObject();
+        }
+    }
+}
@@ -1,8 +1,9 @@
 package jpabook.jpashop.controller;
 
 import jpabook.jpashop.domain.item.Book;
-import jpabook.jpashop.domain.item.Item;
 import jpabook.jpashop.service.ItemService;
+import jpabook.jpashop.service.query.ItemDto;
+import jpabook.jpashop.service.query.ItemQueryService;
 import lombok.RequiredArgsConstructor;
 import org.dom4j.rule.Mode;
 import org.springframework.stereotype.Controller;
@@ -19,6 +20,7 @@ import java.util.List;
 public class ItemController {
 
     private final ItemService itemService;
+    private final ItemQueryService itemQueryService;
 
     @GetMapping("/items/new")
     public String createForm(Model model) {
@@ -42,7 +44,7 @@ public class ItemController {
 
     @GetMapping("/items")
     public String list(Model model) {
-        List<Item> items = itemService.findItems();
+        List<ItemDto> items = itemQueryService.findItems();
         model.addAttribute("items", items);
         return "items/itemList";
     }
@@ -3,6 +3,8 @@ package jpabook.jpashop.controller;
 import jpabook.jpashop.domain.Address;
 import jpabook.jpashop.domain.Member;
 import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.query.MemberDto;
+import jpabook.jpashop.service.query.MemberQueryService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -18,6 +20,7 @@ import java.util.List;
 public class MemberController {
 
     private final MemberService memberService;
+    private final MemberQueryService memberQueryService;
 
     @GetMapping("/members/new")
     public String createForm(Model model) {
@@ -63,7 +66,7 @@ public class MemberController {
      */
     @GetMapping("/members")
     public String list(Model model) {
-        List<Member> members = memberService.findMembers();
+        List<MemberDto> members = memberQueryService.findMembers();
         model.addAttribute("members", members);
 
         return "members/memberList";
@@ -1,17 +1,21 @@
 package jpabook.jpashop.controller;
 
-import jpabook.jpashop.domain.Member;
-import jpabook.jpashop.domain.Order;
-import jpabook.jpashop.domain.item.Item;
 import jpabook.jpashop.repository.OrderSearch;
-import jpabook.jpashop.service.ItemService;
-import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.IdempotentOrderService;
 import jpabook.jpashop.service.OrderService;
+import jpabook.jpashop.service.query.MemberDto;
+import jpabook.jpashop.service.query.MemberQueryService;
+import jpabook.jpashop.service.query.OrderDto;
+import jpabook.jpashop.service.query.OrderQueryService;
+import jpabook.jpashop.web.ReadYourWritesInterceptor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletRequest;
 import java.util.List;
 
 @Controller
@@ -19,25 +23,40 @@ import java.util.List;
 public class OrderController {
 
     private final OrderService orderService;
-    private final MemberService memberService;
-    private final ItemService itemService;
+    private final IdempotentOrderService idempotentOrderService;
+    private final OrderQueryService orderQueryService;
+    private final MemberQueryService memberQueryService;
 
+    /**
+     * 상품은 전부 내려주지 않는다 -> 화면에서 이름을 입력하면 /api/v1/items/autocomplete 로 찾는다
+     */
     @GetMapping("/order")
     public String createForm(Model model) {
-        List<Member> members = memberService.findMembers();
-        List<Item> items = itemService.findItems();
+        List<MemberDto> members = memberQueryService.findMembers();
 
         model.addAttribute("members", members);
-        model.addAttribute("items", items);
 
         return "order/orderForm";
     }
 
+    /**
+     * Idempotency-Key 헤더 -> 같은 키로 다시 들어온 요청은 주문하지 않고 처음 주문으로 처리한다 (모바일 재시도)
+     * -> 빈 키나 너무 긴 키는 400
+     */
     @PostMapping("/order")
-    public String order(@RequestParam("memberId") Long memberId,
+    public String order(@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                        @RequestParam("memberId") Long memberId,
                         @RequestParam("itemId") Long itemId,
                         @RequestParam("count") int count) {
-        orderService.order(memberId, itemId, count);
+        if (idempotencyKey == null) {
+            orderService.order(memberId, itemId, count);
+        } else {
+            try {
+                idempotentOrderService.order(idempotencyKey, memberId, itemId, count);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+            }
+        }
 
         return "redirect:/orders";
     }
@@ -45,14 +64,18 @@ public class OrderController {
     @GetMapping("/orders")
     public String orderList(@ModelAttribute("orderSearch") OrderSearch orderSearch,
                             Model model) {
-        List<Order> orders = orderService.findOrders(orderSearch);
+        List<OrderDto> orders = orderQueryService.findOrders(orderSearch);
         model.addAttribute("orders", orders);
         return "order/orderList";
     }
 
+    /**
+     * 경로에 memberId 가 없으므로 취소한 주문의 회원을 ReadYourWritesInterceptor 에 알려준다 (read-your-writes 쿠키)
+     */
     @PostMapping("/orders/{orderId}/cancel")
-    public String cancelOrder(@PathVariable("orderId") Long orderId) {
-        orderService.cancelOrder(orderId);
+    public String cancelOrder(@PathVariable("orderId") Long orderId, HttpServletRequest request) {
+        Long memberId = orderService.cancelOrder(orderId);
+        request.setAttribute(ReadYourWritesInterceptor.WRITER_ATTRIBUTE, memberId);
         return "redirect:/orderList";
     }
 }
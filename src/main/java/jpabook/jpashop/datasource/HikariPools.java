@@ -0,0 +1,25 @@
+package jpabook.jpashop.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+
+/**
+ * spring.datasource 설정(계정, 드라이버)으로 url 만 바꾼 커넥션 풀을 만든다 (replica, shard)
+ */
+final class HikariPools {
+
+    private HikariPools() {
+    }
+
+    static HikariDataSource create(DataSourceProperties properties, String name, String url, MeterRegistry meterRegistry) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(url)
+                .build();
+        dataSource.setPoolName(name);
+        // 스프링 부트는 빈으로 등록된 풀만 hikaricp.* 메트릭을 남긴다 -> 직접 연결한다
+        dataSource.setMetricRegistry(meterRegistry);
+        return dataSource;
+    }
+}
@@ -0,0 +1,66 @@
+package jpabook.jpashop.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * 읽기 전용 트랜잭션을 replica 대신 primary 에서 읽게 한다
+ * <p>
+ * 커밋 직후의 데이터를 읽어야 하는 조회에 쓴다 (outbox 조회, 카운터 보정, 응답 캐시 채우기 ...)
+ * - @Transactional(readOnly = true, label = ReadRouting.PRIMARY)
+ * - onPrimary / pin : 현재 스레드에서 그 사이에 시작하는 트랜잭션
+ * -> 어느 DB 를 쓸지는 트랜잭션을 시작할 때 정한다 (이미 시작한 트랜잭션 안에서 고정해도 소용없다)
+ * <p>
+ * replica 를 쓰지 않으면(jpashop.replica.enabled=false) 아무 영향이 없다
+ */
+public final class ReadRouting {
+
+    /**
+     * @Transactional 의 label
+     */
+    public static final String PRIMARY = "primary";
+
+    // 중첩해서 고정할 수 있도록 횟수를 센다
+    private static final ThreadLocal<Integer> PINNED = new ThreadLocal<>();
+
+    private ReadRouting() {
+    }
+
+    public static <T> T onPrimary(Supplier<T> query) {
+        pin();
+        try {
+            return query.get();
+        } finally {
+            unpin();
+        }
+    }
+
+    public static void onPrimary(Runnable query) {
+        pin();
+        try {
+            query.run();
+        } finally {
+            unpin();
+        }
+    }
+
+    /**
+     * unpin 할 때까지 시작하는 트랜잭션은 primary 에서 읽는다 (pin / unpin 은 짝을 맞춰 호출한다)
+     */
+    public static void pin() {
+        Integer pinned = PINNED.get();
+        PINNED.set(pinned == null ? 1 : pinned + 1);
+    }
+
+    public static void unpin() {
+        Integer pinned = PINNED.get();
+        if (pinned == null || pinned <= 1) {
+            PINNED.remove();
+        } else {
+            PINNED.set(pinned - 1);
+        }
+    }
+
+    public static boolean isPrimaryPinned() {
+        return PINNED.get() != null;
+    }
+}
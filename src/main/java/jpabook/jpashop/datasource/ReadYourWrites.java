@@ -0,0 +1,63 @@
+package jpabook.jpashop.datasource;
+
+import jpabook.jpashop.service.MemberOrderChangedEvent;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * read-your-writes
+ * -> 주문 / 취소가 커밋된 회원은 window 동안 replica 대신 primary 에서 읽는다
+ * -> replica 에 아직 복제되지 않아서 방금 한 주문이 목록에 안 보이는 일이 없도록
+ * <p>
+ * window 는 replica 가 뒤처질 수 있는 최대 시간(max-lag-millis + check-millis)보다 길게 둔다
+ * 웹 요청은 web/ReadYourWritesInterceptor 가 회원을 찾아서 요청 전체를 primary 에 고정한다
+ */
+@Component
+public class ReadYourWrites {
+
+    private final boolean enabled;
+    @Getter
+    private final long windowMillis;
+
+    // 회원 id -> 마지막 쓰기 커밋 시각 (nanoTime)
+    private final ConcurrentMap<Long, Long> writtenAt = new ConcurrentHashMap<>();
+
+    public ReadYourWrites(@Value("${jpashop.replica.enabled:false}") boolean enabled,
+                          @Value("${jpashop.replica.read-your-writes-millis:10000}") long windowMillis) {
+        this.enabled = enabled;
+        this.windowMillis = windowMillis;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMemberOrderChanged(MemberOrderChangedEvent event) {
+        if (enabled) {
+            writtenAt.put(event.getMemberId(), System.nanoTime());
+        }
+    }
+
+    public boolean wroteRecently(Long memberId) {
+        Long at = writtenAt.get(memberId);
+        return at != null && System.nanoTime() - at < TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    /**
+     * memberId 가 최근에 쓴 회원이면 primary 에서, 아니면 평소대로 조회한다
+     */
+    public <T> T read(Long memberId, Supplier<T> query) {
+        return wroteRecently(memberId) ? ReadRouting.onPrimary(query) : query.get();
+    }
+
+    @Scheduled(fixedDelayString = "${jpashop.replica.read-your-writes-millis:10000}")
+    public void evictExpired() {
+        long expiredBefore = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        writtenAt.values().removeIf(at -> at - expiredBefore < 0);
+    }
+}
@@ -0,0 +1,61 @@
+package jpabook.jpashop.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * jpashop.replica.enabled=true 이면 DataSource 를 primary(spring.datasource) + replica(jpashop.replica.urls) 로 나눈다
+ * -> replica 는 primary 와 같은 계정으로 접속한다
+ * <p>
+ * 트랜잭션 매니저가 readOnly 트랜잭션을 시작하는 동안 표시해두고, 그때 잡는 커넥션을 replica 에서 꺼낸다
+ * -> TransactionSynchronizationManager 의 readOnly 는 커넥션을 잡은 뒤에야 표시되므로 쓸 수 없다
+ * -> 한 트랜잭션은 끝까지 같은 DB 를 쓴다
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "jpashop.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean(destroyMethod = "close")
+    public ReplicaSet replicaSet(DataSourceProperties properties, MeterRegistry meterRegistry,
+                                 @Value("${jpashop.replica.urls}") String[] urls,
+                                 @Value("${jpashop.replica.max-lag-millis:5000}") long maxLagMillis) {
+        if (urls.length == 0) {
+            throw new IllegalStateException("jpashop.replica.urls 가 비어 있습니다.");
+        }
+        HikariDataSource primary = HikariPools.create(properties, "primary", properties.determineUrl(), meterRegistry);
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < urls.length; i++) {
+            HikariDataSource replica = HikariPools.create(properties, "replica-" + i, urls[i].trim(), meterRegistry);
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        return new ReplicaSet(primary, replicas, maxLagMillis, meterRegistry);
+    }
+
+    @Bean
+    public DataSource dataSource(ReplicaSet replicaSet) {
+        return new ReplicaRoutingDataSource(replicaSet);
+    }
+
+    /**
+     * 스프링 부트가 만드는 JpaTransactionManager 대신 등록한다
+     */
+    @Bean
+    public PlatformTransactionManager transactionManager(ObjectProvider<TransactionManagerCustomizers> customizers) {
+        ReplicaRoutingTransactionManager transactionManager = new ReplicaRoutingTransactionManager();
+        customizers.ifAvailable(customizer -> customizer.customize(transactionManager));
+        return transactionManager;
+    }
+}
@@ -0,0 +1,28 @@
+package jpabook.jpashop.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 커넥션을 달라고 할 때마다 ReplicaSet 이 고른 DB(primary 또는 replica)의 커넥션을 준다
+ */
+class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final ReplicaSet replicaSet;
+
+    ReplicaRoutingDataSource(ReplicaSet replicaSet) {
+        this.replicaSet = replicaSet;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return replicaSet.route().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return replicaSet.route().getConnection(username, password);
+    }
+}
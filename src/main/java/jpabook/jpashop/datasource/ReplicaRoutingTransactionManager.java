@@ -0,0 +1,42 @@
+package jpabook.jpashop.datasource;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+
+/**
+ * readOnly 트랜잭션을 시작하는 동안(doBegin) 표시해둔다 -> 그 사이에 잡는 커넥션은 ReplicaSet 이 replica 에서 꺼낸다
+ * <p>
+ * primary 에서 읽는 경우
+ * - label 이 ReadRouting.PRIMARY 인 트랜잭션
+ * - ReadRouting 으로 고정한 스레드 (ReplicaSet.route 에서 본다)
+ */
+class ReplicaRoutingTransactionManager extends JpaTransactionManager {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ThreadLocal<Boolean> BEGINNING_REPLICA_READ = new ThreadLocal<>();
+
+    static boolean isBeginningReplicaRead() {
+        return BEGINNING_REPLICA_READ.get() != null;
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        if (!definition.isReadOnly() || isPrimaryLabeled(definition)) {
+            super.doBegin(transaction, definition);
+            return;
+        }
+        BEGINNING_REPLICA_READ.set(Boolean.TRUE);
+        try {
+            super.doBegin(transaction, definition);
+        } finally {
+            BEGINNING_REPLICA_READ.remove();
+        }
+    }
+
+    private static boolean isPrimaryLabeled(TransactionDefinition definition) {
+        return definition instanceof TransactionAttribute
+                && ((TransactionAttribute) definition).getLabels().contains(ReadRouting.PRIMARY);
+    }
+}
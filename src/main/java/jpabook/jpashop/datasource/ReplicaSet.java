@@ -0,0 +1,178 @@
+package jpabook.jpashop.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * primary 1개 + 읽기 전용 replica N개
+ * <p>
+ * 라우팅 (트랜잭션을 시작하면서 커넥션을 잡을 때 정한다)
+ * - @Transactional(readOnly = true) 트랜잭션 -> 건강한 replica 를 돌아가며 고른다, 하나도 없으면 primary
+ * - 그 외(쓰기 트랜잭션, 트랜잭션 밖, ReadRouting 으로 고정한 조회) -> primary
+ * <p>
+ * 상태 확인 (heartbeat)
+ * - check-millis 마다 replica 에 복제된 replica_heartbeat.beat_at 을 읽어 지연(현재 시각 - beat_at)을 재고, primary 에 현재 시각을 쓴다
+ * - 지연이 max-lag 보다 크거나 조회가 실패하면(연결 끊김, 아직 테이블이 없음) 그 replica 는 다음 확인 때까지 쓰지 않는다
+ * -> 재는 지연은 (check 주기 + 실제 복제 지연) 까지 나오므로 max-lag 는 check 주기보다 길게 둔다
+ * <p>
+ * jpashop.datasource.routes{target=primary|replica|fallback}, jpashop.replica.lag{replica=...} (/actuator/metrics)
+ * 상태는 /actuator/health 의 replicaSet (replica 가 모두 빠져도 primary 로 읽으므로 UP)
+ */
+@Slf4j
+public class ReplicaSet implements HealthIndicator, AutoCloseable {
+
+    private static final long UNKNOWN_LAG = -1;
+
+    private final HikariDataSource primary;
+    private final List<HikariDataSource> replicas;
+    private final long maxLagMillis;
+
+    private final AtomicLongArray lagMillis;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Counter primaryRoutes;
+    private final Counter replicaRoutes;
+    private final Counter fallbackRoutes;
+
+    public ReplicaSet(HikariDataSource primary, List<HikariDataSource> replicas, long maxLagMillis,
+                      MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.maxLagMillis = maxLagMillis;
+
+        // 처음 확인이 끝나기 전까지는 primary 에서 읽는다
+        this.lagMillis = new AtomicLongArray(replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            lagMillis.set(i, UNKNOWN_LAG);
+            int index = i;
+            Gauge.builder("jpashop.replica.lag", lagMillis, lags -> lags.get(index))
+                    .tag("replica", replicas.get(i).getPoolName())
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+        }
+
+        this.primaryRoutes = routeCounter(meterRegistry, "primary");
+        this.replicaRoutes = routeCounter(meterRegistry, "replica");
+        this.fallbackRoutes = routeCounter(meterRegistry, "fallback");
+
+        createHeartbeatTable();
+    }
+
+    private static Counter routeCounter(MeterRegistry meterRegistry, String target) {
+        return Counter.builder("jpashop.datasource.routes")
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+
+    DataSource route() {
+        if (!ReplicaRoutingTransactionManager.isBeginningReplicaRead() || ReadRouting.isPrimaryPinned()) {
+            primaryRoutes.increment();
+            return primary;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            int index = (start + i) % replicas.size();
+            if (isHealthy(index)) {
+                replicaRoutes.increment();
+                return replicas.get(index);
+            }
+        }
+        fallbackRoutes.increment();
+        return primary;
+    }
+
+    private boolean isHealthy(int index) {
+        long lag = lagMillis.get(index);
+        return lag != UNKNOWN_LAG && lag <= maxLagMillis;
+    }
+
+    @Scheduled(fixedDelayString = "${jpashop.replica.check-millis:1000}")
+    public void checkHealth() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < replicas.size(); i++) {
+            boolean wasHealthy = isHealthy(i);
+            lagMillis.set(i, lagOf(replicas.get(i), now));
+            if (wasHealthy != isHealthy(i)) {
+                log.warn("replica {} {}: lag={}ms", replicas.get(i).getPoolName(),
+                        isHealthy(i) ? "복귀" : "제외", lagMillis.get(i));
+            }
+        }
+        writeHeartbeat(now);
+    }
+
+    private long lagOf(DataSource replica, long now) {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select beat_at from replica_heartbeat where id = 1")) {
+            return rs.next() ? Math.max(0, now - rs.getLong(1)) : UNKNOWN_LAG;
+        } catch (SQLException e) {
+            log.debug("replica heartbeat 조회 실패", e);
+            return UNKNOWN_LAG;
+        }
+    }
+
+    private void writeHeartbeat(long now) {
+        try (Connection connection = primary.getConnection()) {
+            try (PreparedStatement update = connection.prepareStatement("update replica_heartbeat set beat_at = ? where id = 1")) {
+                update.setLong(1, now);
+                if (update.executeUpdate() > 0) {
+                    return;
+                }
+            }
+            try (PreparedStatement insert = connection.prepareStatement("insert into replica_heartbeat (id, beat_at) values (1, ?)")) {
+                insert.setLong(1, now);
+                insert.executeUpdate();
+            }
+        } catch (SQLException e) {
+            log.warn("replica heartbeat 기록 실패", e);
+        }
+    }
+
+    /**
+     * 엔티티가 아니므로 ddl-auto 가 만들지 않는다 (replica 에는 복제되어 생긴다)
+     */
+    private void createHeartbeatTable() {
+        try (Connection connection = primary.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("create table if not exists replica_heartbeat (id int primary key, beat_at bigint not null)");
+        } catch (SQLException e) {
+            throw new IllegalStateException("replica_heartbeat 테이블을 만들 수 없습니다.", e);
+        }
+    }
+
+    @Override
+    public Health health() {
+        Map<String, Object> details = new LinkedHashMap<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            Map<String, Object> replica = new LinkedHashMap<>();
+            replica.put("healthy", isHealthy(i));
+            replica.put("lagMillis", lagMillis.get(i));
+            details.put(replicas.get(i).getPoolName(), replica);
+        }
+        return Health.up().withDetails(details).build();
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(HikariDataSource::close);
+        primary.close();
+    }
+}
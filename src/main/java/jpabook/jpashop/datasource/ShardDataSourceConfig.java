@@ -0,0 +1,58 @@
+package jpabook.jpashop.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * jpashop.shard.enabled=true 이면 주문을 회원별로 메인 DB(spring.datasource) + jpashop.shard.urls 에 나눠 저장한다
+ * -> 샤드는 메인 DB 와 같은 계정으로 접속한다
+ * <p>
+ * 어느 샤드에서 커넥션을 꺼낼지는 트랜잭션을 시작할 때 정한다 (Shards)
+ * -> 정하지 않은 트랜잭션은 모두 메인 DB 를 쓴다
+ * <p>
+ * replica(jpashop.replica.enabled)와 같이 쓸 수 없다
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "jpashop.shard.enabled", havingValue = "true")
+public class ShardDataSourceConfig {
+
+    @Bean(destroyMethod = "close")
+    public ShardSet shardSet(DataSourceProperties properties, MeterRegistry meterRegistry,
+                             @Value("${jpashop.shard.urls}") String[] urls,
+                             @Value("${jpashop.replica.enabled:false}") boolean replicaEnabled) {
+        if (replicaEnabled) {
+            throw new IllegalStateException("jpashop.shard 와 jpashop.replica 는 같이 켤 수 없습니다.");
+        }
+        if (urls.length == 0) {
+            throw new IllegalStateException("jpashop.shard.urls 가 비어 있습니다.");
+        }
+        List<HikariDataSource> shards = new ArrayList<>();
+        shards.add(HikariPools.create(properties, "shard-0", properties.determineUrl(), meterRegistry));
+        for (int i = 0; i < urls.length; i++) {
+            shards.add(HikariPools.create(properties, "shard-" + (i + 1), urls[i].trim(), meterRegistry));
+        }
+        return new ShardSet(shards);
+    }
+
+    @Bean
+    public DataSource dataSource(ShardSet shardSet) {
+        return new ShardRoutingDataSource(shardSet);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer shardSchemaCustomizer(ShardSet shardSet) {
+        IntegratorProvider integrators = () -> List.of(new ShardSchemaIntegrator(shardSet));
+        return properties -> properties.put("hibernate.integrator_provider", integrators);
+    }
+}
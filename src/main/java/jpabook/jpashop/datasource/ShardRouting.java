@@ -0,0 +1,34 @@
+package jpabook.jpashop.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * 현재 스레드가 다음에 잡는 커넥션을 어느 샤드에서 꺼낼지 (ShardRoutingDataSource)
+ * -> 트랜잭션은 시작할 때 커넥션을 잡으므로 트랜잭션 밖에서 감싸야 한다 (Shards.write, Shards.gather)
+ */
+final class ShardRouting {
+
+    private static final ThreadLocal<Integer> SHARD = new ThreadLocal<>();
+
+    private ShardRouting() {
+    }
+
+    static <T> T on(int shard, Supplier<T> action) {
+        Integer previous = SHARD.get();
+        SHARD.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                SHARD.remove();
+            } else {
+                SHARD.set(previous);
+            }
+        }
+    }
+
+    static int current() {
+        Integer shard = SHARD.get();
+        return shard == null ? Shards.MAIN : shard;
+    }
+}
@@ -0,0 +1,28 @@
+package jpabook.jpashop.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 커넥션을 달라고 할 때마다 현재 스레드의 샤드(ShardRouting) 커넥션을 준다 (정하지 않았으면 메인 DB)
+ */
+class ShardRoutingDataSource extends AbstractDataSource {
+
+    private final ShardSet shardSet;
+
+    ShardRoutingDataSource(ShardSet shardSet) {
+        this.shardSet = shardSet;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return shardSet.get(ShardRouting.current()).getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return shardSet.get(ShardRouting.current()).getConnection(username, password);
+    }
+}
@@ -0,0 +1,58 @@
+package jpabook.jpashop.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.model.relational.Namespace;
+import org.hibernate.boot.model.relational.Sequence;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.hbm2ddl.SchemaExport;
+import org.hibernate.tool.schema.TargetType;
+
+import java.util.EnumSet;
+
+/**
+ * ddl-auto 가 create 이면 메인 DB 와 같은 스키마를 1번 이후 샤드에도 만든다
+ * -> 하이버네이트는 메인 DB(커넥션 기본값)에만 만든다
+ * -> 엔티티 매핑(Metadata)은 SessionFactory 를 만드는 중에만 얻을 수 있으므로 Integrator 로 받는다
+ * <p>
+ * create 가 아니면(운영) 샤드 스키마와 시퀀스 시작값(ShardSet.firstId)은 미리 맞춰 둬야 한다
+ */
+@Slf4j
+class ShardSchemaIntegrator implements Integrator {
+
+    private final ShardSet shardSet;
+
+    ShardSchemaIntegrator(ShardSet shardSet) {
+        this.shardSet = shardSet;
+    }
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                          SessionFactoryServiceRegistry serviceRegistry) {
+        Object ddlAuto = serviceRegistry.getService(ConfigurationService.class)
+                .getSettings().get(AvailableSettings.HBM2DDL_AUTO);
+        if (ddlAuto == null || !ddlAuto.toString().startsWith("create")) {
+            return;
+        }
+        for (int shard = 1; shard < shardSet.size(); shard++) {
+            ShardRouting.on(shard, () -> {
+                new SchemaExport().setHaltOnError(true).create(EnumSet.of(TargetType.DATABASE), metadata);
+                return null;
+            });
+            for (Namespace namespace : metadata.getDatabase().getNamespaces()) {
+                for (Sequence sequence : namespace.getSequences()) {
+                    shardSet.restartSequence(shard, sequence.getExportIdentifier());
+                }
+            }
+            log.info("shard {} schema created (ids from {})", shard, ShardSet.firstId(shard));
+        }
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
@@ -0,0 +1,104 @@
+package jpabook.jpashop.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * 주문 샤드 DB 들 (0번은 spring.datasource 의 메인 DB)
+ * <p>
+ * - 메인 DB: 회원, 상품(재고), 그 밖의 테이블 전부 + 0번 샤드의 주문
+ * - 1번 이후 샤드: 주문, 주문상품, 배송, 주문 outbox 이벤트 + 주문이 참조하는 회원 / 상품 사본 (copyRow)
+ * <p>
+ * 샤드마다 id 범위가 다르다 (shard << ORDER_ID_SHIFT 부터)
+ * -> 어느 DB 에서 만든 id 든 겹치지 않고, 주문 id 만 보고 샤드를 찾는다 (Shards.shardOfOrder)
+ */
+public class ShardSet implements AutoCloseable {
+
+    /**
+     * 샤드 하나가 쓰는 id 개수 2^40 (약 1조)
+     */
+    static final int ORDER_ID_SHIFT = 40;
+
+    private final List<HikariDataSource> shards;
+
+    public ShardSet(List<HikariDataSource> shards) {
+        this.shards = shards;
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    int otherShardConnections() {
+        return shards.stream().skip(1).mapToInt(HikariDataSource::getMaximumPoolSize).sum();
+    }
+
+    DataSource get(int shard) {
+        return shards.get(shard);
+    }
+
+    static long firstId(int shard) {
+        return (long) shard << ORDER_ID_SHIFT;
+    }
+
+    /**
+     * 메인 DB 의 row 하나를 샤드에 덮어쓴다 (없으면 insert)
+     * -> 샤드의 주문이 회원 / 상품과 조인(외래 키)할 수 있도록 사본을 둔다 (재고 같은 값은 메인 DB 가 기준)
+     * -> MERGE ... KEY 는 H2 문법이다
+     *
+     * @param main 메인 DB 커넥션 (닫지 않는다)
+     */
+    void copyRow(Connection main, int shard, String table, String idColumn, Long id) {
+        try (PreparedStatement select = main.prepareStatement("select * from " + table + " where " + idColumn + " = ?")) {
+            select.setLong(1, id);
+            try (ResultSet rs = select.executeQuery()) {
+                if (!rs.next()) {
+                    return;
+                }
+                ResultSetMetaData meta = rs.getMetaData();
+                StringJoiner columns = new StringJoiner(", ");
+                StringJoiner values = new StringJoiner(", ");
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    columns.add(meta.getColumnName(i));
+                    values.add("?");
+                }
+                try (Connection target = get(shard).getConnection();
+                     PreparedStatement merge = target.prepareStatement("merge into " + table + " (" + columns + ")" +
+                             " key (" + idColumn + ") values (" + values + ")")) {
+                    for (int i = 1; i <= meta.getColumnCount(); i++) {
+                        merge.setObject(i, rs.getObject(i));
+                    }
+                    merge.executeUpdate();
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(table + " " + id + " 를 샤드 " + shard + " 에 복사할 수 없습니다.", e);
+        }
+    }
+
+    /**
+     * 시퀀스가 샤드의 id 범위에서 시작하도록 한다 (스키마를 만든 직후)
+     */
+    void restartSequence(int shard, String sequence) {
+        try (Connection connection = get(shard).getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("alter sequence " + sequence + " restart with " + firstId(shard));
+        } catch (SQLException e) {
+            throw new IllegalStateException("샤드 " + shard + " 의 시퀀스 " + sequence + " 를 바꿀 수 없습니다.", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(HikariDataSource::close);
+    }
+}
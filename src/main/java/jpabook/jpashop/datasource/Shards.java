@@ -0,0 +1,296 @@
+package jpabook.jpashop.datasource;
+
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderEvent;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.archive.ArchivedDelivery;
+import jpabook.jpashop.domain.archive.ArchivedOrder;
+import jpabook.jpashop.domain.archive.ArchivedOrderItem;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 주문 샤드 (datasource/ShardDataSourceConfig)
+ * -> jpashop.shard.enabled=false 이면 메인 DB 하나뿐인 것처럼 동작한다 (write 말고는 호출한 스레드, 트랜잭션에서 그대로 실행)
+ * <p>
+ * 쓰기: 회원(shardOfMember) 또는 주문 id(shardOfOrder)로 샤드를 고르고, write 로 그 샤드의 새 트랜잭션에서 실행한다
+ * 조회: scatter 가 샤드마다 읽기 전용 트랜잭션을 동시에 열어 같은 쿼리를 실행하고, 정렬 순서대로 합쳐서 limit 건을 돌려준다
+ * -> 샤드 트랜잭션은 scatter 가 끝나면 닫힌다. 엔티티를 돌려줄 때는 호출한 쪽에서 읽을 연관관계를 쿼리 안에서 미리 읽어둔다
+ * 배치: 배송 처리, 주문 보관, 청크 반복(ChunkedIterator)은 onShard 로 샤드를 차례로 돌면서 샤드마다 따로 처리한다
+ * <p>
+ * 대량 가져오기(OrderImportService)는 재고와 같은 트랜잭션에서 커밋하도록 메인 DB(0번 샤드)에 주문을 만든다
+ */
+@Slf4j
+@Component
+public class Shards {
+
+    public static final int MAIN = 0;
+
+    // 샤드마다 따로 저장하는 엔티티 (회원 / 상품은 메인 DB 가 원본이고 샤드에는 사본만 있다)
+    private static final Set<Class<?>> SHARDED_ENTITIES = Set.of(Order.class, OrderItem.class, Delivery.class, OrderEvent.class,
+            ArchivedOrder.class, ArchivedOrderItem.class, ArchivedDelivery.class);
+
+    // 연속된 회원 id 를 샤드에 골고루 흩는다 (피보나치 해싱)
+    private static final long MEMBER_HASH = 0x9E3779B97F4A7C15L;
+
+    // scatter 안에서 다시 scatter 하면 (findOrderQueryDtos -> findOrders) 지금 샤드에서만 실행한다
+    private static final ThreadLocal<Boolean> IN_SHARD_QUERY = new ThreadLocal<>();
+
+    private final ShardSet shardSet;
+    private final DataSource dataSource;
+    private final TransactionTemplate writeTransaction;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ExecutorService executor;
+
+    public Shards(ObjectProvider<ShardSet> shardSet, DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.shardSet = shardSet.getIfAvailable();
+        this.dataSource = dataSource;
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnlyTransaction.setReadOnly(true);
+        // 샤드(메인 DB 제외) 커넥션을 모두 동시에 쓸 수 있을 만큼
+        this.executor = this.shardSet == null ? null : Executors.newFixedThreadPool(this.shardSet.otherShardConnections());
+    }
+
+    public boolean isEnabled() {
+        return shardSet != null;
+    }
+
+    public int count() {
+        return shardSet == null ? 1 : shardSet.size();
+    }
+
+    /**
+     * entityType 을 샤드마다 따로 저장하는지 (아니면 메인 DB 에서만 읽고 쓴다)
+     */
+    public boolean isSharded(Class<?> entityType) {
+        return shardSet != null && SHARDED_ENTITIES.contains(entityType);
+    }
+
+    public int shardOfMember(Long memberId) {
+        if (shardSet == null) {
+            return MAIN;
+        }
+        return Math.floorMod(Long.hashCode(memberId * MEMBER_HASH), shardSet.size());
+    }
+
+    /**
+     * 주문 id 가 속한 id 범위의 샤드 (주문은 회원의 샤드에서 만들어지므로 회원의 샤드와 같다)
+     * -> 대량 가져오기로 메인 DB 에 만든 주문은 회원과 상관없이 0번
+     */
+    public int shardOfOrder(Long orderId) {
+        if (shardSet == null) {
+            return MAIN;
+        }
+        long shard = orderId >>> ShardSet.ORDER_ID_SHIFT;
+        if (shard >= shardSet.size()) {
+            throw new IllegalArgumentException("주문 id 에 해당하는 샤드가 없습니다. id=" + orderId);
+        }
+        return (int) shard;
+    }
+
+    /**
+     * 메인 DB 의 회원 / 상품 row 를 샤드에 복사한다 (주문을 샤드에 저장하기 전에)
+     * -> 메인 DB 는 지금 트랜잭션의 커넥션으로 읽는다 (커넥션을 하나 더 잡으면 풀이 바닥났을 때 스레드끼리 서로 기다린다)
+     */
+    public void copyToShard(int shard, String table, String idColumn, Long id) {
+        if (shard == MAIN) {
+            return;
+        }
+        Connection main = DataSourceUtils.getConnection(dataSource);
+        try {
+            shardSet.copyRow(main, shard, table, idColumn, id);
+        } finally {
+            DataSourceUtils.releaseConnection(main, dataSource);
+        }
+    }
+
+    /**
+     * 메인 DB 에서 바뀐 회원 / 상품 row 를 모든 샤드의 사본에 덮어쓴다 (지금 트랜잭션이 커밋된 뒤에, 롤백하면 하지 않는다)
+     * -> 샤드의 주문 조회는 샤드의 사본과 조인해서 회원 이름, 상품 이름을 읽는다
+     * -> 복사에 실패해도 커밋된 변경은 그대로 두고 로그만 남긴다 (그 샤드의 다음 주문이 copyToShard 로 다시 덮어쓴다)
+     */
+    public void copyToShardsAfterCommit(String table, String idColumn, Long id) {
+        if (shardSet == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            copyToShards(table, idColumn, id);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                copyToShards(table, idColumn, id);
+            }
+        });
+    }
+
+    private void copyToShards(String table, String idColumn, Long id) {
+        for (int shard = 1; shard < shardSet.size(); shard++) {
+            try {
+                copyToShard(shard, table, idColumn, id);
+            } catch (IllegalStateException e) {
+                log.error("shard copy refresh failed: shard={}, table={}, id={}", shard, table, id, e);
+            }
+        }
+    }
+
+    /**
+     * shard 에서 새 트랜잭션(REQUIRES_NEW)을 시작해서 action 을 실행한다
+     * -> 호출한 쪽의 트랜잭션은 그동안 멈춰 있다가, action 이 커밋된 뒤에 이어서 진행한다 (두 트랜잭션은 따로 커밋된다)
+     * -> action 안에서 새로 시작하는 트랜잭션은 다시 메인 DB 를 쓴다
+     */
+    public <T> T write(int shard, Supplier<T> action) {
+        return ShardRouting.on(shard, () -> writeTransaction.execute(status -> ShardRouting.on(MAIN, action)));
+    }
+
+    /**
+     * action 안에서 시작하는 트랜잭션은 shard 를 쓴다 (이미 시작한 트랜잭션은 그대로)
+     */
+    public <T> T onShard(int shard, Supplier<T> action) {
+        return ShardRouting.on(shard, action);
+    }
+
+    /**
+     * 샤드마다 query 를 동시에 실행한다
+     * -> 메인 DB 는 호출한 스레드에서 조회한다 (트랜잭션 안이면 그 트랜잭션에서, 밖이면 새 읽기 전용 트랜잭션에서)
+     * -> 호출한 스레드가 메인 DB 커넥션을 잡은 채로 워커가 메인 DB 커넥션을 기다리는 일이 없다
+     * -> 트랜잭션 안에서 호출할 때는 메인 DB 트랜잭션이어야 한다 (write 안에서 호출하지 않는다)
+     *
+     * @return 샤드 순서대로 샤드별 결과 (샤드를 쓰지 않으면 지금 트랜잭션에서 실행한 결과 1개)
+     */
+    public <T> List<T> gather(Supplier<T> query) {
+        if (shardSet == null || Boolean.TRUE.equals(IN_SHARD_QUERY.get())) {
+            return Collections.singletonList(query.get());
+        }
+        List<Future<T>> futures = new ArrayList<>();
+        try {
+            for (int shard = 1; shard < shardSet.size(); shard++) {
+                int target = shard;
+                futures.add(executor.submit(() -> query(target, query)));
+            }
+            List<T> results = new ArrayList<>(shardSet.size());
+            results.add(TransactionSynchronizationManager.isActualTransactionActive()
+                    ? inShardQuery(query)
+                    : query(MAIN, query));
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (RuntimeException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("샤드 조회가 중단되었습니다.", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("샤드 조회에 실패했습니다.", e.getCause());
+        }
+    }
+
+    /**
+     * 샤드마다 order 순으로 정렬된 결과를 조회해서 order 순으로 합친 앞의 limit 건
+     * -> 샤드마다 limit 건까지만 조회하면 된다 (합친 결과의 앞 limit 건은 어느 샤드에서든 그 샤드의 앞 limit 건 안에 있다)
+     */
+    public <T> List<T> scatter(Supplier<List<T>> query, Comparator<? super T> order, int limit) {
+        List<List<T>> results = gather(query);
+        return results.size() == 1 ? results.get(0) : merge(results, order, limit);
+    }
+
+    private <T> T query(int shard, Supplier<T> query) {
+        return ShardRouting.on(shard, () -> readOnlyTransaction.execute(status -> ShardRouting.on(MAIN, () -> inShardQuery(query))));
+    }
+
+    private static <T> T inShardQuery(Supplier<T> query) {
+        IN_SHARD_QUERY.set(true);
+        try {
+            return query.get();
+        } finally {
+            IN_SHARD_QUERY.remove();
+        }
+    }
+
+    static <T> List<T> merge(List<List<T>> sorted, Comparator<? super T> order, int limit) {
+        // {샤드, 위치} -> 샤드마다 아직 꺼내지 않은 첫 원소끼리 비교한다 (같으면 앞 샤드 먼저)
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> {
+            int compared = order.compare(sorted.get(a[0]).get(a[1]), sorted.get(b[0]).get(b[1]));
+            return compared != 0 ? compared : Integer.compare(a[0], b[0]);
+        });
+        int total = 0;
+        for (int shard = 0; shard < sorted.size(); shard++) {
+            if (!sorted.get(shard).isEmpty()) {
+                heads.offer(new int[]{shard, 0});
+                total += sorted.get(shard).size();
+            }
+        }
+
+        List<T> merged = new ArrayList<>(Math.min(limit, total));
+        while (merged.size() < limit && !heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<T> shard = sorted.get(head[0]);
+            merged.add(shard.get(head[1]));
+            if (head[1] + 1 < shard.size()) {
+                heads.offer(new int[]{head[0], head[1] + 1});
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * gather 로 받은 샤드별 {id, 수} 목록을 id 별로 더한다
+     */
+    public static Map<Long, Long> sum(List<List<Object[]>> counts) {
+        Map<Long, Long> sum = new HashMap<>();
+        counts.forEach(rows -> rows.forEach(row -> sum.merge((Long) row[0], ((Number) row[1]).longValue(), Long::sum)));
+        return sum;
+    }
+
+    /**
+     * 수가 많은 순으로 앞의 limit 개 id
+     */
+    public static List<Long> top(Map<Long, Long> counts, int limit) {
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed())
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
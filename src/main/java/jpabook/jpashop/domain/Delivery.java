@@ -2,12 +2,16 @@ package jpabook.jpashop.domain;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.LazyToOne;
+import org.hibernate.annotations.LazyToOneOption;
 
 import javax.persistence.*;
+import java.time.LocalDateTime;
 
 @Setter
 @Getter
 @Entity
+@Table(indexes = @Index(name = "idx_delivery_status", columnList = "status"))
 public class Delivery {
 
     @Id
@@ -18,8 +22,13 @@ public class Delivery {
     /**
      * 일대일 연관관계의 주인을 Delivery가 아닌 Order로 설정했기 때문에
      * mappedBy = "delivery" 해준다.
+     *
+     * 연관관계 주인이 아닌 쪽의 일대일은 fk 가 없어서 프록시를 만들 수 없다.
+     * -> fetch = LAZY 를 줘도 Delivery 를 조회할 때마다 Order 를 찾는 쿼리가 한 번 더 나간다.
+     * -> 바이트코드 향상(build.gradle 의 hibernate.enhance) + NO_PROXY 로 getOrder() 를 호출할 때 조회한다.
      */
     @OneToOne(mappedBy = "delivery", fetch = FetchType.LAZY)
+    @LazyToOne(LazyToOneOption.NO_PROXY)
     private Order order;
 
     @Embedded
@@ -27,4 +36,18 @@ public class Delivery {
 
     @Enumerated(EnumType.STRING) // 무조건 STRING 으로
     private DeliveryStatus status;
+
+    /**
+     * 낙관적 락
+     * -> 배송 처리(DeliveryPipeline)의 COMP 변경과 주문 취소가 동시에 일어나도 한쪽만 성공한다
+     */
+    @Version
+    private Long version;
+
+    /**
+     * 배송 처리 워커가 이 배송을 선점(claim)했다는 표시
+     * -> 다른 워커는 claimToken 이 있는 배송을 가져가지 않는다 (claimedAt 이 오래되면 다시 가져간다)
+     */
+    private String claimToken;
+    private LocalDateTime claimedAt;
 }
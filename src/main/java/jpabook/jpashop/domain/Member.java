@@ -14,6 +14,7 @@ import java.util.List;
 @Setter
 @Getter
 @Entity
+@Table(indexes = @Index(name = "idx_member_name", columnList = "name"))
 public class Member {
 
     @Id
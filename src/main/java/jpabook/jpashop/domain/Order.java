@@ -1,5 +1,6 @@
 package jpabook.jpashop.domain;
 
+import jpabook.jpashop.domain.archive.ArchivedOrder;
 import lombok.*;
 import org.hibernate.annotations.BatchSize;
 
@@ -12,7 +13,12 @@ import java.util.List;
 @Setter
 @Getter
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        // 주문 검색(OrderRepository.search)의 조건 + 정렬(order_date desc)에 맞춘 복합 인덱스
+        @Index(name = "idx_orders_status_order_date", columnList = "status, orderDate"),
+        @Index(name = "idx_orders_member_order_date", columnList = "member_id, orderDate"),
+        @Index(name = "idx_orders_order_date", columnList = "orderDate")
+})
 public class Order {
 
     @Id
@@ -86,6 +92,7 @@ public class Order {
     public static Order createOrder(Member member, Delivery delivery, OrderItem... orderItems) {
         Order order = new Order();
         order.setMember(member);
+        delivery.setStatus(DeliveryStatus.READY); // 주문 시점에는 배송 준비 상태
         order.setDelivery(delivery);
         for (OrderItem orderItem : orderItems) {
             order.addOrderItem(orderItem);
@@ -96,6 +103,40 @@ public class Order {
         return order;
     }
 
+    /**
+     * 대량 주문 가져오기(OrderImportService) 전용 생성 메소드
+     * -> StatelessSession 으로 insert 하므로 member.orders 같은 반대쪽 컬렉션은 채우지 않는다
+     */
+    public static Order createImportedOrder(Member member, Delivery delivery, OrderItem orderItem) {
+        Order order = new Order();
+        order.member = member;
+        delivery.setStatus(DeliveryStatus.READY);
+        order.setDelivery(delivery);
+        order.addOrderItem(orderItem);
+
+        order.setStatus(OrderStatus.ORDER);
+        order.setOrderDate(LocalDateTime.now());
+        return order;
+    }
+
+    /**
+     * 보관된 주문(orders_archive)을 주문 검색 결과로 돌려줄 때 쓰는 생성 메소드
+     * -> 영속성 컨텍스트에 없는 주문이라 수정해도 DB 에 반영되지 않는다 (member.orders 도 채우지 않는다)
+     */
+    public static Order createArchivedOrder(ArchivedOrder archived, Member member, Delivery delivery, List<OrderItem> orderItems) {
+        Order order = new Order();
+        order.id = archived.getId();
+        order.member = member;
+        order.setDelivery(delivery);
+        for (OrderItem orderItem : orderItems) {
+            order.addOrderItem(orderItem);
+        }
+
+        order.setStatus(archived.getStatus());
+        order.setOrderDate(archived.getOrderDate());
+        return order;
+    }
+
     /**
      * 비지니스 로직
      * 주문 취소
@@ -0,0 +1,54 @@
+package jpabook.jpashop.domain;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 주문 이벤트 outbox
+ * <p>
+ * 주문 트랜잭션 안에서 외부 시스템에 바로 이벤트를 보내면
+ * -> 외부 시스템이 느리면 주문도 느려진다
+ * -> 이벤트는 보냈는데 주문이 롤백되거나, 주문은 커밋됐는데 이벤트를 못 보낼 수 있다
+ * <p>
+ * 주문과 같은 트랜잭션에서 outbox 테이블에 이벤트를 저장만 해두고,
+ * OrderEventRelay 가 따로 읽어서 보낸 뒤 publishedAt 을 채운다.
+ */
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Getter
+@Entity
+@Table(name = "order_event_outbox",
+        indexes = @Index(name = "idx_order_event_outbox_published_at", columnList = "publishedAt, order_event_id"))
+public class OrderEvent {
+
+    @Id
+    @GeneratedValue
+    @Column(name = "order_event_id")
+    private Long id;
+
+    private Long orderId;
+
+    @Enumerated(EnumType.STRING)
+    private OrderEventType type;
+
+    @Lob
+    private String payload; // JSON
+
+    private LocalDateTime createdAt;
+    private LocalDateTime publishedAt; // null 이면 아직 보내지 않은 이벤트
+
+    /**
+     * 생성 메소드
+     */
+    public static OrderEvent create(Long orderId, OrderEventType type, String payload) {
+        OrderEvent orderEvent = new OrderEvent();
+        orderEvent.orderId = orderId;
+        orderEvent.type = type;
+        orderEvent.payload = payload;
+        orderEvent.createdAt = LocalDateTime.now();
+        return orderEvent;
+    }
+}
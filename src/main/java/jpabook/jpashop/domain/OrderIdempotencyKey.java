@@ -0,0 +1,53 @@
+package jpabook.jpashop.domain;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 주문 요청의 Idempotency-Key
+ * <p>
+ * 모바일 클라이언트는 타임아웃이 나면 같은 POST /order 를 다시 보낸다
+ * -> 주문과 같은 트랜잭션에서 키를 먼저 insert 한다
+ * -> 같은 키로 동시에 들어온 요청은 unique 인덱스에 걸려 하나만 주문된다
+ * -> retention-hours 가 지난 키는 IdempotencyKeyCleanupJob 이 지운다
+ */
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Getter
+@Entity
+@Table(name = "order_idempotency_key",
+        uniqueConstraints = @UniqueConstraint(name = "uk_order_idempotency_key", columnNames = "idempotencyKey"),
+        indexes = @Index(name = "idx_order_idempotency_key_created_at", columnList = "createdAt"))
+public class OrderIdempotencyKey {
+
+    public static final int MAX_KEY_LENGTH = 64;
+
+    @Id
+    @GeneratedValue
+    @Column(name = "order_idempotency_key_id")
+    private Long id;
+
+    @Column(nullable = false, length = MAX_KEY_LENGTH)
+    private String idempotencyKey;
+
+    private Long orderId;
+
+    private LocalDateTime createdAt;
+
+    /**
+     * 생성 메소드
+     */
+    public static OrderIdempotencyKey create(String idempotencyKey) {
+        OrderIdempotencyKey orderIdempotencyKey = new OrderIdempotencyKey();
+        orderIdempotencyKey.idempotencyKey = idempotencyKey;
+        orderIdempotencyKey.createdAt = LocalDateTime.now();
+        return orderIdempotencyKey;
+    }
+
+    public void complete(Long orderId) {
+        this.orderId = orderId;
+    }
+}
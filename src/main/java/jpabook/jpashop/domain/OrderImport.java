@@ -0,0 +1,47 @@
+package jpabook.jpashop.domain;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 대량 주문 가져오기 진행 상황
+ * <p>
+ * 청크를 커밋할 때 같은 트랜잭션에서 committedLines 를 올린다
+ * -> 중간에 실패해도 같은 source 로 다시 실행하면 committedLines 다음 줄부터 이어서 가져온다
+ */
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Getter
+@Entity
+@Table(name = "order_import",
+        uniqueConstraints = @UniqueConstraint(name = "uk_order_import_source", columnNames = "source"))
+public class OrderImport {
+
+    @Id
+    @GeneratedValue
+    @Column(name = "order_import_id")
+    private Long id;
+
+    @Column(nullable = false)
+    private String source; // 파트너 파일 이름 등 가져오기 단위를 구분하는 값
+
+    private long committedLines; // 커밋된 마지막 줄 번호 (헤더 포함, 1부터)
+    private long importedOrders;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    /**
+     * 생성 메소드
+     */
+    public static OrderImport create(String source) {
+        OrderImport orderImport = new OrderImport();
+        orderImport.source = source;
+        orderImport.createdAt = LocalDateTime.now();
+        orderImport.updatedAt = orderImport.createdAt;
+        return orderImport;
+    }
+}
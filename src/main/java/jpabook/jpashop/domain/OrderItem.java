@@ -54,6 +54,19 @@ public class OrderItem {
         return orderItem;
     }
 
+    /**
+     * 재고를 차감하지 않는 생성 메소드 (대량 주문 가져오기, 샤드 주문)
+     * -> 재고는 OrderImportService 가 청크 단위로 상품별 합계만큼 한 번에 차감한다
+     * -> 샤드에 저장하는 주문은 OrderService 가 메인 DB 의 상품에서 차감한다
+     */
+    public static OrderItem createImportedOrderItem(Item item, int orderPrice, int count) {
+        OrderItem orderItem = new OrderItem();
+        orderItem.setItem(item);
+        orderItem.setOrderPrice(orderPrice);
+        orderItem.setCount(count);
+        return orderItem;
+    }
+
     /**
      * 비지니스 로직
      * 주문 취소
@@ -0,0 +1,26 @@
+package jpabook.jpashop.domain.archive;
+
+import jpabook.jpashop.domain.DeliveryStatus;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Getter
+@Entity
+@Table(name = "delivery_archive")
+public class ArchivedDelivery {
+
+    @Id
+    @Column(name = "delivery_id")
+    private Long id;
+
+    private String city;
+    private String street;
+    private String zipcode;
+
+    @Enumerated(EnumType.STRING)
+    private DeliveryStatus status;
+}
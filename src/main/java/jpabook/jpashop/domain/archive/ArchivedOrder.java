@@ -0,0 +1,42 @@
+package jpabook.jpashop.domain.archive;
+
+import jpabook.jpashop.domain.OrderStatus;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 보관(archive) 주문
+ * <p>
+ * orders 테이블은 계속 커지기만 하고, 목록/검색 쿼리는 전체 이력을 다 훑는다.
+ * -> 처리가 끝난 오래된 주문은 orders_archive 로 옮겨서 orders 는 최근(hot) 주문만 유지한다.
+ * <p>
+ * 보관 데이터는 수정하지 않으므로 연관관계 없이 fk 값만 그대로 복사해둔다.
+ * id 도 원래 주문의 id 를 그대로 사용한다 (@GeneratedValue X)
+ */
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Getter
+@Entity
+@Table(name = "orders_archive",
+        indexes = @Index(name = "idx_orders_archive_order_date", columnList = "order_date"))
+public class ArchivedOrder {
+
+    @Id
+    @Column(name = "order_id")
+    private Long id;
+
+    @Column(name = "member_id")
+    private Long memberId;
+
+    @Column(name = "delivery_id")
+    private Long deliveryId;
+
+    @Column(name = "order_date")
+    private LocalDateTime orderDate;
+
+    @Enumerated(EnumType.STRING)
+    private OrderStatus status;
+}
@@ -0,0 +1,32 @@
+package jpabook.jpashop.domain.archive;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Getter
+@Entity
+@Table(name = "order_item_archive",
+        indexes = @Index(name = "idx_order_item_archive_order_id", columnList = "order_id"))
+public class ArchivedOrderItem {
+
+    @Id
+    @Column(name = "order_item_id")
+    private Long id;
+
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(name = "item_id")
+    private Long itemId;
+
+    private int orderPrice; // 주문 당시 가격
+    /**
+     * count 는 HQL insert 컬럼 목록에서 예약어로 해석된다 -> 필드명만 바꾸고 컬럼명은 유지
+     */
+    @Column(name = "count")
+    private int orderCount; // 주문 당시 수량
+}
@@ -0,0 +1,24 @@
+package jpabook.jpashop.mapper;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 엔티티 -> DTO 매퍼를 컴파일 시점에 생성한다 (mapper-processor 모듈의 MapperProcessor)
+ * <p>
+ * - DTO 에는 기본 생성자와 setter 가 있어야 한다
+ * - DTO 필드마다 엔티티의 같은 이름 필드(다르면 @MapPath)를 getter 로 읽어서 setter 로 넣는다
+ * - 생성되는 클래스: {DTO 이름}Mapper (중첩 클래스면 {바깥 클래스}_{DTO 이름}Mapper)
+ * -> map(엔티티), mapAll(엔티티 List), ASSOCIATIONS(매핑에 필요한 연관관계 경로)
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface MapFrom {
+
+    /**
+     * 원본 엔티티 타입
+     */
+    Class<?> value();
+}
@@ -0,0 +1,17 @@
+package jpabook.jpashop.mapper;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * DTO 필드 이름과 엔티티 필드 이름이 다를 때 엔티티 쪽 경로를 지정한다
+ * -> "id", "member.name", "delivery.address" 처럼 '.' 으로 연관관계를 따라간다
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface MapPath {
+
+    String value();
+}
@@ -0,0 +1,13 @@
+package jpabook.jpashop.repository;
+
+import java.util.List;
+
+/**
+ * id 범위(afterId < id <= endId) 하나를 id 순으로 조회한다 (ChunkedIterator 참고)
+ * -> MemberRepository::findChunk, ItemRepository::findChunk, OrderRepository::findChunkWithMemberDelivery
+ */
+@FunctionalInterface
+public interface ChunkQuery<T> {
+
+    List<T> find(Long afterId, Long endId);
+}
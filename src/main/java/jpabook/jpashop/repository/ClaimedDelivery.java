@@ -0,0 +1,17 @@
+package jpabook.jpashop.repository;
+
+import lombok.Data;
+
+/**
+ * 워커가 선점한 배송 (id + 선점 시점의 version)
+ */
+@Data
+public class ClaimedDelivery {
+    private Long id;
+    private Long version;
+
+    public ClaimedDelivery(Long id, Long version) {
+        this.id = id;
+        this.version = version;
+    }
+}
@@ -0,0 +1,129 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.OrderStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 배송 처리 파이프라인용 벌크 쿼리
+ * <p>
+ * SELECT ... FOR UPDATE SKIP LOCKED 대신 claim 컬럼으로 선점한다.
+ * 1. 후보 조회: 워커 번호(partition)로 나눈 id 중 READY 이면서 아무도 선점하지 않은 배송
+ * 2. 선점: "claim_token is null" 조건을 건 update -> 먼저 update 한 워커만 가져간다
+ * 3. 처리: 내 claimToken + 선점 시점의 version 이 그대로인 row 만 COMP 로 바꾼다 (JDBC batch)
+ */
+@Repository
+@RequiredArgsConstructor
+public class DeliveryRepository {
+
+    private final EntityManager em;
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<Long> findClaimCandidateIds(int partition, int partitions, LocalDateTime expiredBefore, int limit) {
+        return em.createQuery(
+                        "select d.id from Order o join o.delivery d" +
+                                " where d.status = :deliveryStatus" +
+                                " and o.status = :orderStatus" +
+                                " and mod(d.id, :partitions) = :partition" +
+                                " and (d.claimToken is null or d.claimedAt < :expiredBefore)" +
+                                " order by d.id", Long.class)
+                .setParameter("deliveryStatus", DeliveryStatus.READY)
+                .setParameter("orderStatus", OrderStatus.ORDER)
+                .setParameter("partitions", partitions)
+                .setParameter("partition", partition)
+                .setParameter("expiredBefore", expiredBefore)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * 벌크 연산: 후보 배송을 선점한다
+     * -> 다른 워커가 먼저 선점한 row 는 조건에 걸리지 않아서 update 되지 않는다
+     */
+    public int claim(List<Long> deliveryIds, String claimToken, LocalDateTime now, LocalDateTime expiredBefore) {
+        return em.createQuery(
+                        "update Delivery d" +
+                                " set d.claimToken = :claimToken, d.claimedAt = :now, d.version = d.version + 1" +
+                                " where d.id in :deliveryIds" +
+                                " and d.status = :deliveryStatus" +
+                                " and (d.claimToken is null or d.claimedAt < :expiredBefore)")
+                .setParameter("claimToken", claimToken)
+                .setParameter("now", now)
+                .setParameter("deliveryIds", deliveryIds)
+                .setParameter("deliveryStatus", DeliveryStatus.READY)
+                .setParameter("expiredBefore", expiredBefore)
+                .executeUpdate();
+    }
+
+    public List<ClaimedDelivery> findClaimed(String claimToken) {
+        return em.createQuery(
+                        "select new jpabook.jpashop.repository.ClaimedDelivery(d.id, d.version)" +
+                                " from Delivery d" +
+                                " where d.claimToken = :claimToken" +
+                                " and d.status = :deliveryStatus", ClaimedDelivery.class)
+                .setParameter("claimToken", claimToken)
+                .setParameter("deliveryStatus", DeliveryStatus.READY)
+                .getResultList();
+    }
+
+    /**
+     * JDBC batch update 로 COMP 처리한다
+     * -> 선점 이후 주문이 취소되면 version 이 바뀌어 있으므로 해당 row 는 update 되지 않는다
+     *
+     * @return COMP 로 바뀐 배송 수
+     */
+    public int complete(List<ClaimedDelivery> deliveries, String claimToken) {
+        int[] updated = jdbcTemplate.batchUpdate(
+                "update delivery set status = ?, version = version + 1, claim_token = null, claimed_at = null" +
+                        " where delivery_id = ? and version = ? and claim_token = ? and status = ?",
+                deliveries.stream()
+                        .map(d -> new Object[]{DeliveryStatus.COMP.name(), d.getId(), d.getVersion(),
+                                claimToken, DeliveryStatus.READY.name()})
+                        .collect(Collectors.toList()));
+        int completed = 0;
+        for (int count : updated) {
+            if (count > 0) {
+                completed += count;
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * 주문 취소 전에 배송 version 을 올려둔다 (아직 COMP 가 아닌 배송만, Order.cancel 과 같은 조건)
+     * -> 상태가 없는(null) 예전 배송도 취소할 수 있다
+     * -> 이미 선점된 배송이 있어도 워커의 complete 는 version 이 달라서 실패한다
+     *
+     * @return version 을 올린 배송 수 (주문 수보다 적으면 이미 COMP 된 배송이 있다)
+     */
+    public int touchCancelableDeliveries(List<Long> orderIds) {
+        return em.createQuery(
+                        "update Delivery d set d.version = d.version + 1" +
+                                " where (d.status is null or d.status <> :deliveryStatus)" +
+                                " and d.id in (select o.delivery.id from Order o where o.id in :orderIds)")
+                .setParameter("deliveryStatus", DeliveryStatus.COMP)
+                .setParameter("orderIds", orderIds)
+                .executeUpdate();
+    }
+
+    /**
+     * 배송 상태별 배송 수 (OrderStatusCounters 보정용)
+     */
+    public Map<DeliveryStatus, Long> countByStatus() {
+        Map<DeliveryStatus, Long> counts = new EnumMap<>(DeliveryStatus.class);
+        em.createQuery("select d.status, count(d) from Delivery d group by d.status", Object[].class)
+                .getResultList().stream()
+                .filter(row -> row[0] != null)
+                .forEach(row -> counts.put((DeliveryStatus) row[0], (Long) row[1]));
+        return counts;
+    }
+}
@@ -0,0 +1,32 @@
+package jpabook.jpashop.repository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+/**
+ * 전체 테이블을 id 범위로 나눈다
+ */
+public class EntityChunks {
+
+    private EntityChunks() {
+    }
+
+    /**
+     * afterId 다음부터 chunkSize 번째 id
+     * -> 다음 청크는 afterId < id <= (반환값)
+     * -> id 만 읽으므로 pk 인덱스만 본다 (엔티티는 청크마다 따로 조회한다)
+     *
+     * @return 남은 row 가 chunkSize 보다 적으면 null (마지막 청크)
+     */
+    public static Long findChunkEndId(EntityManager em, Class<?> entityType, Long afterId, int chunkSize) {
+        List<Long> endIds = em.createQuery(
+                        "select e.id from " + em.getMetamodel().entity(entityType).getName() + " e" +
+                                " where e.id > :afterId" +
+                                " order by e.id", Long.class)
+                .setParameter("afterId", afterId)
+                .setFirstResult(chunkSize - 1)
+                .setMaxResults(1)
+                .getResultList();
+        return endIds.isEmpty() ? null : endIds.get(0);
+    }
+}
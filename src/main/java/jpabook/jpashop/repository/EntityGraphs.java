@@ -0,0 +1,47 @@
+package jpabook.jpashop.repository;
+
+import javax.persistence.EntityGraph;
+import javax.persistence.EntityManager;
+import javax.persistence.Subgraph;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * "member", "orderItems.item" 같은 연관관계 경로 목록으로 EntityGraph 를 만든다
+ * -> 매퍼의 ASSOCIATIONS 를 그대로 넘기면 매핑에 필요한 연관관계만 한 번에 조회한다
+ */
+public class EntityGraphs {
+
+    private EntityGraphs() {
+    }
+
+    public static <T> EntityGraph<T> create(EntityManager em, Class<T> rootType, List<String> paths) {
+        EntityGraph<T> graph = em.createEntityGraph(rootType);
+        Map<String, Subgraph<?>> subgraphs = new HashMap<>();
+
+        for (String path : paths) {
+            int dot = path.lastIndexOf('.');
+            if (dot < 0) {
+                graph.addAttributeNodes(path);
+            } else {
+                subgraph(graph, subgraphs, path.substring(0, dot)).addAttributeNodes(path.substring(dot + 1));
+            }
+        }
+        return graph;
+    }
+
+    private static Subgraph<?> subgraph(EntityGraph<?> graph, Map<String, Subgraph<?>> subgraphs, String path) {
+        Subgraph<?> subgraph = subgraphs.get(path);
+        if (subgraph != null) {
+            return subgraph;
+        }
+
+        int dot = path.lastIndexOf('.');
+        subgraph = dot < 0
+                ? graph.addSubgraph(path)
+                : subgraph(graph, subgraphs, path.substring(0, dot)).addSubgraph(path.substring(dot + 1));
+        subgraphs.put(path, subgraph);
+        return subgraph;
+    }
+}
@@ -1,17 +1,21 @@
 package jpabook.jpashop.repository;
 
+import jpabook.jpashop.datasource.Shards;
 import jpabook.jpashop.domain.item.Item;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.jpa.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.EntityManager;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 @RequiredArgsConstructor
 public class ItemRepository {
 
     private final EntityManager em;
+    private final Shards shards;
 
     /**
      * item 은 JPA 에 저장하기 전까지 id 값이 없다 (완전히 새로 생성된다)
@@ -35,8 +39,70 @@ public class ItemRepository {
         return em.find(Item.class, id);
     }
 
+    /**
+     * 목록 화면용 읽기 전용 조회 (상품 수정은 findOne 으로 조회한 엔티티로 한다)
+     */
     public List<Item> findAll() {
         return em.createQuery("select i from Item i", Item.class)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultList();
+    }
+
+    /**
+     * 청크 조회 (afterId < id <= endId)
+     */
+    public List<Item> findChunk(Long afterId, Long endId) {
+        return em.createQuery(
+                        "select i from Item i" +
+                                " where i.id > :afterId and i.id <= :endId" +
+                                " order by i.id", Item.class)
+                .setParameter("afterId", afterId)
+                .setParameter("endId", endId)
+                .getResultList();
+    }
+
+    /**
+     * 주문 수량이 많은 상품 순으로 id 조회
+     * -> 주문 샤드를 쓰면 샤드마다 상위 limit 개를 더해서 고른다 (여러 샤드에 조금씩 나뉜 상품은 덜 셀 수 있다)
+     */
+    public List<Long> findMostOrderedIds(int limit) {
+        return Shards.top(Shards.sum(shards.gather(() -> em.createQuery(
+                        "select oi.item.id, sum(oi.count) from OrderItem oi" +
+                                " group by oi.item.id" +
+                                " order by sum(oi.count) desc", Object[].class)
+                .setMaxResults(limit)
+                .getResultList())), limit);
+    }
+
+    /**
+     * 이름 자동완성 인덱스용 {id, name} (엔티티를 만들지 않는다)
+     */
+    public List<Object[]> findNames() {
+        return em.createQuery("select i.id, i.name from Item i", Object[].class)
                 .getResultList();
     }
+
+    /**
+     * 상품별 주문 수량 합계 (자동완성 인기도, 주문 샤드를 쓰면 모든 샤드의 합)
+     */
+    public Map<Long, Long> findOrderedCounts() {
+        return Shards.sum(shards.gather(() -> em.createQuery(
+                        "select oi.item.id, sum(oi.count) from OrderItem oi group by oi.item.id", Object[].class)
+                .getResultList()));
+    }
+
+    /**
+     * 벌크 연산: 취소된 주문들의 주문 수량만큼 상품별로 재고를 한 번에 복구한다
+     * -> update item set stock_quantity = stock_quantity + (상품별 주문 수량 합)
+     */
+    public int bulkAddStock(List<Long> orderIds) {
+        return em.createQuery(
+                        "update Item i set i.stockQuantity = i.stockQuantity +" +
+                                " (select sum(oi.count) from OrderItem oi" +
+                                " where oi.item = i and oi.order.id in :orderIds)" +
+                                " where i.id in" +
+                                " (select oi2.item.id from OrderItem oi2 where oi2.order.id in :orderIds)")
+                .setParameter("orderIds", orderIds)
+                .executeUpdate();
+    }
 }
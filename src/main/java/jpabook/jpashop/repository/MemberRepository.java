@@ -1,7 +1,9 @@
 package jpabook.jpashop.repository;
 
+import jpabook.jpashop.datasource.Shards;
 import jpabook.jpashop.domain.Member;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.jpa.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.EntityManager;
@@ -22,6 +24,7 @@ public class MemberRepository {
      * @RequiredArgsConstructor private final EntityManager em;
      */
     private final EntityManager em;
+    private final Shards shards;
 
     /**
      * EntityManagerFactory 는 @PersistenceUnit으로 빈 설정
@@ -39,9 +42,37 @@ public class MemberRepository {
 
     /**
      * JPQL로 쿼리를 작성한다
+     * -> 목록 화면 / 응답용 조회이므로 읽기 전용 (스냅샷을 남기지 않는다, 수정해도 반영되지 않는다)
      */
     public List<Member> findAll() {
         return em.createQuery("select m from Member m", Member.class)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultList();
+    }
+
+    /**
+     * 주문을 많이 한 회원 순으로 id 조회
+     * -> 주문 샤드를 쓰면 샤드마다 상위 limit 명을 더해서 고른다 (회원의 주문은 회원의 샤드에 모인다)
+     */
+    public List<Long> findMostOrderingIds(int limit) {
+        return Shards.top(Shards.sum(shards.gather(() -> em.createQuery(
+                        "select o.member.id, count(o) from Order o" +
+                                " group by o.member.id" +
+                                " order by count(o) desc", Object[].class)
+                .setMaxResults(limit)
+                .getResultList())), limit);
+    }
+
+    /**
+     * 청크 조회 (afterId < id <= endId)
+     */
+    public List<Member> findChunk(Long afterId, Long endId) {
+        return em.createQuery(
+                        "select m from Member m" +
+                                " where m.id > :afterId and m.id <= :endId" +
+                                " order by m.id", Member.class)
+                .setParameter("afterId", afterId)
+                .setParameter("endId", endId)
                 .getResultList();
     }
 
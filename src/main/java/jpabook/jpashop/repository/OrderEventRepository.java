@@ -0,0 +1,45 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.OrderEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class OrderEventRepository {
+
+    private final EntityManager em;
+
+    public void save(OrderEvent orderEvent) {
+        em.persist(orderEvent);
+    }
+
+    /**
+     * 아직 보내지 않은 이벤트를 저장된 순서(id)대로 조회
+     * -> 같은 주문의 이벤트는 항상 발생한 순서대로 나간다
+     */
+    public List<OrderEvent> findPending(int limit) {
+        return em.createQuery(
+                        "select e from OrderEvent e" +
+                                " where e.publishedAt is null" +
+                                " order by e.id", OrderEvent.class)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * 벌크 연산: 보낸 이벤트 표시
+     */
+    public int markPublished(List<Long> orderEventIds, LocalDateTime publishedAt) {
+        return em.createQuery(
+                        "update OrderEvent e set e.publishedAt = :publishedAt" +
+                                " where e.id in :orderEventIds")
+                .setParameter("publishedAt", publishedAt)
+                .setParameter("orderEventIds", orderEventIds)
+                .executeUpdate();
+    }
+}
@@ -0,0 +1,53 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.OrderIdempotencyKey;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class OrderIdempotencyKeyRepository {
+
+    private final EntityManager em;
+
+    /**
+     * 바로 flush 해서 이미 있는 키면 주문을 만들기 전에 unique 제약조건 위반이 난다
+     * -> @Repository 예외 변환으로 DataIntegrityViolationException
+     */
+    public void save(OrderIdempotencyKey orderIdempotencyKey) {
+        em.persist(orderIdempotencyKey);
+        em.flush();
+    }
+
+    public Long findOrderId(String idempotencyKey) {
+        List<Long> orderIds = em.createQuery(
+                        "select k.orderId from OrderIdempotencyKey k" +
+                                " where k.idempotencyKey = :idempotencyKey", Long.class)
+                .setParameter("idempotencyKey", idempotencyKey)
+                .getResultList();
+        return orderIds.isEmpty() ? null : orderIds.get(0);
+    }
+
+    /**
+     * cutoff 전에 만든 키 limit 개 (idx_order_idempotency_key_created_at)
+     */
+    public List<Long> findExpiredIds(LocalDateTime cutoff, int limit) {
+        return em.createQuery(
+                        "select k.id from OrderIdempotencyKey k" +
+                                " where k.createdAt < :cutoff" +
+                                " order by k.createdAt", Long.class)
+                .setParameter("cutoff", cutoff)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    public int deleteByIds(List<Long> ids) {
+        return em.createQuery("delete from OrderIdempotencyKey k where k.id in :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
+    }
+}
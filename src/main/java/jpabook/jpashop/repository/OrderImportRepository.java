@@ -0,0 +1,91 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.OrderImport;
+import jpabook.jpashop.domain.item.Item;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 대량 주문 가져오기(OrderImportService)용 StatelessSession 쿼리
+ * <p>
+ * StatelessSession 은 영속성 컨텍스트가 없다
+ * -> 1차 캐시, 스냅샷, 변경 감지, flush 가 없고 insert / update 가 바로 나간다
+ * -> 조회한 엔티티는 처음부터 준영속 상태다 (지연 로딩 불가)
+ */
+@Repository
+@RequiredArgsConstructor
+public class OrderImportRepository {
+
+    private final EntityManagerFactory emf;
+
+    public StatelessSession openSession(int jdbcBatchSize) {
+        StatelessSession session = emf.unwrap(SessionFactory.class).openStatelessSession();
+        session.setJdbcBatchSize(jdbcBatchSize);
+        return session;
+    }
+
+    public OrderImport findBySource(StatelessSession session, String source) {
+        List<OrderImport> orderImports = session.createQuery(
+                        "select i from OrderImport i where i.source = :source", OrderImport.class)
+                .setParameter("source", source)
+                .getResultList();
+        return orderImports.isEmpty() ? null : orderImports.get(0);
+    }
+
+    public List<Member> findMembers(StatelessSession session, Collection<Long> memberIds) {
+        return session.createQuery("select m from Member m where m.id in :memberIds", Member.class)
+                .setParameter("memberIds", memberIds)
+                .getResultList();
+    }
+
+    public List<Item> findItems(StatelessSession session, Collection<Long> itemIds) {
+        return session.createQuery("select i from Item i where i.id in :itemIds", Item.class)
+                .setParameter("itemIds", itemIds)
+                .getResultList();
+    }
+
+    /**
+     * 재고 차감 (청크 안의 상품별 주문 수량 합계)
+     *
+     * @return 0 이면 재고가 부족하다
+     */
+    public int removeStock(StatelessSession session, Long itemId, int quantity) {
+        return session.createQuery(
+                        "update Item i set i.stockQuantity = i.stockQuantity - :quantity" +
+                                " where i.id = :itemId and i.stockQuantity >= :quantity")
+                .setParameter("quantity", quantity)
+                .setParameter("itemId", itemId)
+                .executeUpdate();
+    }
+
+    /**
+     * 진행 상황 갱신 (expectedLines 에서 committedLines 로)
+     * -> 같은 source 를 동시에 가져오면 먼저 커밋한 쪽이 committedLines 를 바꾼다
+     *
+     * @return 0 이면 다른 가져오기가 이미 이 줄들을 커밋했다
+     */
+    public int updateProgress(StatelessSession session, Long orderImportId, long expectedLines, long committedLines,
+                              int importedOrders) {
+        return session.createQuery(
+                        "update OrderImport i" +
+                                " set i.committedLines = :committedLines," +
+                                " i.importedOrders = i.importedOrders + :importedOrders," +
+                                " i.updatedAt = :now" +
+                                " where i.id = :orderImportId" +
+                                " and i.committedLines = :expectedLines")
+                .setParameter("committedLines", committedLines)
+                .setParameter("importedOrders", (long) importedOrders)
+                .setParameter("now", LocalDateTime.now())
+                .setParameter("orderImportId", orderImportId)
+                .setParameter("expectedLines", expectedLines)
+                .executeUpdate();
+    }
+}
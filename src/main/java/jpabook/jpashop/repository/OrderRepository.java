@@ -1,23 +1,54 @@
 package jpabook.jpashop.repository;
 
+import jpabook.jpashop.datasource.Shards;
 import jpabook.jpashop.domain.Member;
 import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.repository.order.archive.OrderArchiveRepository;
 import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryDto;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.hibernate.jpa.QueryHints;
 import org.springframework.stereotype.Repository;
 import org.springframework.util.StringUtils;
 
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.*;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * 화면 / API 응답용으로 엔티티 목록을 조회하는 메소드(findAllWith*, findAllByString, search)는 읽기 전용으로 조회한다
+ * -> QueryHints.HINT_READONLY : 영속성 컨텍스트에 스냅샷(loadedState)을 남기지 않고 flush 때 변경 감지도 하지 않는다
+ * -> 조회한 엔티티를 수정해도 DB 에 반영되지 않는다 (수정할 엔티티는 findOne 으로 조회할 것)
+ * <p>
+ * @Transactional(readOnly = true) 트랜잭션은 스프링(HibernateJpaDialect)이 세션 전체를 읽기 전용으로 열어서 힌트가 없어도 같다.
+ * 힌트는 쓰기 트랜잭션 안에서 목록을 조회할 때를 위한 것이다.
+ * <p>
+ * 주문 샤드를 쓰면(datasource/Shards) 목록 조회(findAllWith*, findAllByString, search, findOrderIds)는 샤드마다 조회해서 합친다
+ * -> findOne, findChunkWithMemberDelivery, 벌크 연산은 지금 트랜잭션의 샤드에서 실행한다 (Shards.write / onShard 로 샤드를 골라서 부른다)
+ */
 @Repository
 @RequiredArgsConstructor
 public class OrderRepository {
 
+    private static final int FIND_ALL_BY_STRING_LIMIT = 1000;
+    private static final Comparator<Order> BY_ID = Comparator.comparing(Order::getId);
+    private static final Comparator<Order> LATEST_FIRST =
+            Comparator.comparing(Order::getOrderDate).thenComparing(Order::getId).reversed();
+
     private final EntityManager em;
+    private final Shards shards;
+    private final OrderArchiveRepository orderArchiveRepository;
 
     /**
      * 주문 로직
@@ -71,6 +102,10 @@ public class OrderRepository {
 
     // 진짜 비추
     public List<Order> findAllByString(OrderSearch orderSearch) {
+        return shards.scatter(() -> loadForShards(findAllByStringInShard(orderSearch)), BY_ID, FIND_ALL_BY_STRING_LIMIT);
+    }
+
+    private List<Order> findAllByStringInShard(OrderSearch orderSearch) {
         //language=JPAQL
         String jpql = "select o From Order o join o.member m";
         boolean isFirstCondition = true;
@@ -94,8 +129,10 @@ public class OrderRepository {
             }
             jpql += " m.name like :name";
         }
+        jpql += " order by o.id"; // 샤드별 결과를 id 순으로 합친다
         TypedQuery<Order> query = em.createQuery(jpql, Order.class)
-                .setMaxResults(1000); //최대 1000건
+                .setHint(QueryHints.HINT_READONLY, true)
+                .setMaxResults(FIND_ALL_BY_STRING_LIMIT); //최대 1000건
         if (orderSearch.getOrderStatus() != null) {
             query = query.setParameter("status", orderSearch.getOrderStatus());
         }
@@ -115,11 +152,13 @@ public class OrderRepository {
      * Order의 지연로딩 설정된 필드에 값을 채워서 가져온다. (프록시 ㄴㄴ, 찐 값 ㅇㅇ)
      */
     public List<Order> findAllWithMemberDelivery() {
-        return em.createQuery(
+        return shards.scatter(() -> loadForShards(em.createQuery(
                         "select o from Order o " +
                                 " join fetch o.member m" +
-                                " join fetch o.delivery d", Order.class)
-                .getResultList();
+                                " join fetch o.delivery d" +
+                                " order by o.id", Order.class)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultList()), BY_ID, Integer.MAX_VALUE);
     }
 
     /**
@@ -144,15 +183,28 @@ public class OrderRepository {
      * 부정합하게 조회될 수 있다
      */
     public List<Order> findAllWithItem() {
-        return em.createQuery(
+        return shards.scatter(() -> em.createQuery(
                         "select distinct o from Order o " +
                                 " join fetch o.member m " +
                                 " join fetch o.delivery d " +
                                 " join fetch o.orderItems oi " +
-                                " join fetch oi.item i", Order.class)
+                                " join fetch oi.item i" +
+                                " order by o.id", Order.class)
+                .setHint(QueryHints.HINT_READONLY, true)
 //                .setFirstResult(0)
 //                .setMaxResults(100) // -> 경고를 내고 메모리에 데이터를 올려둔 다음 페이징한다. (큰일남)
-                .getResultList();
+                .getResultList(), BY_ID, Integer.MAX_VALUE);
+    }
+
+    /**
+     * associations 경로를 EntityGraph 로 함께 조회한다 (findAllWithItem 의 fetch join 과 같은 SQL 1번)
+     * -> 매퍼의 ASSOCIATIONS 를 넘기면 매핑 중 지연 로딩이 일어나지 않는다
+     */
+    public List<Order> findAllWithGraph(List<String> associations) {
+        return shards.scatter(() -> loadForShards(em.createQuery("select distinct o from Order o order by o.id", Order.class)
+                .setHint("javax.persistence.loadgraph", EntityGraphs.create(em, Order.class, associations))
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultList()), BY_ID, Integer.MAX_VALUE);
     }
 
     /**
@@ -164,14 +216,270 @@ public class OrderRepository {
      * " join fetch o.delivery d"
      * 이 부분을 제거해도 batch_size:100 에 의해 최적화가 된다.
      * 하지만 네트워크를 많이 탄다.
+     * <p>
+     * 샤드를 쓰면 샤드마다 앞에서부터 offset + limit 건을 조회해서 id 순으로 합친 뒤 offset 부터 limit 건
+     * -> 합친 순서의 offset 위치가 어느 샤드에서 끝나는지 알 수 없으므로 샤드에서는 offset 을 건너뛸 수 없다 (뒤 페이지일수록 비싸다)
      */
     public List<Order> findAllWithMemberDelivery(int offset, int limit) {
+        if (!shards.isEnabled()) {
+            return findAllWithMemberDeliveryInShard(offset, limit);
+        }
+        int end = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+        List<Order> merged = shards.scatter(() -> loadForShards(findAllWithMemberDeliveryInShard(0, end)), BY_ID, end);
+        return merged.subList(Math.min(offset, merged.size()), merged.size());
+    }
+
+    private List<Order> findAllWithMemberDeliveryInShard(int offset, int limit) {
         return em.createQuery(
                         "select o from Order o " +
                                 " join fetch o.member m" +
-                                " join fetch o.delivery d", Order.class)
+                                " join fetch o.delivery d" +
+                                " order by o.id", Order.class)
+                .setHint(QueryHints.HINT_READONLY, true)
                 .setFirstResult(offset)
                 .setMaxResults(limit)
                 .getResultList();
     }
+
+    /**
+     * 청크 조회 (afterId < id <= endId), member / delivery 는 fetch join
+     * -> 전체 주문을 도는 배치는 findAllWithMemberDelivery() 대신 ChunkedIterator 로 이 메소드를 반복 호출한다
+     */
+    public List<Order> findChunkWithMemberDelivery(Long afterId, Long endId) {
+        return em.createQuery(
+                        "select o from Order o" +
+                                " join fetch o.member m" +
+                                " join fetch o.delivery d" +
+                                " where o.id > :afterId and o.id <= :endId" +
+                                " order by o.id", Order.class)
+                .setParameter("afterId", afterId)
+                .setParameter("endId", endId)
+                .getResultList();
+    }
+
+    /**
+     * 주문 검색 (정렬 + keyset 페이징)
+     * <p>
+     * findAllByString 의 문제
+     * - id 순이라 1000건 제한에 걸리면 오래된 주문 1000건만 나온다
+     * - 다음 1000건을 가져올 방법이 없다
+     * <p>
+     * 최신 주문부터 (order_date desc, order_id desc) 정렬하고,
+     * 이전 페이지 마지막 주문의 (orderDate, id) 다음부터 limit 건을 가져온다.
+     * -> offset 을 쓰지 않으므로 뒤 페이지로 가도 앞의 row 를 읽고 버리지 않는다
+     * <p>
+     * 검색 조건별로 orders 의 복합 인덱스를 탄다
+     * - 주문 상태 + 기간: idx_orders_status_order_date (status, order_date)
+     * - 회원 + 기간: idx_orders_member_order_date (member_id, order_date)
+     * - 기간: idx_orders_order_date (order_date)
+     * - 배송 상태: idx_delivery_status (status)
+     * - 회원 이름: idx_member_name (name)
+     * <p>
+     * 샤드를 쓰면 샤드마다 limit 건씩 조회해서 최신순으로 합친 앞의 limit 건 (다음 페이지 커서는 그대로 쓴다)
+     * <p>
+     * 시작일이 보관 기준일보다 이전이면 OrderArchiveJob 이 orders_archive 로 옮긴 주문도 limit 건 조회해서 최신순으로 합친다
+     * -> 보관된 주문은 영속성 컨텍스트에 없는 Order 로 돌려준다 (OrderArchiveRepository.search)
+     */
+    public List<Order> search(OrderSearch orderSearch, int limit) {
+        return shards.scatter(() -> loadForShards(searchInShard(orderSearch, limit)), LATEST_FIRST, limit);
+    }
+
+    private List<Order> searchInShard(OrderSearch orderSearch, int limit) {
+        List<String> conditions = searchConditions(orderSearch);
+        if (orderSearch.getLastOrderDate() != null && orderSearch.getLastOrderId() != null) {
+            // (orderDate, id) < (lastOrderDate, lastOrderId)
+            // -> 앞의 "o.orderDate <= :lastOrderDate" 가 있어야 or 조건이어도 order_date 인덱스 범위 검색을 한다
+            conditions.add("o.orderDate <= :lastOrderDate" +
+                    " and (o.orderDate < :lastOrderDate or o.id < :lastOrderId)");
+        }
+        String jpql = "select o from Order o" +
+                " join fetch o.member m" +
+                " join fetch o.delivery d" +
+                where(conditions) +
+                " order by o.orderDate desc, o.id desc";
+
+        TypedQuery<Order> query = em.createQuery(jpql, Order.class)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .setMaxResults(limit);
+        bindSearchParameters(query, orderSearch);
+        if (orderSearch.getLastOrderDate() != null && orderSearch.getLastOrderId() != null) {
+            query.setParameter("lastOrderDate", orderSearch.getLastOrderDate());
+            query.setParameter("lastOrderId", orderSearch.getLastOrderId());
+        }
+        List<Order> orders = query.getResultList();
+        if (!orderArchiveRepository.mayContain(orderSearch)) {
+            return orders;
+        }
+        return Stream.concat(orders.stream(), orderArchiveRepository.search(orderSearch, limit).stream())
+                .sorted(LATEST_FIRST)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 일괄 취소 대상 주문 id 검색
+     * -> 엔티티 대신 id 만 조회한다 (findAllByString 처럼 1000건 제한이 없다)
+     * -> search 와 같이 보관된 주문 id 도 합친다 (처리가 끝난 주문이라 취소할 때 lockCancelableIds 에서 빠진다)
+     */
+    public List<Long> findOrderIds(OrderSearch orderSearch) {
+        return shards.scatter(() -> findOrderIdsInShard(orderSearch), Comparator.naturalOrder(), Integer.MAX_VALUE);
+    }
+
+    private List<Long> findOrderIdsInShard(OrderSearch orderSearch) {
+        String jpql = "select o.id from Order o" +
+                " join o.member m" +
+                " join o.delivery d" +
+                where(searchConditions(orderSearch)) +
+                " order by o.id";
+
+        TypedQuery<Long> query = em.createQuery(jpql, Long.class);
+        bindSearchParameters(query, orderSearch);
+        List<Long> orderIds = query.getResultList();
+        if (!orderArchiveRepository.mayContain(orderSearch)) {
+            return orderIds;
+        }
+        return Stream.concat(orderIds.stream(), orderArchiveRepository.findOrderIds(orderSearch).stream())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 샤드 트랜잭션은 scatter 가 끝나면 닫힌다
+     * -> 조회한 주문을 화면 / API 로 바꿀 때 읽는 연관관계(회원, 배송, 주문상품, 상품)를 샤드 트랜잭션 안에서 미리 읽어둔다
+     * -> 샤드를 쓰지 않으면 호출한 쪽 트랜잭션에서 필요할 때 지연 로딩한다
+     */
+    private List<Order> loadForShards(List<Order> orders) {
+        if (shards.isEnabled()) {
+            for (Order order : orders) {
+                Hibernate.initialize(order.getMember());
+                Hibernate.initialize(order.getDelivery());
+                for (OrderItem orderItem : order.getOrderItems()) {
+                    Hibernate.initialize(orderItem.getItem());
+                }
+            }
+        }
+        return orders;
+    }
+
+    private List<String> searchConditions(OrderSearch orderSearch) {
+        List<String> conditions = new ArrayList<>();
+        if (orderSearch.getOrderStatus() != null) {
+            conditions.add("o.status = :status");
+        }
+        if (StringUtils.hasText(orderSearch.getMemberName())) {
+            conditions.add("m.name like :name");
+        }
+        if (orderSearch.getMemberId() != null) {
+            conditions.add("o.member.id = :memberId");
+        }
+        if (orderSearch.getDeliveryStatus() != null) {
+            conditions.add("d.status = :deliveryStatus");
+        }
+        if (orderSearch.getOrderDateFrom() != null) {
+            conditions.add("o.orderDate >= :orderDateFrom");
+        }
+        if (orderSearch.getOrderDateTo() != null) {
+            conditions.add("o.orderDate < :orderDateTo");
+        }
+        return conditions;
+    }
+
+    private String where(List<String> conditions) {
+        return conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions);
+    }
+
+    /**
+     * 검색 조건 파라미터 (OrderArchiveRepository 도 같은 파라미터 이름으로 조건을 만든다)
+     */
+    public static void bindSearchParameters(TypedQuery<?> query, OrderSearch orderSearch) {
+        if (orderSearch.getOrderStatus() != null) {
+            query.setParameter("status", orderSearch.getOrderStatus());
+        }
+        if (StringUtils.hasText(orderSearch.getMemberName())) {
+            query.setParameter("name", orderSearch.getMemberName());
+        }
+        if (orderSearch.getMemberId() != null) {
+            query.setParameter("memberId", orderSearch.getMemberId());
+        }
+        if (orderSearch.getDeliveryStatus() != null) {
+            query.setParameter("deliveryStatus", orderSearch.getDeliveryStatus());
+        }
+        if (orderSearch.getOrderDateFrom() != null) {
+            query.setParameter("orderDateFrom", orderSearch.getOrderDateFrom().atStartOfDay());
+        }
+        if (orderSearch.getOrderDateTo() != null) {
+            // 끝 날짜를 포함하도록 다음날 0시 미만으로 조회한다
+            query.setParameter("orderDateTo", orderSearch.getOrderDateTo().plusDays(1).atStartOfDay());
+        }
+    }
+
+    /**
+     * 아직 취소되지 않은 주문만 골라내면서 row 락을 건다 (select ... for update)
+     * -> 동시에 같은 주문을 취소해도 재고가 두 번 복구되지 않는다
+     */
+    public List<Long> lockCancelableIds(List<Long> orderIds) {
+        return em.createQuery(
+                        "select o.id from Order o" +
+                                " where o.id in :orderIds" +
+                                " and o.status = :status", Long.class)
+                .setParameter("orderIds", orderIds)
+                .setParameter("status", OrderStatus.ORDER)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+    }
+
+    /**
+     * 벌크 연산: 주문 상태를 한 번에 CANCEL 로 바꾼다
+     * <p>
+     * 벌크 연산은 영속성 컨텍스트를 거치지 않고 DB 에 바로 쿼리를 날린다.
+     * -> 호출하는 쪽에서 영속성 컨텍스트를 flush / clear 해줘야 한다
+     */
+    public int bulkCancel(List<Long> orderIds) {
+        return em.createQuery(
+                        "update Order o set o.status = :status" +
+                                " where o.id in :orderIds")
+                .setParameter("status", OrderStatus.CANCEL)
+                .setParameter("orderIds", orderIds)
+                .executeUpdate();
+    }
+
+    /**
+     * 주문 상태별 주문 수 (OrderStatusCounters 보정용)
+     */
+    public Map<OrderStatus, Long> countByStatus() {
+        Map<OrderStatus, Long> counts = new EnumMap<>(OrderStatus.class);
+        em.createQuery("select o.status, count(o) from Order o group by o.status", Object[].class)
+                .getResultList().stream()
+                .filter(row -> row[0] != null)
+                .forEach(row -> counts.put((OrderStatus) row[0], (Long) row[1]));
+        return counts;
+    }
+
+    /**
+     * from 이후 주문(취소 제외)의 매출 합계
+     */
+    public long sumRevenueSince(LocalDateTime from) {
+        Long revenue = em.createQuery(
+                        "select sum(oi.orderPrice * oi.count) from OrderItem oi join oi.order o" +
+                                " where o.orderDate >= :from" +
+                                " and o.status = :status", Long.class)
+                .setParameter("from", from)
+                .setParameter("status", OrderStatus.ORDER)
+                .getSingleResult();
+        return revenue == null ? 0 : revenue;
+    }
+
+    /**
+     * 주문 목록 중 from 이후 주문의 매출 합계 (일괄 취소로 빠지는 오늘 매출)
+     */
+    public long sumRevenueSince(List<Long> orderIds, LocalDateTime from) {
+        Long revenue = em.createQuery(
+                        "select sum(oi.orderPrice * oi.count) from OrderItem oi join oi.order o" +
+                                " where o.id in :orderIds" +
+                                " and o.orderDate >= :from", Long.class)
+                .setParameter("orderIds", orderIds)
+                .setParameter("from", from)
+                .getSingleResult();
+        return revenue == null ? 0 : revenue;
+    }
 }
@@ -1,8 +1,13 @@
 package jpabook.jpashop.repository;
 
+import jpabook.jpashop.domain.DeliveryStatus;
 import jpabook.jpashop.domain.OrderStatus;
 import lombok.Getter;
 import lombok.Setter;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 @Getter
 @Setter
@@ -10,4 +15,21 @@ public class OrderSearch {
 
     private String memberName; // 회원 이름
     private OrderStatus orderStatus; // 주문 상태
+
+    private Long memberId; // 회원 id
+    private DeliveryStatus deliveryStatus; // 배송 상태
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate orderDateFrom; // 주문일 시작 (포함, 보관 기준일 이전이면 보관된 주문도 검색한다)
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate orderDateTo; // 주문일 끝 (포함)
+
+    /**
+     * keyset 페이징 커서
+     * -> 이전 페이지의 마지막 주문의 (orderDate, id)
+     * -> 값이 있으면 그 다음 주문부터 조회한다 (offset 없이 인덱스를 타고 바로 다음 페이지로 간다)
+     */
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime lastOrderDate;
+    private Long lastOrderId;
 }
@@ -0,0 +1,257 @@
+package jpabook.jpashop.repository.order.archive;
+
+import jpabook.jpashop.datasource.Shards;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.domain.archive.ArchivedDelivery;
+import jpabook.jpashop.domain.archive.ArchivedOrder;
+import jpabook.jpashop.domain.archive.ArchivedOrderItem;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryDto;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.StringUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * hot 테이블(orders, order_item, delivery) -> archive 테이블로 주문을 옮긴다.
+ * <p>
+ * 엔티티를 하나씩 조회해서 옮기면 주문 수만큼 select / insert / delete 가 나간다.
+ * -> insert ... select, delete ... where in 벌크 연산으로 청크당 쿼리 수를 일정하게 유지한다
+ * -> 벌크 연산은 영속성 컨텍스트를 거치지 않는다
+ * <p>
+ * 주문 샤드를 쓰면(datasource/Shards) 주문은 자기 샤드의 archive 테이블로 옮긴다 (OrderArchiveJob 이 샤드마다 부른다)
+ * -> 이력 조회(findOrderDtos)는 샤드마다 조회해서 합친다
+ * -> 주문 검색(search, findOrderIds)은 OrderRepository 가 샤드마다 hot 테이블과 같은 트랜잭션에서 부른다
+ */
+@Repository
+@RequiredArgsConstructor
+public class OrderArchiveRepository {
+
+    private static final String FROM_ARCHIVED_ORDER =
+            " from ArchivedOrder o" +
+                    " join Member m on m.id = o.memberId" +
+                    " join ArchivedDelivery d on d.id = o.deliveryId";
+    private static final Comparator<OrderSimpleQueryDto> BY_ORDER_DATE =
+            Comparator.comparing(OrderSimpleQueryDto::getOrderDate).thenComparing(OrderSimpleQueryDto::getOrderId);
+
+    private final EntityManager em;
+    private final Shards shards;
+
+    @Value("${jpashop.archive.retention-days:90}")
+    private int retentionDays;
+
+    /**
+     * 보관 대상: cutoff 이전에 주문했고, 처리가 끝난(배송완료 or 취소) 주문
+     */
+    public List<Long> findArchiveTargetIds(LocalDateTime cutoff, int limit) {
+        return em.createQuery(
+                        "select o.id from Order o join o.delivery d" +
+                                " where o.orderDate < :cutoff" +
+                                " and (d.status = :deliveryStatus or o.status = :orderStatus)" +
+                                " order by o.id", Long.class)
+                .setParameter("cutoff", cutoff)
+                .setParameter("deliveryStatus", DeliveryStatus.COMP)
+                .setParameter("orderStatus", OrderStatus.CANCEL)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * orderIds 에 해당하는 주문, 주문상품, 배송 정보를 archive 테이블로 복사한다
+     */
+    public void copyToArchive(List<Long> orderIds) {
+        em.createQuery(
+                        "insert into ArchivedDelivery (id, city, street, zipcode, status)" +
+                                " select d.id, d.address.city, d.address.street, d.address.zipcode, d.status" +
+                                " from Order o join o.delivery d" +
+                                " where o.id in :orderIds")
+                .setParameter("orderIds", orderIds)
+                .executeUpdate();
+        em.createQuery(
+                        "insert into ArchivedOrder (id, memberId, deliveryId, orderDate, status)" +
+                                " select o.id, o.member.id, o.delivery.id, o.orderDate, o.status" +
+                                " from Order o" +
+                                " where o.id in :orderIds")
+                .setParameter("orderIds", orderIds)
+                .executeUpdate();
+        em.createQuery(
+                        "insert into ArchivedOrderItem (id, orderId, itemId, orderPrice, orderCount)" +
+                                " select oi.id, oi.order.id, oi.item.id, oi.orderPrice, oi.count" +
+                                " from OrderItem oi" +
+                                " where oi.order.id in :orderIds")
+                .setParameter("orderIds", orderIds)
+                .executeUpdate();
+    }
+
+    /**
+     * hot 테이블에서 삭제한다
+     * -> fk 순서대로 order_item -> orders -> delivery
+     */
+    public void deleteFromHot(List<Long> orderIds) {
+        List<Long> deliveryIds = em.createQuery(
+                        "select o.delivery.id from Order o where o.id in :orderIds", Long.class)
+                .setParameter("orderIds", orderIds)
+                .getResultList();
+
+        em.createQuery("delete from OrderItem oi where oi.order.id in :orderIds")
+                .setParameter("orderIds", orderIds)
+                .executeUpdate();
+        em.createQuery("delete from Order o where o.id in :orderIds")
+                .setParameter("orderIds", orderIds)
+                .executeUpdate();
+        em.createQuery("delete from Delivery d where d.id in :deliveryIds")
+                .setParameter("deliveryIds", deliveryIds)
+                .executeUpdate();
+    }
+
+    /**
+     * 보관된 주문을 기간으로 조회 (이력 조회 전용)
+     */
+    public List<OrderSimpleQueryDto> findOrderDtos(LocalDateTime from, LocalDateTime to) {
+        return shards.scatter(() -> em.createQuery(
+                        "select new jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryDto(o.id, m.name, o.orderDate, o.status, d.city, d.street, d.zipcode)" +
+                                " from ArchivedOrder o" +
+                                " join Member m on m.id = o.memberId" +
+                                " join ArchivedDelivery d on d.id = o.deliveryId" +
+                                " where o.orderDate >= :from" +
+                                " and o.orderDate < :to" +
+                                " order by o.orderDate, o.id", OrderSimpleQueryDto.class)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .getResultList(), BY_ORDER_DATE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 검색 시작일이 보관 기준일(지금 - retention-days)보다 이전이면 OrderArchiveJob 이 옮긴 주문도 검색 대상이다
+     */
+    public boolean mayContain(OrderSearch orderSearch) {
+        return orderSearch.getOrderDateFrom() != null
+                && orderSearch.getOrderDateFrom().atStartOfDay().isBefore(LocalDateTime.now().minusDays(retentionDays));
+    }
+
+    /**
+     * 보관된 주문 검색 (OrderRepository.search 와 같은 조건, 정렬, keyset 커서)
+     * -> archive 테이블은 연관관계가 없으므로 영속성 컨텍스트에 없는 Order 로 만들어 돌려준다
+     * Query: 주문 1번, 주문상품 1번
+     */
+    public List<Order> search(OrderSearch orderSearch, int limit) {
+        List<String> conditions = searchConditions(orderSearch);
+        if (orderSearch.getLastOrderDate() != null && orderSearch.getLastOrderId() != null) {
+            conditions.add("o.orderDate <= :lastOrderDate" +
+                    " and (o.orderDate < :lastOrderDate or o.id < :lastOrderId)");
+        }
+        TypedQuery<Object[]> query = em.createQuery("select o, m, d" + FROM_ARCHIVED_ORDER +
+                        where(conditions) +
+                        " order by o.orderDate desc, o.id desc", Object[].class)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .setMaxResults(limit);
+        OrderRepository.bindSearchParameters(query, orderSearch);
+        if (orderSearch.getLastOrderDate() != null && orderSearch.getLastOrderId() != null) {
+            query.setParameter("lastOrderDate", orderSearch.getLastOrderDate());
+            query.setParameter("lastOrderId", orderSearch.getLastOrderId());
+        }
+        List<Object[]> rows = query.getResultList();
+        if (rows.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<Long, List<OrderItem>> orderItemMap = findOrderItemMap(rows.stream()
+                .map(row -> ((ArchivedOrder) row[0]).getId())
+                .collect(Collectors.toList()));
+        return rows.stream()
+                .map(row -> {
+                    ArchivedOrder archived = (ArchivedOrder) row[0];
+                    return Order.createArchivedOrder(archived, (Member) row[1], toDelivery((ArchivedDelivery) row[2]),
+                            orderItemMap.getOrDefault(archived.getId(), Collections.emptyList()));
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 보관된 주문 id 검색 (OrderRepository.findOrderIds 와 같은 조건)
+     */
+    public List<Long> findOrderIds(OrderSearch orderSearch) {
+        TypedQuery<Long> query = em.createQuery("select o.id" + FROM_ARCHIVED_ORDER +
+                where(searchConditions(orderSearch)) +
+                " order by o.id", Long.class);
+        OrderRepository.bindSearchParameters(query, orderSearch);
+        return query.getResultList();
+    }
+
+    private Map<Long, List<OrderItem>> findOrderItemMap(List<Long> orderIds) {
+        List<Object[]> rows = em.createQuery(
+                        "select oi, i from ArchivedOrderItem oi" +
+                                " join Item i on i.id = oi.itemId" +
+                                " where oi.orderId in :orderIds" +
+                                " order by oi.id", Object[].class)
+                .setParameter("orderIds", orderIds)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultList();
+        Map<Long, List<OrderItem>> orderItemMap = new HashMap<>();
+        for (Object[] row : rows) {
+            ArchivedOrderItem archived = (ArchivedOrderItem) row[0];
+            OrderItem orderItem = OrderItem.createImportedOrderItem((Item) row[1], archived.getOrderPrice(), archived.getOrderCount());
+            orderItem.setId(archived.getId());
+            orderItemMap.computeIfAbsent(archived.getOrderId(), orderId -> new ArrayList<>()).add(orderItem);
+        }
+        return orderItemMap;
+    }
+
+    private Delivery toDelivery(ArchivedDelivery archived) {
+        Delivery delivery = new Delivery();
+        delivery.setId(archived.getId());
+        delivery.setAddress(new Address(archived.getCity(), archived.getStreet(), archived.getZipcode()));
+        delivery.setStatus(archived.getStatus());
+        return delivery;
+    }
+
+    /**
+     * OrderRepository 의 검색 조건을 archive 테이블 컬럼으로 (파라미터 이름은 같다)
+     */
+    private List<String> searchConditions(OrderSearch orderSearch) {
+        List<String> conditions = new ArrayList<>();
+        if (orderSearch.getOrderStatus() != null) {
+            conditions.add("o.status = :status");
+        }
+        if (StringUtils.hasText(orderSearch.getMemberName())) {
+            conditions.add("m.name like :name");
+        }
+        if (orderSearch.getMemberId() != null) {
+            conditions.add("o.memberId = :memberId");
+        }
+        if (orderSearch.getDeliveryStatus() != null) {
+            conditions.add("d.status = :deliveryStatus");
+        }
+        if (orderSearch.getOrderDateFrom() != null) {
+            conditions.add("o.orderDate >= :orderDateFrom");
+        }
+        if (orderSearch.getOrderDateTo() != null) {
+            conditions.add("o.orderDate < :orderDateTo");
+        }
+        return conditions;
+    }
+
+    private String where(List<String> conditions) {
+        return conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions);
+    }
+}
@@ -0,0 +1,117 @@
+package jpabook.jpashop.repository.order.query;
+
+import jpabook.jpashop.domain.Address;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * V6 플랫 데이터(OrderFlatDto) -> OrderQueryDto 로 한 번에 묶는다.
+ * <p>
+ * Collectors.groupingBy 방식의 문제
+ * - row 마다 key 로 쓸 OrderQueryDto 를 새로 만들고, HashMap 에 전부 담은 뒤 다시 OrderQueryDto 로 복사한다
+ * - HashMap 을 거치므로 쿼리의 정렬 순서가 사라진다
+ * <p>
+ * 플랫 쿼리를 "order by o.id" 로 정렬해 두면 같은 주문의 row 는 연속으로 나온다.
+ * -> orderId 가 바뀌는 순간 이전 주문을 내보내면 된다 (메모리에는 주문 1건만 남는다)
+ * -> 반복되는 회원 이름, 상품 이름, 주소 문자열은 같은 인스턴스를 재사용한다
+ */
+public class OrderFlatGrouper {
+
+    private static final int MAX_POOLED_STRINGS = 10_000;
+
+    private OrderFlatGrouper() {
+    }
+
+    /**
+     * flats 는 orderId 순으로 정렬되어 있어야 한다.
+     * 반환된 Stream 을 닫으면 flats 도 닫힌다.
+     */
+    public static Stream<OrderQueryDto> group(Stream<OrderFlatDto> flats) {
+        GroupingSpliterator spliterator = new GroupingSpliterator(flats.iterator());
+        return StreamSupport.stream(spliterator, false)
+                .onClose(flats::close);
+    }
+
+    private static class GroupingSpliterator extends Spliterators.AbstractSpliterator<OrderQueryDto> {
+
+        private final Iterator<OrderFlatDto> flats;
+        private final StringPool strings = new StringPool();
+        private OrderFlatDto pending; // 다음 주문의 첫 row
+
+        GroupingSpliterator(Iterator<OrderFlatDto> flats) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.flats = flats;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super OrderQueryDto> action) {
+            OrderFlatDto first = pending != null ? pending : (flats.hasNext() ? flats.next() : null);
+            pending = null;
+            if (first == null) {
+                return false;
+            }
+
+            List<OrderItemQueryDto> orderItems = new ArrayList<>();
+            orderItems.add(toOrderItem(first));
+            while (flats.hasNext()) {
+                OrderFlatDto next = flats.next();
+                if (!Objects.equals(next.getOrderId(), first.getOrderId())) {
+                    pending = next;
+                    break;
+                }
+                orderItems.add(toOrderItem(next));
+            }
+
+            action.accept(new OrderQueryDto(first.getOrderId(), strings.dedup(first.getName()),
+                    first.getOrderDate(), first.getOrderStatus(), strings.dedup(first.getAddress()), orderItems));
+            return true;
+        }
+
+        private OrderItemQueryDto toOrderItem(OrderFlatDto flat) {
+            return new OrderItemQueryDto(flat.getOrderId(), strings.dedup(flat.getItemName()),
+                    flat.getOrderPrice(), flat.getCount());
+        }
+    }
+
+    /**
+     * 최근에 쓴 문자열을 재사용하기 위한 크기 제한 LRU
+     */
+    private static class StringPool extends LinkedHashMap<String, String> {
+
+        private static final long serialVersionUID = 1L;
+
+        StringPool() {
+            super(256, 0.75f, true);
+        }
+
+        String dedup(String value) {
+            if (value == null) {
+                return null;
+            }
+            String pooled = putIfAbsent(value, value);
+            return pooled != null ? pooled : value;
+        }
+
+        Address dedup(Address address) {
+            if (address == null) {
+                return null;
+            }
+            return new Address(dedup(address.getCity()), dedup(address.getStreet()), dedup(address.getZipcode()));
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_POOLED_STRINGS;
+        }
+    }
+}
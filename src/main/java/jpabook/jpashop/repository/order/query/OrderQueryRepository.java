@@ -1,18 +1,58 @@
 package jpabook.jpashop.repository.order.query;
 
+import jpabook.jpashop.datasource.Shards;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.jpa.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * 주문 샤드를 쓰면(datasource/Shards) 모든 조회를 샤드마다 동시에 실행하고 주문 id 순으로 합친다
+ * -> 샤드마다 같은 쿼리를 실행하므로 샤드 하나의 쿼리 수는 샤드를 쓰지 않을 때와 같다
+ * <p>
+ * DTO 조회 API(V4 ~ V6) 가 서비스 없이 바로 부르므로 리포지토리에서 읽기 전용 트랜잭션을 연다 (replica 에서 읽는다)
+ * -> streamAllByDto_flat 은 Stream 을 다 읽을 때까지 트랜잭션이 있어야 하므로 호출한 쪽의 트랜잭션에 참여한다
+ */
 @Repository
+@Transactional(readOnly = true)
 @RequiredArgsConstructor
 public class OrderQueryRepository {
 
+    private static final String FLAT_QUERY =
+            "select new jpabook.jpashop.repository.order.query.OrderFlatDto(o.id, m.name, o.orderDate, o.status, d.address, i.name, oi.orderPrice, oi.count)" +
+                    " from Order o" +
+                    " join o.member m" +
+                    " join o.delivery d" +
+                    " join o.orderItems oi" +
+                    " join oi.item i" +
+                    " where o.id > :lastOrderId" +
+                    " order by o.id, oi.id";
+    private static final String FLAT_RANGE_QUERY =
+            "select new jpabook.jpashop.repository.order.query.OrderFlatDto(o.id, m.name, o.orderDate, o.status, d.address, i.name, oi.orderPrice, oi.count)" +
+                    " from Order o" +
+                    " join o.member m" +
+                    " join o.delivery d" +
+                    " join o.orderItems oi" +
+                    " join oi.item i" +
+                    " where o.id > :lastOrderId and o.id <= :endOrderId" +
+                    " order by o.id, oi.id";
+    private static final int FLAT_FETCH_SIZE = 500;
+
+    // 주문 id 가 같은 row 는 한 샤드에만 있으므로 샤드 안의 순서(oi.id)가 그대로 유지된다
+    private static final Comparator<OrderQueryDto> BY_ORDER_ID = Comparator.comparing(OrderQueryDto::getOrderId);
+    private static final Comparator<OrderFlatDto> FLAT_BY_ORDER_ID = Comparator.comparing(OrderFlatDto::getOrderId);
+
     private final EntityManager em;
+    private final Shards shards;
 
     /**
      * 컬렉션은 별도로 조회
@@ -20,26 +60,38 @@ public class OrderQueryRepository {
      * 단건 조회에서 많이 사용하는 방식
      */
     public List<OrderQueryDto> findOrderQueryDtos() {
-        //루트 조회(toOne 코드를 모두 한번에 조회)
-        List<OrderQueryDto> result = findOrders(); // 쿼리 1번 -> N개
-        //루프를 돌면서 컬렉션 추가(추가 쿼리 실행)
-        result.forEach(o -> {
-            List<OrderItemQueryDto> orderItems = findOrderItems(o.getOrderId()); // 쿼리 N번
-            o.setOrderItems(orderItems);
-        });
-        return result;
+        return shards.scatter(() -> {
+            //루트 조회(toOne 코드를 모두 한번에 조회)
+            List<OrderQueryDto> result = findOrders(); // 쿼리 1번 -> N개
+            //루프를 돌면서 컬렉션 추가(추가 쿼리 실행)
+            result.forEach(o -> {
+                List<OrderItemQueryDto> orderItems = findOrderItems(o.getOrderId()); // 쿼리 N번
+                o.setOrderItems(orderItems);
+            });
+            return result;
+        }, BY_ORDER_ID, Integer.MAX_VALUE);
     }
 
     /**
      * 1:N 관계(컬렉션)를 제외한 나머지를 한번에 조회
      */
     public List<OrderQueryDto> findOrders() {
-        return em.createQuery(
-                        "select new jpabook.jpashop.repository.order.query.OrderQueryDto(o.id, m.name, o.orderDate, o.status, d.address)" +
-                                " from Order o " +
-                                " join o.member m " +
-                                " join o.delivery d", OrderQueryDto.class)
-                .getResultList();
+        return findOrders(Integer.MAX_VALUE);
+    }
+
+    private List<OrderQueryDto> findOrders(int maxResults) {
+        return shards.scatter(() -> {
+            TypedQuery<OrderQueryDto> query = em.createQuery(
+                    "select new jpabook.jpashop.repository.order.query.OrderQueryDto(o.id, m.name, o.orderDate, o.status, d.address)" +
+                            " from Order o " +
+                            " join o.member m " +
+                            " join o.delivery d" +
+                            " order by o.id", OrderQueryDto.class);
+            if (maxResults < Integer.MAX_VALUE) {
+                query.setMaxResults(maxResults);
+            }
+            return query.getResultList();
+        }, BY_ORDER_ID, maxResults);
     }
 
     /**
@@ -61,15 +113,73 @@ public class OrderQueryRepository {
      * 데이터를 한꺼번에 처리할 때 많이 사용하는 방식
      */
     public List<OrderQueryDto> findAllByDto_optimization() {
-        //루트 조회(toOne 코드를 모두 한번에 조회)
-        List<OrderQueryDto> result = findOrders();
-        //orderItem 컬렉션을 MAP 한방에 조회
+        return findAllByDto_optimization(Integer.MAX_VALUE);
+    }
+
+    /**
+     * V5 와 같은 쿼리(루트 1번, 컬렉션 IN 1번)로 앞에서 maxResults 건만 (WarmUpService 가 기동 시간을 줄이려고 쓴다)
+     */
+    public List<OrderQueryDto> findAllByDto_optimization(int maxResults) {
+        return shards.scatter(() -> {
+            //루트 조회(toOne 코드를 모두 한번에 조회)
+            List<OrderQueryDto> result = findOrders(maxResults);
+            if (result.isEmpty()) {
+                return result;
+            }
+            //orderItem 컬렉션을 MAP 한방에 조회
+            Map<Long, List<OrderItemQueryDto>> orderItemMap = findOrderItemMap(toOrderIds(result));
+            //루프를 돌면서 컬렉션 추가(추가 쿼리 실행X)
+            result.forEach(o -> o.setOrderItems(orderItemMap.get(o.getOrderId())));
+            return result;
+        }, BY_ORDER_ID, maxResults);
+    }
+
+    /**
+     * V5 를 청크 단위로 조회 (keyset 페이징)
+     * - where o.id > :lastOrderId order by o.id 로 offset 없이 다음 청크를 가져온다
+     * - 청크 하나당 쿼리: 루트 1번, 컬렉션 1번 (샤드를 쓰면 샤드마다)
+     */
+    public List<OrderQueryDto> findAllByDto_optimization(Long lastOrderId, int limit) {
+        return shards.scatter(() -> findAllByDto_optimizationInShard(lastOrderId, limit), BY_ORDER_ID, limit);
+    }
+
+    private List<OrderQueryDto> findAllByDto_optimizationInShard(Long lastOrderId, int limit) {
+        List<OrderQueryDto> result = findOrders(lastOrderId, limit);
+        if (result.isEmpty()) {
+            return result;
+        }
         Map<Long, List<OrderItemQueryDto>> orderItemMap = findOrderItemMap(toOrderIds(result));
-        //루프를 돌면서 컬렉션 추가(추가 쿼리 실행X)
-        result.forEach(o -> o.setOrderItems(orderItemMap.get(o.getOrderId())));
+        result.forEach(o -> o.setOrderItems(orderItemMap.getOrDefault(o.getOrderId(), Collections.emptyList())));
         return result;
     }
 
+    /**
+     * V5 스트리밍
+     * - 전체 List 를 만들지 않고, 소비하는 쪽이 다음 원소를 요구할 때 다음 청크를 조회한다
+     * - 메모리에는 청크 하나(chunkSize 개의 주문)만 올라간다
+     */
+    public Stream<OrderQueryDto> streamAllByDto_optimization(int chunkSize) {
+        return Stream.iterate(findAllByDto_optimization(0L, chunkSize),
+                        chunk -> !chunk.isEmpty(),
+                        chunk -> chunk.size() < chunkSize
+                                ? Collections.emptyList()
+                                : findAllByDto_optimization(chunk.get(chunk.size() - 1).getOrderId(), chunkSize))
+                .flatMap(List::stream);
+    }
+
+    private List<OrderQueryDto> findOrders(Long lastOrderId, int limit) {
+        return em.createQuery(
+                        "select new jpabook.jpashop.repository.order.query.OrderQueryDto(o.id, m.name, o.orderDate, o.status, d.address)" +
+                                " from Order o " +
+                                " join o.member m " +
+                                " join o.delivery d" +
+                                " where o.id > :lastOrderId" +
+                                " order by o.id", OrderQueryDto.class)
+                .setParameter("lastOrderId", lastOrderId)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
     private List<Long> toOrderIds(List<OrderQueryDto> result) {
         return result.stream()
                 .map(o -> o.getOrderId())
@@ -92,15 +202,54 @@ public class OrderQueryRepository {
 
     /**
      * 중복된 데이터가 나온다
+     * -> order by o.id 로 같은 주문의 row 를 연속으로 모아둔다 (OrderFlatGrouper 가 한 번에 묶을 수 있도록)
      */
     public List<OrderFlatDto> findAllByDto_flat() {
-        return em.createQuery(
-                        "select new jpabook.jpashop.repository.order.query.OrderFlatDto(o.id, m.name, o.orderDate, o.status, d.address, i.name, oi.orderPrice, oi.count)" +
-                                " from Order o" +
-                                " join o.member m" +
-                                " join o.delivery d" +
-                                " join o.orderItems oi" +
-                                " join oi.item i", OrderFlatDto.class)
-                .getResultList();
+        return shards.scatter(() -> em.createQuery(FLAT_QUERY, OrderFlatDto.class)
+                .setParameter("lastOrderId", 0L)
+                .getResultList(), FLAT_BY_ORDER_ID, Integer.MAX_VALUE);
+    }
+
+    /**
+     * V6 스트리밍
+     * - lastOrderId 다음 주문부터 row 를 하나씩 읽어온다 (getResultStream -> ScrollableResults)
+     * - 반환된 Stream 은 다 쓰고 나면 반드시 닫아야 한다
+     * <p>
+     * 샤드를 쓰면 커서를 샤드 트랜잭션 밖으로 가지고 나올 수 없다
+     * -> FLAT_FETCH_SIZE 개 주문씩 끊어서 조회한다 (streamAllByDto_optimization 처럼 다음 원소를 요구할 때 다음 청크)
+     */
+    public Stream<OrderFlatDto> streamAllByDto_flat(Long lastOrderId) {
+        if (shards.isEnabled()) {
+            return Stream.iterate(findFlatChunk(lastOrderId),
+                            chunk -> !chunk.isEmpty(),
+                            chunk -> findFlatChunk(chunk.get(chunk.size() - 1).getOrderId()))
+                    .flatMap(List::stream);
+        }
+        return em.createQuery(FLAT_QUERY, OrderFlatDto.class)
+                .setParameter("lastOrderId", lastOrderId)
+                .setHint(QueryHints.HINT_FETCH_SIZE, FLAT_FETCH_SIZE)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream();
+    }
+
+    /**
+     * lastOrderId 다음 주문 FLAT_FETCH_SIZE 개의 row
+     * -> 샤드를 합쳐서 FLAT_FETCH_SIZE 번째 주문 id 를 먼저 찾고, 그 id 까지의 row 를 샤드마다 조회해서 합친다
+     */
+    private List<OrderFlatDto> findFlatChunk(Long lastOrderId) {
+        List<Long> orderIds = shards.scatter(() -> em.createQuery(
+                                "select o.id from Order o where o.id > :lastOrderId order by o.id", Long.class)
+                        .setParameter("lastOrderId", lastOrderId)
+                        .setMaxResults(FLAT_FETCH_SIZE)
+                        .getResultList(),
+                Comparator.naturalOrder(), FLAT_FETCH_SIZE);
+        if (orderIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Long endOrderId = orderIds.get(orderIds.size() - 1);
+        return shards.scatter(() -> em.createQuery(FLAT_RANGE_QUERY, OrderFlatDto.class)
+                .setParameter("lastOrderId", lastOrderId)
+                .setParameter("endOrderId", endOrderId)
+                .getResultList(), FLAT_BY_ORDER_ID, Integer.MAX_VALUE);
     }
 }
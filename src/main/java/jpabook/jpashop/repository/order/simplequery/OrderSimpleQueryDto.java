@@ -22,4 +22,12 @@ public class OrderSimpleQueryDto {
         this.orderStatus = orderStatus;
         this.address = address;
     }
+
+    /**
+     * orders_archive 조회용 (보관 테이블은 주소를 컬럼으로 풀어서 저장한다)
+     */
+    public OrderSimpleQueryDto(Long orderId, String name, LocalDateTime
+            orderDate, OrderStatus orderStatus, String city, String street, String zipcode) {
+        this(orderId, name, orderDate, orderStatus, new Address(city, street, zipcode));
+    }
 }
@@ -1,26 +1,69 @@
 package jpabook.jpashop.repository.order.simplequery;
 
+import jpabook.jpashop.datasource.Shards;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.time.LocalDateTime;
+import java.util.Comparator;
 import java.util.List;
 
+/**
+ * DTO 조회 API(V4) 가 서비스 없이 바로 부르므로 리포지토리에서 읽기 전용 트랜잭션을 연다 (replica 에서 읽는다)
+ * <p>
+ * 주문 샤드를 쓰면(datasource/Shards) 샤드마다 같은 쿼리를 실행하고 정렬 순서대로 합친다
+ */
 @Repository
+@Transactional(readOnly = true)
 @RequiredArgsConstructor
 public class OrderSimpleQueryRepository {
 
+    private static final String SELECT_DTO =
+            "select new jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryDto(o.id, m.name, o.orderDate, o.status, d.address)" +
+                    " from Order o" +
+                    " join o.member m" +
+                    " join o.delivery d";
+    private static final Comparator<OrderSimpleQueryDto> BY_ORDER_ID = Comparator.comparing(OrderSimpleQueryDto::getOrderId);
+    private static final Comparator<OrderSimpleQueryDto> BY_ORDER_DATE =
+            Comparator.comparing(OrderSimpleQueryDto::getOrderDate).thenComparing(OrderSimpleQueryDto::getOrderId);
+
     private final EntityManager em;
+    private final Shards shards;
 
     /**
      * V4
      */
     public List<OrderSimpleQueryDto> findOrderDtos() {
-        return em.createQuery(
-                        "select new jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryDto(o.id, m.name, o.orderDate, o.status, d.address)" +
-                                " from Order o" +
-                                " join o.member m" +
-                                " join o.delivery d", OrderSimpleQueryDto.class)
-                .getResultList();
+        return findOrderDtos(Integer.MAX_VALUE);
+    }
+
+    /**
+     * V4 와 같은 쿼리로 앞에서 maxResults 건만 (WarmUpService 가 기동 시간을 줄이려고 쓴다)
+     */
+    public List<OrderSimpleQueryDto> findOrderDtos(int maxResults) {
+        return shards.scatter(() -> {
+            TypedQuery<OrderSimpleQueryDto> query = em.createQuery(SELECT_DTO +
+                    " order by o.id", OrderSimpleQueryDto.class);
+            if (maxResults < Integer.MAX_VALUE) {
+                query.setMaxResults(maxResults);
+            }
+            return query.getResultList();
+        }, BY_ORDER_ID, maxResults);
+    }
+
+    /**
+     * 기간 조회 (hot 테이블인 orders 만 조회한다, 보관된 주문은 OrderArchiveRepository)
+     */
+    public List<OrderSimpleQueryDto> findOrderDtos(LocalDateTime from, LocalDateTime to) {
+        return shards.scatter(() -> em.createQuery(SELECT_DTO +
+                        " where o.orderDate >= :from" +
+                        " and o.orderDate < :to" +
+                        " order by o.orderDate, o.id", OrderSimpleQueryDto.class)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .getResultList(), BY_ORDER_DATE, Integer.MAX_VALUE);
     }
 }
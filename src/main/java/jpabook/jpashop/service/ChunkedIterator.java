@@ -0,0 +1,172 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.datasource.ReadRouting;
+import jpabook.jpashop.datasource.Shards;
+import jpabook.jpashop.repository.ChunkQuery;
+import jpabook.jpashop.repository.EntityChunks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 전체 회원 / 상품 / 주문을 도는 관리 작업용 청크 반복
+ * <p>
+ * memberService.findMembers() 처럼 테이블 전체를 영속성 컨텍스트 하나에 올리면
+ * -> 엔티티 수만큼 힙이 늘어나다가 OutOfMemoryError
+ * <p>
+ * 1. EntityChunks.findChunkEndId 로 다음 청크의 id 범위(afterId < id <= endId)를 정한다
+ * 2. 청크 하나를 새 트랜잭션(REQUIRES_NEW)에서 조회하고 callback 을 호출한다
+ * -> callback 안에서는 지연 로딩도 되고, 엔티티를 수정하면 청크 커밋 때 반영된다
+ * -> 청크가 끝나면 영속성 컨텍스트도 같이 닫힌다 (호출한 쪽에 트랜잭션이 있어도 섞이지 않는다)
+ * <p>
+ * forEachParallel 은 청크를 parallelism 개의 스레드에서 나눠 처리한다
+ * -> 동시에 처리 중인 청크는 parallelism 개를 넘지 않는다 (메모리는 청크 parallelism 개 만큼)
+ * -> 청크 하나가 실패하면 다음 청크를 더 넘기지 않는다 (이미 처리 중인 청크만 끝난다)
+ * <p>
+ * 주문 샤드를 쓰면(datasource/Shards) 샤드에 저장하는 엔티티(주문 등)는 샤드를 차례로 돌면서 같은 방식으로 청크를 나눈다
+ * -> 청크 하나는 샤드 하나의 트랜잭션에서 조회한다 (샤드마다 id 범위가 달라서 청크가 샤드에 걸치지 않는다)
+ */
+@Slf4j
+@Component
+public class ChunkedIterator {
+
+    private final EntityManager em;
+    private final Shards shards;
+    private final TransactionTemplate chunkTransaction;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    public ChunkedIterator(EntityManager em, Shards shards, PlatformTransactionManager transactionManager,
+                           @Value("${jpashop.chunk.parallelism:4}") int parallelism) {
+        this.em = em;
+        this.shards = shards;
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.parallelism = parallelism;
+        this.executor = Executors.newFixedThreadPool(parallelism);
+    }
+
+    /**
+     * @return 처리한 엔티티 수
+     */
+    public <T> long forEach(Class<?> entityType, int chunkSize, ChunkQuery<T> query, Consumer<List<T>> callback) {
+        long start = System.nanoTime();
+        long total = 0;
+        for (int shard = 0; shard < shardCount(entityType); shard++) {
+            Long afterId = 0L;
+            while (afterId != null) {
+                Long endId = findChunkEndId(shard, entityType, afterId, chunkSize);
+                total += processChunk(shard, query, afterId, endId, callback);
+                afterId = endId;
+            }
+        }
+        logThroughput(entityType, 1, total, start);
+        return total;
+    }
+
+    /**
+     * callback 은 여러 스레드에서 동시에 호출된다 (청크 처리 순서는 보장하지 않는다)
+     *
+     * @return 처리한 엔티티 수
+     */
+    public <T> long forEachParallel(Class<?> entityType, int chunkSize, ChunkQuery<T> query, Consumer<List<T>> callback) {
+        long start = System.nanoTime();
+        Semaphore inFlight = new Semaphore(parallelism);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<Integer>> futures = new ArrayList<>();
+        try {
+            for (int shard = 0; shard < shardCount(entityType) && !failed.get(); shard++) {
+                int chunkShard = shard;
+                Long afterId = 0L;
+                while (afterId != null && !failed.get()) {
+                    Long endId = findChunkEndId(chunkShard, entityType, afterId, chunkSize);
+                    Long chunkAfterId = afterId;
+                    inFlight.acquire();
+                    if (failed.get()) {
+                        inFlight.release();
+                        break;
+                    }
+                    futures.add(executor.submit(() -> {
+                        try {
+                            return processChunk(chunkShard, query, chunkAfterId, endId, callback);
+                        } catch (RuntimeException | Error e) {
+                            failed.set(true); // 자리를 내주기 전에 표시해야 기다리던 다음 청크가 넘어가지 않는다
+                            throw e;
+                        } finally {
+                            inFlight.release();
+                        }
+                    }));
+                    afterId = endId;
+                }
+            }
+
+            long total = 0;
+            for (Future<Integer> future : futures) {
+                total += future.get();
+            }
+            logThroughput(entityType, parallelism, total, start);
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("청크 처리가 중단되었습니다.", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("청크 처리에 실패했습니다.", e.getCause());
+        }
+    }
+
+    private int shardCount(Class<?> entityType) {
+        return shards.isSharded(entityType) ? shards.count() : 1;
+    }
+
+    private Long findChunkEndId(int shard, Class<?> entityType, Long afterId, int chunkSize) {
+        // 청크 경계는 청크를 처리할 primary 와 같은 데이터로 정한다
+        return shards.onShard(shard, () -> ReadRouting.onPrimary(() ->
+                readOnlyTransaction.execute(status -> EntityChunks.findChunkEndId(em, entityType, afterId, chunkSize))));
+    }
+
+    /**
+     * @param endId null 이면 마지막 청크 (afterId 이후 전부)
+     */
+    private <T> int processChunk(int shard, ChunkQuery<T> query, Long afterId, Long endId, Consumer<List<T>> callback) {
+        Integer processed = shards.onShard(shard, () -> chunkTransaction.execute(status -> {
+            List<T> chunk = query.find(afterId, endId != null ? endId : Long.MAX_VALUE);
+            if (!chunk.isEmpty()) {
+                callback.accept(chunk);
+            }
+            return chunk.size();
+        }));
+        return processed == null ? 0 : processed;
+    }
+
+    private void logThroughput(Class<?> entityType, int threads, long total, long start) {
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        log.info("chunked iteration: entity={}, threads={}, processed={}, elapsed={}ms, throughput={} entities/s",
+                entityType.getSimpleName(), threads, total, elapsedMillis, total * 1000 / elapsedMillis);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
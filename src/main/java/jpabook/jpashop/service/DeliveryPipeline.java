@@ -0,0 +1,121 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.datasource.Shards;
+import jpabook.jpashop.repository.ClaimedDelivery;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 배송 처리 파이프라인
+ * <p>
+ * workers 개의 워커가 배송 id 를 나눠 가진다 (mod(delivery_id, workers) = 워커 번호)
+ * -> 워커끼리 같은 후보를 두고 경쟁하지 않으므로 워커 수만큼 처리량이 늘어난다
+ * -> 선점은 claim_token 으로 한 번 더 보호되므로 같은 배송을 두 번 처리하지 않는다
+ * <p>
+ * 각 워커는 batchSize 만큼 선점 -> JDBC batch 로 COMP 처리를 더 이상 가져갈 배송이 없을 때까지 반복한다.
+ * <p>
+ * 주문 샤드를 쓰면(datasource/Shards) 각 워커가 샤드를 차례로 돌면서 자기 몫의 배송을 비운다
+ */
+@Slf4j
+@Lazy(false)
+@Component
+public class DeliveryPipeline {
+
+    private final DeliveryProcessingService deliveryProcessingService;
+    private final Shards shards;
+    private final ExecutorService executor;
+    private final int workers;
+
+    @Value("${jpashop.delivery.enabled:false}")
+    private boolean enabled;
+
+    @Value("${jpashop.delivery.batch-size:500}")
+    private int batchSize;
+
+    @Value("${jpashop.delivery.claim-timeout-seconds:300}")
+    private long claimTimeoutSeconds;
+
+    public DeliveryPipeline(DeliveryProcessingService deliveryProcessingService, Shards shards,
+                            @Value("${jpashop.delivery.workers:4}") int workers) {
+        this.deliveryProcessingService = deliveryProcessingService;
+        this.shards = shards;
+        this.workers = workers;
+        this.executor = Executors.newFixedThreadPool(workers);
+    }
+
+    @Scheduled(fixedDelayString = "${jpashop.delivery.fixed-delay-millis:10000}")
+    public void run() {
+        if (enabled) {
+            process();
+        }
+    }
+
+    /**
+     * @return COMP 처리된 배송 수
+     */
+    public int process() {
+        long start = System.nanoTime();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int partition = 0; partition < workers; partition++) {
+            int workerPartition = partition;
+            futures.add(executor.submit(() -> drain(workerPartition)));
+        }
+
+        int total = 0;
+        for (Future<Integer> future : futures) {
+            try {
+                total += future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("배송 처리가 중단되었습니다.", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("배송 처리에 실패했습니다.", e.getCause());
+            }
+        }
+
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        log.info("delivery pipeline: workers={}, completed={}, elapsed={}ms, throughput={} deliveries/s",
+                workers, total, elapsedMillis, total * 1000L / elapsedMillis);
+        return total;
+    }
+
+    private int drain(int partition) {
+        int completed = 0;
+        for (int shard = 0; shard < shards.count(); shard++) {
+            completed += shards.onShard(shard, () -> drainShard(partition));
+        }
+        return completed;
+    }
+
+    private int drainShard(int partition) {
+        int completed = 0;
+        while (true) {
+            String claimToken = UUID.randomUUID().toString();
+            LocalDateTime expiredBefore = LocalDateTime.now().minusSeconds(claimTimeoutSeconds);
+            List<ClaimedDelivery> claimed = deliveryProcessingService.claim(partition, workers, batchSize,
+                    claimToken, expiredBefore);
+            if (claimed.isEmpty()) {
+                return completed;
+            }
+            completed += deliveryProcessingService.complete(claimed, claimToken);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,44 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.repository.ClaimedDelivery;
+import jpabook.jpashop.repository.DeliveryRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 배송 처리 (READY -> COMP)
+ * <p>
+ * 선점(claim)과 처리(complete)는 각각 별도의 짧은 트랜잭션이다.
+ * -> 선점이 먼저 커밋되어야 다른 워커가 같은 배송을 가져가지 않는다
+ */
+@Service
+@RequiredArgsConstructor
+public class DeliveryProcessingService {
+
+    private final DeliveryRepository deliveryRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Transactional
+    public List<ClaimedDelivery> claim(int partition, int partitions, int batchSize,
+                                       String claimToken, LocalDateTime expiredBefore) {
+        List<Long> candidateIds = deliveryRepository.findClaimCandidateIds(partition, partitions, expiredBefore, batchSize);
+        if (candidateIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        deliveryRepository.claim(candidateIds, claimToken, LocalDateTime.now(), expiredBefore);
+        return deliveryRepository.findClaimed(claimToken);
+    }
+
+    @Transactional
+    public int complete(List<ClaimedDelivery> deliveries, String claimToken) {
+        int completed = deliveryRepository.complete(deliveries, claimToken);
+        eventPublisher.publishEvent(OrderStatusChangedEvent.delivered(completed));
+        return completed;
+    }
+}
@@ -0,0 +1,23 @@
+package jpabook.jpashop.service;
+
+import lombok.Getter;
+
+import java.util.Set;
+
+/**
+ * 쓰기 서비스가 바꾼 엔티티 종류
+ * -> 트랜잭션 안에서 발행하면 리스너(@TransactionalEventListener)는 커밋된 뒤에 받는다 (EntityVersions, web/ResponseCache)
+ */
+@Getter
+public class EntityChangedEvent {
+
+    private final Set<Class<?>> entityTypes;
+
+    private EntityChangedEvent(Set<Class<?>> entityTypes) {
+        this.entityTypes = entityTypes;
+    }
+
+    public static EntityChangedEvent of(Class<?>... entityTypes) {
+        return new EntityChangedEvent(Set.of(entityTypes));
+    }
+}
@@ -0,0 +1,60 @@
+package jpabook.jpashop.service;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 엔티티 종류별 version (EntityChangedEvent 를 받을 때마다 올린다)
+ * -> 조회를 시작할 때 읽어둔 version 이 끝날 때 달라졌으면 그 사이에 커밋된 쓰기가 있다
+ * -> web/ResponseCache(응답 저장), query/CoalescingOrderQueryService(조회 합치기 키)가 읽는다
+ * <p>
+ * 다른 EntityChangedEvent 리스너보다 먼저 올린다 (HIGHEST_PRECEDENCE)
+ * -> ResponseCache 가 응답을 지운 뒤에 옛날 version 으로 다시 저장되는 일이 없다
+ */
+@Component
+public class EntityVersions {
+
+    private final Map<Class<?>, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    /**
+     * 쓰기 트랜잭션이 커밋된 뒤에 받는다 (트랜잭션 밖에서 발행하면 바로 받는다)
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEntityChanged(EntityChangedEvent event) {
+        event.getEntityTypes().forEach(entityType -> versionOf(entityType).incrementAndGet());
+    }
+
+    /**
+     * entityTypes version 의 합
+     */
+    public long version(Set<Class<?>> entityTypes) {
+        long sum = 0;
+        for (Class<?> entityType : entityTypes) {
+            sum += versionOf(entityType).get();
+        }
+        return sum;
+    }
+
+    /**
+     * 모든 엔티티 version 의 합 -> 어떤 쓰기든 커밋되면 커진다
+     */
+    public long version() {
+        long sum = 0;
+        for (AtomicLong version : versions.values()) {
+            sum += version.get();
+        }
+        return sum;
+    }
+
+    private AtomicLong versionOf(Class<?> entityType) {
+        return versions.computeIfAbsent(entityType, type -> new AtomicLong());
+    }
+}
@@ -0,0 +1,44 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.OrderEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 로컬 파일에 한 줄에 이벤트 하나씩 쓰는 sink (메시지 브로커 대용)
+ */
+@Slf4j
+@Component
+public class FileOrderEventSink implements OrderEventSink {
+
+    private final Path path;
+
+    public FileOrderEventSink(@Value("${jpashop.outbox.file:${java.io.tmpdir}/jpashop-order-events.log}") String path) {
+        this.path = Paths.get(path);
+    }
+
+    @Override
+    public synchronized int publish(List<OrderEvent> events) {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (OrderEvent event : events) {
+                writer.write(event.getId() + "\t" + event.getType() + "\t" + event.getPayload());
+                writer.newLine();
+            }
+            return events.size();
+        } catch (IOException e) {
+            log.warn("order event sink unavailable: {}", path, e);
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package jpabook.jpashop.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Idempotency-Key -> 주문 id 캐시 (최대 maxKeys 개, ttl 이 지나면 만료)
+ * <p>
+ * 재시도는 보통 첫 요청 직후 몇 초 ~ 몇 분 안에 들어온다
+ * -> 최근 키만 메모리에 들고 있으면 재시도 대부분을 DB 조회 없이 돌려줄 수 있다
+ * -> 넣은 순서대로 보관하므로 만료/초과된 키는 항상 앞쪽에 있다 (앞에서부터 지운다)
+ * <p>
+ * 캐시에서 빠진 키의 재시도는 order_idempotency_key 테이블의 unique 인덱스가 막아준다.
+ */
+class IdempotencyKeyCache {
+
+    private final int maxKeys;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+
+    IdempotencyKeyCache(int maxKeys, long ttlNanos) {
+        this.maxKeys = maxKeys;
+        this.ttlNanos = ttlNanos;
+        this.entries = new LinkedHashMap<>(Math.min(maxKeys, 1024) * 4 / 3 + 1);
+    }
+
+    synchronized Long get(String idempotencyKey) {
+        long now = System.nanoTime();
+        evict(now);
+        Entry entry = entries.get(idempotencyKey);
+        return entry == null ? null : entry.orderId;
+    }
+
+    synchronized void put(String idempotencyKey, long orderId) {
+        long now = System.nanoTime();
+        entries.remove(idempotencyKey); // 다시 넣어서 뒤쪽(최신)으로 보낸다
+        entries.put(idempotencyKey, new Entry(orderId, now + ttlNanos));
+        evict(now);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void evict(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        int size = entries.size();
+        while (iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (size <= maxKeys && eldest.expiresAt - now > 0) {
+                break;
+            }
+            iterator.remove();
+            size--;
+        }
+    }
+
+    private static final class Entry {
+
+        private final long orderId;
+        private final long expiresAt;
+
+        Entry(long orderId, long expiresAt) {
+            this.orderId = orderId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package jpabook.jpashop.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Idempotency-Key 정리 배치
+ * -> 매일(jpashop.idempotency.cleanup-cron) retention-hours 보다 오래된 키를 청크 단위로 지운다
+ * -> 지운 키로 다시 들어온 요청은 새 주문이 되므로 retention-hours 는 클라이언트 재시도 기간보다 길어야 한다
+ */
+@Slf4j
+@Lazy(false) // prod 의 lazy-initialization 에서도 기동 시 스케줄을 등록한다
+@Component
+@RequiredArgsConstructor
+public class IdempotencyKeyCleanupJob {
+
+    private final OrderService orderService;
+
+    @Value("${jpashop.idempotency.retention-hours:24}")
+    private int retentionHours;
+
+    @Value("${jpashop.idempotency.cleanup-chunk-size:1000}")
+    private int chunkSize;
+
+    @Scheduled(cron = "${jpashop.idempotency.cleanup-cron:0 30 4 * * *}")
+    public void run() {
+        cleanup(LocalDateTime.now().minusHours(retentionHours));
+    }
+
+    public int cleanup(LocalDateTime cutoff) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = orderService.deleteExpiredIdempotencyKeys(cutoff, chunkSize);
+            total += deleted;
+        } while (deleted == chunkSize);
+
+        log.info("idempotency key cleanup: cutoff={}, deleted={}", cutoff, total);
+        return total;
+    }
+}
@@ -0,0 +1,58 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.OrderIdempotencyKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Idempotency-Key 가 붙은 주문 (POST /order 재시도)
+ * <p>
+ * 1. 메모리 캐시에 있는 키 -> 처음 만든 주문 id 를 그대로 돌려준다 (DB 조회 없음)
+ * 2. 없으면 키 insert + 주문을 한 트랜잭션으로 처리한다 (OrderService.order(idempotencyKey, ...))
+ * 3. 키 insert 가 unique 제약조건에 걸리면 같은 키의 주문이 이미 커밋된 것이다
+ * -> 주문은 롤백되고, 먼저 커밋된 주문 id 를 조회해서 돌려준다
+ * <p>
+ * 정상 경로(처음 들어온 키)에는 추가 조회가 없다. insert 1번이 중복 검사를 겸한다.
+ * 트랜잭션은 OrderService 에서 시작하고 끝나야 제약조건 위반을 여기서 받을 수 있으므로 이 클래스에는 @Transactional 을 붙이지 않는다.
+ */
+@Slf4j
+@Service
+public class IdempotentOrderService {
+
+    private final OrderService orderService;
+    private final IdempotencyKeyCache cache;
+
+    public IdempotentOrderService(OrderService orderService,
+                                  @Value("${jpashop.idempotency.max-keys:10000}") int maxKeys,
+                                  @Value("${jpashop.idempotency.ttl-seconds:600}") long ttlSeconds) {
+        this.orderService = orderService;
+        this.cache = new IdempotencyKeyCache(maxKeys, TimeUnit.SECONDS.toNanos(ttlSeconds));
+    }
+
+    public Long order(String idempotencyKey, Long memberId, Long itemId, int count) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > OrderIdempotencyKey.MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key 는 1~" + OrderIdempotencyKey.MAX_KEY_LENGTH + "자여야 합니다.");
+        }
+
+        Long orderId = cache.get(idempotencyKey);
+        if (orderId != null) {
+            return orderId;
+        }
+
+        try {
+            orderId = orderService.order(idempotencyKey, memberId, itemId, count);
+        } catch (DataIntegrityViolationException e) {
+            orderId = orderService.findOrderIdByIdempotencyKey(idempotencyKey);
+            if (orderId == null) {
+                throw e;
+            }
+            log.info("duplicate order request: idempotencyKey={}, orderId={}", idempotencyKey, orderId);
+        }
+        cache.put(idempotencyKey, orderId);
+        return orderId;
+    }
+}
@@ -0,0 +1,14 @@
+package jpabook.jpashop.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 상품 등록 / 수정 (이름 자동완성 인덱스가 커밋된 뒤에 받는다)
+ */
+@Getter
+@AllArgsConstructor
+public class ItemSavedEvent {
+    private final Long itemId;
+    private final String name;
+}
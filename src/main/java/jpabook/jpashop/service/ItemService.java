@@ -1,9 +1,11 @@
 package jpabook.jpashop.service;
 
+import jpabook.jpashop.datasource.Shards;
 import jpabook.jpashop.domain.item.Book;
 import jpabook.jpashop.domain.item.Item;
 import jpabook.jpashop.repository.ItemRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -15,10 +17,14 @@ import java.util.List;
 public class ItemService {
 
     private final ItemRepository itemRepository;
+    private final Shards shards;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional
     public void saveItem(Item item) {
         itemRepository.save(item);
+        eventPublisher.publishEvent(EntityChangedEvent.of(Item.class));
+        eventPublisher.publishEvent(new ItemSavedEvent(item.getId(), item.getName()));
     }
 
     /**
@@ -29,6 +35,8 @@ public class ItemService {
      * -> merge의 위험성 : 만약 merge의 파라미터에 값이 없는 필드는 null로 업데이트 될 위험이 있다.
      * <p>
      * 가급적 em.merge()를 사용하지 말고 변경 감지 기능으로 한땀 한땀 변경하는게 안전하다
+     * <p>
+     * 주문 샤드를 쓰면 커밋한 뒤에 샤드의 상품 사본도 바꾼다 (샤드의 주문 조회가 사본의 이름을 읽는다)
      */
     @Transactional
     public Item updateItem(Long itemId, String name, int price, int stockQuantity) {
@@ -39,6 +47,9 @@ public class ItemService {
         findItem.setName(name);
         findItem.setPrice(price);
         findItem.setStockQuantity(stockQuantity);
+        shards.copyToShardsAfterCommit("item", "item_id", itemId);
+        eventPublisher.publishEvent(EntityChangedEvent.of(Item.class));
+        eventPublisher.publishEvent(new ItemSavedEvent(itemId, name));
         return findItem;
     }
 
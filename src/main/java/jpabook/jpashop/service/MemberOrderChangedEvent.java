@@ -0,0 +1,13 @@
+package jpabook.jpashop.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 회원이 주문 / 취소했다 (datasource/ReadYourWrites 가 커밋된 뒤에 받는다)
+ */
+@Getter
+@AllArgsConstructor
+public class MemberOrderChangedEvent {
+    private final Long memberId;
+}
@@ -1,9 +1,11 @@
 package jpabook.jpashop.service;
 
+import jpabook.jpashop.datasource.Shards;
 import jpabook.jpashop.domain.Member;
 import jpabook.jpashop.repository.MemberRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -49,6 +51,8 @@ public class MemberService {
      * final 필드에 대해서만 생성자를 만들어준다
      */
     private final MemberRepository memberRepository;
+    private final Shards shards;
+    private final ApplicationEventPublisher eventPublisher;
 
 
     /**
@@ -63,6 +67,7 @@ public class MemberService {
     public Long join(Member member) {
         validateDuplicateMember(member); // 중복 회원 검증
         memberRepository.save(member);
+        eventPublisher.publishEvent(EntityChangedEvent.of(Member.class));
 
         return member.getId();
     }
@@ -99,9 +104,14 @@ public class MemberService {
         return memberRepository.findOne(memberId);
     }
 
+    /**
+     * 주문 샤드를 쓰면 커밋한 뒤에 샤드의 회원 사본도 바꾼다 (샤드의 주문 조회가 사본의 이름을 읽는다)
+     */
     @Transactional
     public void update(Long id, String name) {
         Member member = memberRepository.findOne(id);
         member.setName(name);
+        shards.copyToShardsAfterCommit("member", "member_id", id);
+        eventPublisher.publishEvent(EntityChangedEvent.of(Member.class));
     }
 }
@@ -0,0 +1,60 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.datasource.Shards;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * 주문 보관 배치
+ * -> 매일 새벽(jpashop.archive.cron) retention-days 보다 오래된 완료 주문을 청크 단위로 옮긴다
+ * -> 주문 샤드를 쓰면(datasource/Shards) 샤드를 차례로 돌면서 그 샤드의 archive 테이블로 옮긴다
+ */
+@Slf4j
+@Lazy(false) // prod 의 lazy-initialization 에서도 기동 시 스케줄을 등록한다
+@Component
+@RequiredArgsConstructor
+public class OrderArchiveJob {
+
+    private final OrderArchiveService orderArchiveService;
+    private final Shards shards;
+
+    @Value("${jpashop.archive.retention-days:90}")
+    private int retentionDays;
+
+    @Value("${jpashop.archive.chunk-size:500}")
+    private int chunkSize;
+
+    @Scheduled(cron = "${jpashop.archive.cron:0 0 4 * * *}")
+    public void run() {
+        archive(LocalDateTime.now().minusDays(retentionDays));
+    }
+
+    public int archive(LocalDateTime cutoff) {
+        long start = System.nanoTime();
+        int total = 0;
+        for (int shard = 0; shard < shards.count(); shard++) {
+            total += shards.onShard(shard, () -> archiveShard(cutoff));
+        }
+
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        log.info("order archive: cutoff={}, archived={}, elapsed={}ms, throughput={} orders/s",
+                cutoff, total, elapsedMillis, total * 1000L / elapsedMillis);
+        return total;
+    }
+
+    private int archiveShard(LocalDateTime cutoff) {
+        int total = 0;
+        int archived;
+        do {
+            archived = orderArchiveService.archiveChunk(cutoff, chunkSize);
+            total += archived;
+        } while (archived == chunkSize);
+        return total;
+    }
+}
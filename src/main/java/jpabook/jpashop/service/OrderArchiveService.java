@@ -0,0 +1,38 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.repository.order.archive.OrderArchiveRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 오래된 주문 보관(archive)
+ * -> 청크 하나를 트랜잭션 하나로 처리한다 (한 번에 다 옮기면 트랜잭션과 락이 너무 길어진다)
+ */
+@Service
+@RequiredArgsConstructor
+public class OrderArchiveService {
+
+    private final OrderArchiveRepository orderArchiveRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * @return 이번 청크에서 보관한 주문 수 (chunkSize 보다 작으면 더 옮길 주문이 없다)
+     */
+    @Transactional
+    public int archiveChunk(LocalDateTime cutoff, int chunkSize) {
+        List<Long> orderIds = orderArchiveRepository.findArchiveTargetIds(cutoff, chunkSize);
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        orderArchiveRepository.copyToArchive(orderIds);
+        orderArchiveRepository.deleteFromHot(orderIds);
+        eventPublisher.publishEvent(EntityChangedEvent.of(Order.class));
+        return orderIds.size();
+    }
+}
@@ -0,0 +1,119 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.datasource.Shards;
+import jpabook.jpashop.domain.OrderEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * outbox 에 쌓인 주문 이벤트를 batchSize 씩 읽어서 OrderEventSink 로 보낸다.
+ * <p>
+ * - 순서: id 순으로 읽고, sink 가 받아들인 앞부분까지만 publishedAt 을 채운다
+ * -> 중간에 실패해도 뒤의 이벤트가 앞질러 나가지 않는다 (같은 주문의 이벤트 순서가 보장된다)
+ * - 배압(backpressure): sink 가 다 받아주지 못하면 다음 실행부터 1, 2, 4 ... 번(최대 maxBackoffTicks)을 건너뛴다
+ * - 최소 한 번 전송: sink 로 보낸 뒤 publishedAt 을 채우기 전에 죽으면 다음 실행에서 다시 보낸다
+ * - 주문 샤드를 쓰면 이벤트는 주문과 같은 샤드의 outbox 에 있다 -> 샤드를 차례로 돈다 (같은 주문의 이벤트는 한 샤드에 있다)
+ */
+@Slf4j
+@Lazy(false)
+@Component
+@RequiredArgsConstructor
+public class OrderEventRelay {
+
+    private final OrderEventService orderEventService;
+    private final OrderEventSink orderEventSink;
+    private final Shards shards;
+
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong backoffCount = new AtomicLong();
+
+    @Value("${jpashop.outbox.enabled:false}")
+    private boolean enabled;
+
+    @Value("${jpashop.outbox.batch-size:200}")
+    private int batchSize;
+
+    @Value("${jpashop.outbox.max-backoff-ticks:32}")
+    private int maxBackoffTicks;
+
+    private int backoffTicks;
+    private int skipTicks;
+
+    @Scheduled(fixedDelayString = "${jpashop.outbox.fixed-delay-millis:1000}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        if (skipTicks > 0) {
+            skipTicks--;
+            return;
+        }
+        relay();
+    }
+
+    /**
+     * @return 이번에 보낸 이벤트 수
+     */
+    public synchronized int relay() {
+        long start = System.nanoTime();
+        int total = 0;
+        long backoffs = backoffCount.get();
+        // 한 샤드에서 backOff 하면 sink 가 밀려 있으므로 다음 샤드로 넘어가지 않는다
+        for (int shard = 0; shard < shards.count() && backoffCount.get() == backoffs; shard++) {
+            total += shards.onShard(shard, this::relayShard);
+        }
+
+        if (total > 0) {
+            publishedCount.addAndGet(total);
+            long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            log.info("order event relay: published={}, elapsed={}ms, throughput={} events/s, totalPublished={}, backoffs={}",
+                    total, elapsedMillis, total * 1000L / elapsedMillis, publishedCount.get(), backoffCount.get());
+        }
+        return total;
+    }
+
+    /**
+     * 샤드 하나의 outbox 를 비운다 (sink 가 다 받아주지 못하면 backOff 하고 멈춘다)
+     */
+    private int relayShard() {
+        int total = 0;
+        while (true) {
+            List<OrderEvent> events = orderEventService.findPending(batchSize);
+            if (events.isEmpty()) {
+                break;
+            }
+            int accepted = Math.min(orderEventSink.publish(events), events.size());
+            if (accepted > 0) {
+                orderEventService.markPublished(events.subList(0, accepted));
+                total += accepted;
+            }
+            if (accepted < events.size()) {
+                backOff();
+                break;
+            }
+            backoffTicks = 0;
+        }
+        return total;
+    }
+
+    private void backOff() {
+        backoffTicks = backoffTicks == 0 ? 1 : Math.min(backoffTicks * 2, maxBackoffTicks);
+        skipTicks = backoffTicks;
+        backoffCount.incrementAndGet();
+    }
+
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    public long getBackoffCount() {
+        return backoffCount.get();
+    }
+}
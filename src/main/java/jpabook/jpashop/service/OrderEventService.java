@@ -0,0 +1,82 @@
+package jpabook.jpashop.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jpabook.jpashop.datasource.ReadRouting;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderEvent;
+import jpabook.jpashop.domain.OrderEventType;
+import jpabook.jpashop.repository.OrderEventRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 주문 이벤트 outbox 기록 / 조회
+ * -> record* 메소드는 OrderService 의 트랜잭션에 참여한다 (주문과 이벤트가 같이 커밋되거나 같이 롤백된다)
+ */
+@Service
+@Transactional(readOnly = true)
+@RequiredArgsConstructor
+public class OrderEventService {
+
+    private final OrderEventRepository orderEventRepository;
+    private final ObjectMapper objectMapper;
+
+    @Transactional
+    public void recordPlaced(Order order) {
+        orderEventRepository.save(placedEvent(order));
+    }
+
+    /**
+     * 저장하지 않고 ORDER_PLACED 이벤트만 만든다 (OrderImportService 는 StatelessSession 으로 직접 insert 한다)
+     * -> 주문마다 호출되므로 트랜잭션(커넥션)을 새로 시작하지 않는다
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public OrderEvent placedEvent(Order order) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("orderId", order.getId());
+        payload.put("memberId", order.getMember().getId());
+        payload.put("orderDate", order.getOrderDate().toString());
+        payload.put("totalPrice", order.getTotalPrice());
+        return OrderEvent.create(order.getId(), OrderEventType.ORDER_PLACED, toJson(payload));
+    }
+
+    @Transactional
+    public void recordCancelled(List<Long> orderIds) {
+        for (Long orderId : orderIds) {
+            orderEventRepository.save(OrderEvent.create(orderId, OrderEventType.ORDER_CANCELLED,
+                    toJson(Map.of("orderId", orderId))));
+        }
+    }
+
+    /**
+     * replica 는 방금 커밋된 발행 표시를 아직 모를 수 있다 -> primary 에서 읽는다 (중복 발행 방지)
+     */
+    @Transactional(readOnly = true, label = ReadRouting.PRIMARY)
+    public List<OrderEvent> findPending(int limit) {
+        return orderEventRepository.findPending(limit);
+    }
+
+    @Transactional
+    public void markPublished(List<OrderEvent> orderEvents) {
+        orderEventRepository.markPublished(orderEvents.stream()
+                .map(OrderEvent::getId)
+                .collect(Collectors.toList()), LocalDateTime.now());
+    }
+
+    private String toJson(Map<String, Object> payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("주문 이벤트를 JSON 으로 변환할 수 없습니다.", e);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.OrderEvent;
+
+import java.util.List;
+
+/**
+ * 주문 이벤트를 받아갈 곳 (메시지 브로커 등)
+ * -> 다른 구현체를 @Primary 스프링 빈으로 등록하면 FileOrderEventSink 대신 사용된다
+ */
+public interface OrderEventSink {
+
+    /**
+     * events 를 앞에서부터 순서대로 보낸다.
+     *
+     * @return 실제로 받아들인 이벤트 수 (events.size() 보다 작으면 sink 가 밀려 있다는 뜻 -> relay 가 잠시 쉰다)
+     */
+    int publish(List<OrderEvent> events);
+}
@@ -0,0 +1,15 @@
+package jpabook.jpashop.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class OrderImportResult {
+    private String source;
+    private long resumedFromLine; // 이전 실행에서 이미 커밋된 줄 수
+    private long importedOrders; // 이번 실행에서 가져온 주문 수
+    private long elapsedMillis;
+    private long rowsPerSecond;
+    private long peakHeapBytes;
+}
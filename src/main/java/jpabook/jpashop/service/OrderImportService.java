@@ -0,0 +1,277 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderImport;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.repository.OrderImportRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * 파트너 주문 파일(CSV) 대량 가져오기
+ * <p>
+ * OrderService.order 로 한 줄씩 넣으면
+ * -> 주문마다 회원 / 상품 조회, 영속성 컨텍스트에 스냅샷이 쌓이고 flush 때마다 전부 변경 감지를 한다
+ * -> 수십만 줄이면 메모리가 계속 늘어난다
+ * <p>
+ * StatelessSession + 청크(chunkSize 줄) 단위 트랜잭션으로 처리한다
+ * - 파일은 한 줄씩 읽는다 (메모리에는 청크 하나만 남는다)
+ * - 회원 / 상품은 청크에서 처음 나온 id 만 in 쿼리 1번으로 조회해서 LRU 캐시(cacheSize)에 둔다
+ * - 재고는 청크 안의 상품별 수량 합계로 상품당 update 1번 (모자라면 청크 전체를 롤백하고 멈춘다)
+ * - insert 는 배송 -> 주문 -> 주문상품 -> 이벤트 순으로 종류별로 모아서 JDBC batch 로 보낸다
+ * - 청크를 커밋할 때 진행 상황(OrderImport.committedLines)을 같이 커밋한다
+ * -> 실패한 뒤 같은 source 로 다시 실행하면 커밋된 줄은 건너뛴다
+ * -> 같은 source 를 동시에 실행하면 진행 상황을 먼저 바꾼 쪽만 계속하고 나머지는 청크를 롤백하고 멈춘다
+ * <p>
+ * CSV 형식: memberId,itemId,count (첫 줄이 숫자로 시작하지 않으면 헤더로 보고 건너뛴다)
+ * <p>
+ * 주문 샤드를 써도(datasource/Shards) 가져온 주문은 회원과 상관없이 메인 DB(0번 샤드)에 만든다
+ * -> 재고 차감과 같은 트랜잭션에서 커밋해야 하므로 나누지 않는다
+ * -> 주문 id 가 0번 샤드 범위이므로 조회, 취소, 배송, 보관은 다른 0번 샤드 주문과 똑같이 처리된다 (Shards.shardOfOrder)
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OrderImportService {
+
+    private final OrderImportRepository orderImportRepository;
+    private final OrderEventService orderEventService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${jpashop.import.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${jpashop.import.cache-size:10000}")
+    private int cacheSize;
+
+    public OrderImportResult importOrders(String source, Reader csv) throws IOException {
+        resetPeakHeap();
+        long start = System.nanoTime();
+
+        try (StatelessSession session = orderImportRepository.openSession(chunkSize);
+             BufferedReader reader = new BufferedReader(csv)) {
+            OrderImport orderImport = findOrCreate(session, source);
+            long resumedFromLine = orderImport.getCommittedLines();
+
+            Map<Long, Member> members = lruCache(cacheSize);
+            Map<Long, Item> items = lruCache(cacheSize);
+            List<long[]> chunk = new ArrayList<>(chunkSize); // {memberId, itemId, count}
+            long imported = 0;
+            long committedLines = resumedFromLine;
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber <= resumedFromLine || line.isBlank() || isHeader(lineNumber, line)) {
+                    continue;
+                }
+                chunk.add(parse(line, lineNumber));
+                if (chunk.size() == chunkSize) {
+                    imported += importChunk(session, orderImport.getId(), chunk, committedLines, lineNumber, members, items);
+                    committedLines = lineNumber;
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                imported += importChunk(session, orderImport.getId(), chunk, committedLines, lineNumber, members, items);
+            }
+
+            long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            OrderImportResult result = new OrderImportResult(source, resumedFromLine, imported, elapsedMillis,
+                    imported * 1000 / elapsedMillis, peakHeapBytes());
+            log.info("order import: source={}, resumedFromLine={}, imported={}, elapsed={}ms, throughput={} rows/s, peakHeap={}MB",
+                    source, resumedFromLine, imported, elapsedMillis, result.getRowsPerSecond(),
+                    result.getPeakHeapBytes() / (1024 * 1024));
+            return result;
+        }
+    }
+
+    /**
+     * 청크 하나를 트랜잭션 하나로 처리한다
+     * -> 진행 상황을 먼저 갱신한다 (OrderImport row 락을 잡아서 같은 source 의 다른 가져오기를 청크 단위로 줄 세운다)
+     *
+     * @param committedLines 이 실행이 마지막으로 커밋한 줄 번호 (다르면 다른 가져오기가 끼어든 것이다)
+     * @param lastLineNumber 청크의 마지막 줄 번호 (커밋되면 다음 실행은 이 다음 줄부터 시작한다)
+     */
+    private int importChunk(StatelessSession session, Long orderImportId, List<long[]> chunk, long committedLines,
+                            long lastLineNumber, Map<Long, Member> members, Map<Long, Item> items) {
+        Transaction tx = session.beginTransaction();
+        try {
+            if (orderImportRepository.updateProgress(session, orderImportId, committedLines, lastLineNumber, chunk.size()) == 0) {
+                throw new IllegalStateException("같은 source 를 다른 가져오기가 처리했습니다. line=" + lastLineNumber);
+            }
+
+            Map<Long, Member> chunkMembers = resolve(chunk, 0, members,
+                    ids -> orderImportRepository.findMembers(session, ids), Member::getId);
+            Map<Long, Item> chunkItems = resolve(chunk, 1, items,
+                    ids -> orderImportRepository.findItems(session, ids), Item::getId);
+
+            // 상품 id 순으로 차감한다 (동시에 도는 다른 청크와 락 순서를 맞춘다)
+            Map<Long, Integer> quantities = new TreeMap<>();
+            for (long[] row : chunk) {
+                quantities.merge(row[1], (int) row[2], Integer::sum);
+            }
+            for (Map.Entry<Long, Integer> quantity : quantities.entrySet()) {
+                if (orderImportRepository.removeStock(session, quantity.getKey(), quantity.getValue()) == 0) {
+                    throw new NotEnoughStockException("need more stock (itemId=" + quantity.getKey() + ")");
+                }
+            }
+
+            List<Order> orders = new ArrayList<>(chunk.size());
+            for (long[] row : chunk) {
+                Member member = chunkMembers.get(row[0]);
+                Item item = chunkItems.get(row[1]);
+
+                Delivery delivery = new Delivery();
+                delivery.setAddress(member.getAddress());
+                OrderItem orderItem = OrderItem.createImportedOrderItem(item, item.getPrice(), (int) row[2]);
+                orders.add(Order.createImportedOrder(member, delivery, orderItem));
+            }
+            // 종류별로 모아서 insert 해야 JDBC batch 가 끊기지 않는다 (다른 insert 가 끼면 그 전까지를 보낸다)
+            for (Order order : orders) {
+                session.insert(order.getDelivery());
+            }
+            for (Order order : orders) {
+                session.insert(order);
+            }
+            for (Order order : orders) {
+                session.insert(order.getOrderItems().get(0));
+            }
+            for (Order order : orders) {
+                session.insert(orderEventService.placedEvent(order));
+            }
+
+            tx.commit();
+            // StatelessSession 트랜잭션은 이미 커밋됐다 -> 리스너가 바로 받는다
+            // -> 청크마다 보낸다 (뒤 청크가 실패해도, 가져오는 중에도 커밋된 주문 / 재고가 캐시에 반영된다)
+            eventPublisher.publishEvent(EntityChangedEvent.of(Order.class, Item.class));
+            eventPublisher.publishEvent(OrderStatusChangedEvent.placed(orders.size(),
+                    orders.stream().mapToLong(Order::getTotalPrice).sum()));
+            return orders.size();
+        } catch (RuntimeException e) {
+            tx.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * 청크에 나온 id 중 캐시에 없는 것만 한 번에 조회해서 캐시에 넣는다
+     * -> 청크가 캐시보다 커도 이번 청크에서 쓸 엔티티는 반환하는 Map 에 모두 들어있다
+     */
+    private <T> Map<Long, T> resolve(List<long[]> chunk, int column, Map<Long, T> cache,
+                                     Function<Set<Long>, List<T>> finder, Function<T, Long> idOf) {
+        Map<Long, T> resolved = new HashMap<>();
+        Set<Long> missingIds = new HashSet<>();
+        for (long[] row : chunk) {
+            T cached = cache.get(row[column]);
+            if (cached != null) {
+                resolved.put(row[column], cached);
+            } else {
+                missingIds.add(row[column]);
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return resolved;
+        }
+        for (T found : finder.apply(missingIds)) {
+            Long id = idOf.apply(found);
+            cache.put(id, found);
+            resolved.put(id, found);
+            missingIds.remove(id);
+        }
+        if (!missingIds.isEmpty()) {
+            throw new IllegalStateException("존재하지 않는 " + (column == 0 ? "회원" : "상품") + "입니다. id=" + missingIds);
+        }
+        return resolved;
+    }
+
+    private OrderImport findOrCreate(StatelessSession session, String source) {
+        OrderImport orderImport = orderImportRepository.findBySource(session, source);
+        if (orderImport != null) {
+            return orderImport;
+        }
+        Transaction tx = session.beginTransaction();
+        orderImport = OrderImport.create(source);
+        session.insert(orderImport);
+        tx.commit();
+        return orderImport;
+    }
+
+    private boolean isHeader(long lineNumber, String line) {
+        return lineNumber == 1 && !Character.isDigit(line.trim().charAt(0));
+    }
+
+    private long[] parse(String line, long lineNumber) {
+        String[] columns = line.split(",");
+        if (columns.length != 3) {
+            throw new IllegalStateException("memberId,itemId,count 형식이 아닙니다. line=" + lineNumber);
+        }
+        try {
+            long[] row = new long[3];
+            for (int i = 0; i < 3; i++) {
+                row[i] = Long.parseLong(columns[i].trim());
+            }
+            if (row[2] <= 0 || row[2] > Integer.MAX_VALUE) {
+                throw new IllegalStateException("주문 수량이 올바르지 않습니다. line=" + lineNumber);
+            }
+            return row;
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("숫자가 아닌 값이 있습니다. line=" + lineNumber, e);
+        }
+    }
+
+    private static <V> Map<Long, V> lruCache(int maxSize) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * 힙 메모리 풀(eden, survivor, old)별 최대 사용량의 합
+     */
+    private static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
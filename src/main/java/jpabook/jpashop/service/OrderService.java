@@ -1,32 +1,64 @@
 package jpabook.jpashop.service;
 
+import jpabook.jpashop.datasource.ReadRouting;
+import jpabook.jpashop.datasource.Shards;
 import jpabook.jpashop.domain.Delivery;
 import jpabook.jpashop.domain.Member;
 import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderIdempotencyKey;
 import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.OrderStatus;
 import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.DeliveryRepository;
 import jpabook.jpashop.repository.ItemRepository;
 import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.repository.OrderIdempotencyKeyRepository;
 import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.repository.OrderSearch;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.aspectj.weaver.ast.Or;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 @Transactional(readOnly = true)
 public class OrderService {
 
+    /**
+     * IN 절 파라미터 개수 제한 (데이터베이스에 따라 1000개로 제한하기도 한다)
+     */
+    private static final int BULK_CANCEL_CHUNK_SIZE = 1000;
+
+    private final EntityManager em;
     private final OrderRepository orderRepository;
     private final MemberRepository memberRepository;
     private final ItemRepository itemRepository;
+    private final DeliveryRepository deliveryRepository;
+    private final OrderEventService orderEventService;
+    private final OrderIdempotencyKeyRepository orderIdempotencyKeyRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Shards shards;
 
     /**
      * 주문
+     * -> 회원의 샤드가 메인 DB 가 아니면 주문은 그 샤드에 저장한다 (orderInShard)
      */
     @Transactional
     public Long order(Long memberId, Long itemId, int count) {
@@ -34,12 +66,64 @@ public class OrderService {
         Member member = memberRepository.findOne(memberId);
         Item item = itemRepository.findOne(itemId);
 
-        // 배송 정보 생성
-        Delivery delivery = new Delivery();
-        delivery.setAddress(member.getAddress());
+        int shard = shards.shardOfMember(memberId);
+        if (shard != Shards.MAIN) {
+            return orderInShard(shard, member, item, count);
+        }
 
         // 주문 상품 생성
         OrderItem orderItem = OrderItem.createOrderItem(item, item.getPrice(), count);
+        return placeOrder(member, orderItem).getId();
+    }
+
+    /**
+     * 메인 DB 가 아닌 샤드에 주문한다
+     * -> 재고는 메인 DB 의 상품에서 깐다 (이 트랜잭션). 샤드 트랜잭션이 실패하면 예외가 올라와서 재고 차감도 롤백된다
+     * -> 샤드 트랜잭션이 커밋된 뒤에 이 트랜잭션이 롤백되면(재고 차감, Idempotency-Key) 샤드의 주문을 취소한다 (cancelAfterRollback)
+     * -> 두 DB 를 한 트랜잭션으로 묶지 않으므로 그 사이에는 재고를 까지 않은 주문이 잠깐 보일 수 있다
+     */
+    private Long orderInShard(int shard, Member member, Item item, int count) {
+        item.removeStock(count);
+        int orderPrice = item.getPrice();
+
+        // 샤드의 주문이 참조할 회원 / 상품을 최신 값으로 복사해 둔다
+        shards.copyToShard(shard, "member", "member_id", member.getId());
+        shards.copyToShard(shard, "item", "item_id", item.getId());
+
+        Long orderId = shards.write(shard, () -> placeOrder(memberRepository.findOne(member.getId()),
+                OrderItem.createImportedOrderItem(itemRepository.findOne(item.getId()), orderPrice, count)).getId());
+        cancelAfterRollback(shard, orderId);
+        return orderId;
+    }
+
+    /**
+     * 지금 트랜잭션이 롤백되면 샤드에 먼저 커밋된 주문을 샤드의 새 트랜잭션에서 취소한다
+     * -> 주문 이벤트(outbox)가 이미 나갔을 수 있으므로 지우지 않고 취소 이벤트를 남긴다
+     * -> 재고는 차감도 같이 롤백됐으므로 복구하지 않는다 (restock 하지 않는다)
+     */
+    private void cancelAfterRollback(int shard, Long orderId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_ROLLED_BACK) {
+                    return;
+                }
+                try {
+                    shards.write(shard, () -> {
+                        Order order = orderRepository.findOne(orderId);
+                        return order.getStatus() == OrderStatus.ORDER ? cancel(order) : order;
+                    });
+                } catch (RuntimeException e) {
+                    log.error("shard order compensation failed: shard={}, orderId={}", shard, orderId, e);
+                }
+            }
+        });
+    }
+
+    private Order placeOrder(Member member, OrderItem orderItem) {
+        // 배송 정보 생성
+        Delivery delivery = new Delivery();
+        delivery.setAddress(member.getAddress());
 
         // 주문 생성
         Order order = Order.createOrder(member, delivery, orderItem);
@@ -49,28 +133,200 @@ public class OrderService {
         // 만약 다른 곳에서도 OrderItem, Delivery를 참조한다면 CASCADE 옵션을 사용하지 말 것.
         orderRepository.save(order);
 
-        return order.getId();
+        // 같은 트랜잭션에서 outbox 에 주문 이벤트를 남긴다 (전송은 OrderEventRelay 가 따로 한다)
+        orderEventService.recordPlaced(order);
+        eventPublisher.publishEvent(EntityChangedEvent.of(Order.class, Item.class)); // 주문 + 재고
+        eventPublisher.publishEvent(OrderStatusChangedEvent.placed(1, order.getTotalPrice()));
+        eventPublisher.publishEvent(new MemberOrderChangedEvent(member.getId()));
+
+        return order;
+    }
+
+    /**
+     * Idempotency-Key 가 있는 주문 (IdempotentOrderService 에서 호출)
+     * -> 키를 먼저 insert(flush) 한다. 이미 있는 키면 주문하기 전에 DataIntegrityViolationException 이 발생한다.
+     * -> 키를 먼저 넣은 요청이 커밋할 때까지 같은 키의 insert 는 기다린다 (동시에 들어온 중복 요청)
+     */
+    @Transactional
+    public Long order(String idempotencyKey, Long memberId, Long itemId, int count) {
+        OrderIdempotencyKey orderIdempotencyKey = OrderIdempotencyKey.create(idempotencyKey);
+        orderIdempotencyKeyRepository.save(orderIdempotencyKey);
+
+        Long orderId = order(memberId, itemId, count);
+        orderIdempotencyKey.complete(orderId);
+        return orderId;
+    }
+
+    /**
+     * 방금 커밋된 다른 요청의 키를 찾는다 -> replica 가 아닌 primary 에서 읽는다
+     */
+    @Transactional(readOnly = true, label = ReadRouting.PRIMARY)
+    public Long findOrderIdByIdempotencyKey(String idempotencyKey) {
+        return orderIdempotencyKeyRepository.findOrderId(idempotencyKey);
+    }
+
+    /**
+     * 오래된 Idempotency-Key 정리 (청크 하나를 트랜잭션 하나로)
+     *
+     * @return 이번 청크에서 지운 키 수 (chunkSize 보다 작으면 더 지울 키가 없다)
+     */
+    @Transactional
+    public int deleteExpiredIdempotencyKeys(LocalDateTime cutoff, int chunkSize) {
+        List<Long> ids = orderIdempotencyKeyRepository.findExpiredIds(cutoff, chunkSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return orderIdempotencyKeyRepository.deleteByIds(ids);
     }
 
     /**
      * 주문 취소
+     * -> 주문 id 로 주문이 있는 샤드를 찾는다 (메인 DB 가 아니면 그 샤드에서 취소하고 재고는 메인 DB 에서 복구한다)
+     *
+     * @return 주문한 회원 id (화면이 read-your-writes 쿠키를 남긴다)
      */
     @Transactional
-    public void cancelOrder(Long orderId) {
+    public Long cancelOrder(Long orderId) {
+        int shard = shards.shardOfOrder(orderId);
+        if (shard != Shards.MAIN) {
+            Order order = shards.write(shard, () -> cancel(orderRepository.findOne(orderId)));
+            restock(List.of(order));
+            return order.getMember().getId();
+        }
+
         // 주문 엔티티 조회
-        Order order = orderRepository.findOne(orderId);
+        return cancel(orderRepository.findOne(orderId)).getMember().getId();
+    }
 
+    private Order cancel(Order order) {
         // 주문 취소
         // order.cancel()
         // -> 배송중인 경우 예외 발생, orderItem.cancel();
         // -> getItem().addStock(count); 재고 수량 만큼 add
         order.cancel();
+
+        // 배송 처리 워커가 동시에 COMP 로 바꾸는 경우를 막는다
+        // -> 커밋 시점에 delivery 의 version 을 올린다 (그 사이 COMP 가 됐다면 OptimisticLockException)
+        em.lock(order.getDelivery(), LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+
+        orderEventService.recordCancelled(List.of(order.getId()));
+        eventPublisher.publishEvent(EntityChangedEvent.of(Order.class, Item.class));
+        boolean today = order.getOrderDate().toLocalDate().equals(LocalDate.now());
+        eventPublisher.publishEvent(OrderStatusChangedEvent.cancelled(1, today ? order.getTotalPrice() : 0));
+        eventPublisher.publishEvent(new MemberOrderChangedEvent(order.getMember().getId()));
+        return order;
+    }
+
+    /**
+     * 샤드에서 취소한 주문의 재고를 메인 DB 의 상품에 복구한다
+     * -> 샤드의 상품 사본에 더한 재고는 다음 주문 때 메인 DB 의 값으로 덮어쓴다
+     */
+    private void restock(List<Order> cancelledOrders) {
+        for (Order order : cancelledOrders) {
+            for (OrderItem orderItem : order.getOrderItems()) {
+                itemRepository.findOne(orderItem.getItem().getId()).addStock(orderItem.getCount());
+            }
+        }
+        eventPublisher.publishEvent(EntityChangedEvent.of(Item.class));
+    }
+
+    /**
+     * 주문 일괄 취소
+     * <p>
+     * cancelOrder 를 주문 수만큼 반복하면
+     * -> 주문 조회 N번, orderItem / item 지연 로딩 N번, update N번 (수천 건이면 한참 걸린다)
+     * <p>
+     * 벌크 연산으로 청크(1000건)당
+     * -> 취소 대상 조회 1번 (select ... for update), 배송완료 검증 1번 (배송 version 증가),
+     * 재고 복구 1번 (상품별 합계), 주문 상태 변경 1번
+     * <p>
+     * 배송완료된 주문이 하나라도 있으면 예외가 발생하고 전체가 롤백된다.
+     * 이미 취소된 주문은 건너뛴다.
+     * <p>
+     * 샤드를 쓰면 주문 id 를 샤드별로 나눠서 취소한다 (메인 DB 가 아닌 샤드는 cancelInShard)
+     *
+     * @return 취소된 주문 수
+     */
+    @Transactional
+    public int cancelOrders(List<Long> orderIds) {
+        Map<Integer, List<Long>> orderIdsByShard = orderIds.stream()
+                .collect(Collectors.groupingBy(shards::shardOfOrder, TreeMap::new, Collectors.toList()));
+        int canceled = 0;
+        for (Map.Entry<Integer, List<Long>> shardOrderIds : orderIdsByShard.entrySet()) {
+            canceled += shardOrderIds.getKey() == Shards.MAIN
+                    ? bulkCancel(shardOrderIds.getValue())
+                    : cancelInShard(shardOrderIds.getKey(), shardOrderIds.getValue());
+        }
+        return canceled;
+    }
+
+    private int bulkCancel(List<Long> orderIds) {
+        // 벌크 연산은 영속성 컨텍스트를 무시하고 DB 에 바로 반영된다
+        // -> 먼저 flush 해서 아직 반영되지 않은 변경을 DB 에 내려둔다
+        em.flush();
+
+        int canceled = 0;
+        for (int from = 0; from < orderIds.size(); from += BULK_CANCEL_CHUNK_SIZE) {
+            List<Long> chunk = orderIds.subList(from, Math.min(from + BULK_CANCEL_CHUNK_SIZE, orderIds.size()));
+            List<Long> cancelableIds = orderRepository.lockCancelableIds(chunk);
+            if (cancelableIds.isEmpty()) {
+                continue;
+            }
+            // COMP 가 아닌 배송의 version 을 올리면서 배송완료 여부를 쿼리 1번으로 검증한다
+            // -> 하나라도 모자라면 이미 COMP 가 된 배송이 있다 (배송 처리 워커와 동시에 일어나도 마찬가지)
+            if (deliveryRepository.touchCancelableDeliveries(cancelableIds) != cancelableIds.size()) {
+                throw new IllegalStateException("이미 배송완료된 상품은 취소가 불가능합니다.");
+            }
+            itemRepository.bulkAddStock(cancelableIds);
+            long todayRevenue = orderRepository.sumRevenueSince(cancelableIds, LocalDate.now().atStartOfDay());
+            int chunkCanceled = orderRepository.bulkCancel(cancelableIds);
+            canceled += chunkCanceled;
+            eventPublisher.publishEvent(OrderStatusChangedEvent.cancelled(chunkCanceled, todayRevenue));
+            orderEventService.recordCancelled(cancelableIds);
+            evict(cancelableIds);
+        }
+
+        // 벌크 연산 이전에 영속성 컨텍스트에 올라와 있던 Order, Item 은 옛날 값을 가지고 있다
+        // -> clear 해서 이후 조회시 DB 에서 다시 가져오도록 한다 (그 전에 outbox 이벤트는 flush)
+        em.flush();
+        em.clear();
+        if (canceled > 0) {
+            eventPublisher.publishEvent(EntityChangedEvent.of(Order.class, Item.class));
+        }
+        return canceled;
     }
 
     /**
-     * 검색
+     * 메인 DB 가 아닌 샤드의 주문 일괄 취소
+     * -> 샤드 트랜잭션 하나에서 주문마다 cancelOrder 와 같이 취소하고, 재고는 메인 DB 에서 복구한다
+     * -> 샤드마다 따로 커밋되므로 뒤의 샤드에서 실패해도 앞에서 커밋한 샤드의 취소는 롤백되지 않는다
      */
-    public List<Order> findOrders(OrderSearch searchOrder) {
-        return orderRepository.findAllByString(searchOrder);
+    private int cancelInShard(int shard, List<Long> orderIds) {
+        List<Order> cancelled = shards.write(shard, () -> {
+            List<Order> orders = new ArrayList<>();
+            for (Long orderId : orderIds) {
+                Order order = orderRepository.findOne(orderId);
+                if (order != null && order.getStatus() == OrderStatus.ORDER) {
+                    orders.add(cancel(order));
+                }
+            }
+            return orders;
+        });
+        restock(cancelled);
+        return cancelled.size();
+    }
+
+    /**
+     * 검색 조건에 해당하는 주문 일괄 취소
+     */
+    @Transactional
+    public int cancelOrders(OrderSearch orderSearch) {
+        return cancelOrders(orderRepository.findOrderIds(orderSearch));
+    }
+
+    private void evict(List<Long> orderIds) {
+        Cache cache = em.getEntityManagerFactory().getCache();
+        orderIds.forEach(orderId -> cache.evict(Order.class, orderId));
+        cache.evict(Item.class);
     }
 }
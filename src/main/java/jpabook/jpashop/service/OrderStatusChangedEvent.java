@@ -0,0 +1,49 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.OrderStatus;
+import lombok.Getter;
+
+/**
+ * count 건의 주문 / 배송 상태 변경 (OrderStatusCounters 가 커밋된 뒤에 받는다)
+ * -> from 상태에서 count 를 빼고 to 상태에 더한다 (null 이면 건너뛴다 : 새로 생긴 주문은 from 이 없다)
+ */
+@Getter
+public class OrderStatusChangedEvent {
+
+    private final OrderStatus orderFrom;
+    private final OrderStatus orderTo;
+    private final DeliveryStatus deliveryFrom;
+    private final DeliveryStatus deliveryTo;
+    private final int count;
+    private final long todayRevenue;
+
+    private OrderStatusChangedEvent(OrderStatus orderFrom, OrderStatus orderTo,
+                                    DeliveryStatus deliveryFrom, DeliveryStatus deliveryTo,
+                                    int count, long todayRevenue) {
+        this.orderFrom = orderFrom;
+        this.orderTo = orderTo;
+        this.deliveryFrom = deliveryFrom;
+        this.deliveryTo = deliveryTo;
+        this.count = count;
+        this.todayRevenue = todayRevenue;
+    }
+
+    /**
+     * @param revenue 주문 금액 합계 (오늘 매출에 더한다)
+     */
+    public static OrderStatusChangedEvent placed(int count, long revenue) {
+        return new OrderStatusChangedEvent(null, OrderStatus.ORDER, null, DeliveryStatus.READY, count, revenue);
+    }
+
+    /**
+     * @param todayRevenue 취소한 주문 중 오늘 주문의 금액 합계 (오늘 매출에서 뺀다)
+     */
+    public static OrderStatusChangedEvent cancelled(int count, long todayRevenue) {
+        return new OrderStatusChangedEvent(OrderStatus.ORDER, OrderStatus.CANCEL, null, null, count, -todayRevenue);
+    }
+
+    public static OrderStatusChangedEvent delivered(int count) {
+        return new OrderStatusChangedEvent(null, null, DeliveryStatus.READY, DeliveryStatus.COMP, count, 0);
+    }
+}
@@ -0,0 +1,200 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.datasource.ReadRouting;
+import jpabook.jpashop.datasource.Shards;
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.repository.DeliveryRepository;
+import jpabook.jpashop.repository.OrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 주문 상태별 / 배송 상태별 건수와 오늘 매출 (운영 대시보드가 1초마다 조회한다)
+ * <p>
+ * 조회할 때마다 "count(*) group by status" 로 orders 전체를 훑지 않고 메모리의 카운터를 읽는다
+ * - 주문 / 취소 / 배송완료가 커밋되면 OrderStatusChangedEvent 로 카운터를 바꾼다 (LongAdder : 동시에 더해도 경합이 적다)
+ * - 이벤트가 없는 변경(보관 삭제, 직접 수정한 데이터)이나 롤백 직전 유실은 reconcile 이 주기적으로 DB 값에 맞춘다
+ * <p>
+ * 커밋과 카운터 반영 사이에 reconcile 이 DB 를 세면 같은 변경이 두 번 더해진다
+ * -> 이벤트를 발행한 트랜잭션은 커밋 직전부터 카운터에 반영할 때까지 commits 읽기 락을 잡는다
+ * -> reconcile 은 쓰기 락을 잡고 센다 (세는 동안 상태를 바꾸는 커밋은 기다린다)
+ * -> 트랜잭션 밖에서 커밋한 뒤 발행하는 가져오기(OrderImportService)는 이 보호를 받지 못한다 (다음 reconcile 이 맞춘다)
+ */
+@Slf4j
+@Lazy(false) // prod 의 lazy-initialization 에서도 기동 시 만들어야 커밋 이벤트를 놓치지 않는다
+@Component
+public class OrderStatusCounters {
+
+    private final OrderRepository orderRepository;
+    private final DeliveryRepository deliveryRepository;
+    private final Shards shards;
+
+    private final Map<OrderStatus, LongAdder> orders = new EnumMap<>(OrderStatus.class);
+    private final Map<DeliveryStatus, LongAdder> deliveries = new EnumMap<>(DeliveryStatus.class);
+    private final LongAdder todayRevenue = new LongAdder();
+    private volatile LocalDate today = LocalDate.now();
+    private volatile LocalDateTime reconciledAt;
+    private final ReadWriteLock commits = new ReentrantReadWriteLock();
+
+    public OrderStatusCounters(OrderRepository orderRepository, DeliveryRepository deliveryRepository, Shards shards) {
+        this.orderRepository = orderRepository;
+        this.deliveryRepository = deliveryRepository;
+        this.shards = shards;
+        for (OrderStatus status : OrderStatus.values()) {
+            orders.put(status, new LongAdder());
+        }
+        for (DeliveryStatus status : DeliveryStatus.values()) {
+            deliveries.put(status, new LongAdder());
+        }
+    }
+
+    /**
+     * 트랜잭션 안에서 발행하면 커밋 직전에 받아서 커밋된 뒤에 반영한다 (롤백되면 반영하지 않는다)
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onStatusChanged(OrderStatusChangedEvent event) {
+        Lock lock = commits.readLock();
+        lock.lock();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                apply(event);
+            } finally {
+                lock.unlock();
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status == STATUS_COMMITTED) {
+                        apply(event);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+
+    private void apply(OrderStatusChangedEvent event) {
+        move(orders, event.getOrderFrom(), event.getOrderTo(), event.getCount());
+        move(deliveries, event.getDeliveryFrom(), event.getDeliveryTo(), event.getCount());
+        rollover();
+        todayRevenue.add(event.getTodayRevenue());
+    }
+
+    private static <S> void move(Map<S, LongAdder> counters, S from, S to, int count) {
+        if (from != null) {
+            counters.get(from).add(-count);
+        }
+        if (to != null) {
+            counters.get(to).add(count);
+        }
+    }
+
+    /**
+     * DB 의 실제 값에 맞춘다
+     * -> 쓰기 락을 잡고 세므로 반영되지 않은 커밋이 없다 (카운터와 DB 값의 차이만큼 더한다)
+     * -> 이벤트는 커밋된 뒤에 오므로 primary 에서 읽는다 (복제가 늦은 replica 와 맞추면 그만큼 틀어진다)
+     * -> 주문 샤드를 쓰면 샤드마다 세서 더한다
+     */
+    @Scheduled(fixedDelayString = "${jpashop.order-counters.reconcile-delay-millis:60000}")
+    @Transactional(readOnly = true, label = ReadRouting.PRIMARY)
+    public void reconcile() {
+        rollover();
+        LocalDate date = today;
+        Map<OrderStatus, Long> orderCounts;
+        Map<DeliveryStatus, Long> deliveryCounts;
+        long drift;
+        Lock lock = commits.writeLock();
+        lock.lock();
+        try {
+            Map<OrderStatus, Long> ordersBefore = sums(orders);
+            Map<DeliveryStatus, Long> deliveriesBefore = sums(deliveries);
+            long revenueBefore = todayRevenue.sum();
+
+            orderCounts = sumShards(shards.gather(orderRepository::countByStatus));
+            deliveryCounts = sumShards(shards.gather(deliveryRepository::countByStatus));
+            long revenue = shards.gather(() -> orderRepository.sumRevenueSince(date.atStartOfDay())).stream()
+                    .mapToLong(Long::longValue)
+                    .sum();
+
+            drift = adjust(orders, ordersBefore, orderCounts) + adjust(deliveries, deliveriesBefore, deliveryCounts);
+            if (date.equals(today)) {
+                drift += Math.abs(revenue - revenueBefore);
+                todayRevenue.add(revenue - revenueBefore);
+            }
+        } finally {
+            lock.unlock();
+        }
+        reconciledAt = LocalDateTime.now();
+        if (drift != 0) {
+            log.info("order status counters reconciled: drift={}, orders={}, deliveries={}", drift, orderCounts, deliveryCounts);
+        }
+    }
+
+    private static <S> Map<S, Long> sumShards(List<Map<S, Long>> shardCounts) {
+        if (shardCounts.size() == 1) {
+            return shardCounts.get(0);
+        }
+        Map<S, Long> counts = new LinkedHashMap<>();
+        shardCounts.forEach(shard -> shard.forEach((status, count) -> counts.merge(status, count, Long::sum)));
+        return counts;
+    }
+
+    private static <S> Map<S, Long> sums(Map<S, LongAdder> counters) {
+        Map<S, Long> sums = new LinkedHashMap<>();
+        counters.forEach((status, counter) -> sums.put(status, counter.sum()));
+        return sums;
+    }
+
+    private static <S> long adjust(Map<S, LongAdder> counters, Map<S, Long> before, Map<S, Long> actual) {
+        long drift = 0;
+        for (Map.Entry<S, LongAdder> counter : counters.entrySet()) {
+            long delta = actual.getOrDefault(counter.getKey(), 0L) - before.get(counter.getKey());
+            counter.getValue().add(delta);
+            drift += Math.abs(delta);
+        }
+        return drift;
+    }
+
+    /**
+     * 날짜가 바뀌면 오늘 매출을 0 부터 다시 센다
+     */
+    private void rollover() {
+        LocalDate now = LocalDate.now();
+        if (!now.equals(today)) {
+            synchronized (this) {
+                if (!now.equals(today)) {
+                    todayRevenue.reset();
+                    today = now;
+                }
+            }
+        }
+    }
+
+    public OrderStatusCounts snapshot() {
+        rollover();
+        return new OrderStatusCounts(sums(orders), sums(deliveries), today, todayRevenue.sum(), reconciledAt);
+    }
+}
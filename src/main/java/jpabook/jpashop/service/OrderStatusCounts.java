@@ -0,0 +1,24 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * GET /api/v1/orders/status-counts 응답
+ */
+@Data
+@AllArgsConstructor
+public class OrderStatusCounts {
+
+    private Map<OrderStatus, Long> orders;
+    private Map<DeliveryStatus, Long> deliveries;
+    private LocalDate date;
+    private long todayRevenue;
+    private LocalDateTime reconciledAt;
+}
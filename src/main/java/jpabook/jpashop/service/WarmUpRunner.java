@@ -0,0 +1,111 @@
+package jpabook.jpashop.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 기동 warm-up
+ * <p>
+ * 스프링 부트는 ApplicationRunner 가 모두 끝난 뒤에 readiness 를 ACCEPTING_TRAFFIC 으로 바꾼다.
+ * -> 여기서 warm-up 을 하는 동안 /actuator/health/readiness 는 OUT_OF_SERVICE 를 응답하고
+ * -> 로드밸런서는 warm-up 이 끝난 인스턴스에만 트래픽을 보낸다.
+ * <p>
+ * 1. 커넥션 풀을 connections 개까지 미리 연다
+ * 2. 대표 조회 쿼리를 iterations 번(최대 max-millis 동안) 반복한다
+ * 3. 주문이 많은 상품, 회원을 hot-entities 개씩 읽어 둔다
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WarmUpRunner implements ApplicationRunner {
+
+    private final WarmUpService warmUpService;
+    private final DataSource dataSource;
+
+    @Value("${jpashop.warmup.enabled:false}")
+    private boolean enabled;
+
+    @Value("${jpashop.warmup.iterations:100}")
+    private int iterations;
+
+    @Value("${jpashop.warmup.max-millis:30000}")
+    private long maxMillis;
+
+    @Value("${jpashop.warmup.connections:10}")
+    private int connections;
+
+    @Value("${jpashop.warmup.hot-entities:100}")
+    private int hotEntities;
+
+    /**
+     * 첫 번째(cold) / 마지막(warm) 반복의 쿼리별 소요 시간(us)
+     */
+    @Getter
+    private Map<String, Long> coldLatencyMicros = Map.of();
+    @Getter
+    private Map<String, Long> warmLatencyMicros = Map.of();
+
+    @Override
+    public void run(ApplicationArguments args) throws SQLException {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        openConnections();
+
+        int replayed = 0;
+        do {
+            Map<String, Long> latencyMicros = warmUpService.replayQueries();
+            if (replayed == 0) {
+                coldLatencyMicros = latencyMicros;
+            }
+            warmLatencyMicros = latencyMicros;
+            replayed++;
+        } while (replayed < iterations && elapsedMillis(start) < maxMillis);
+
+        int loaded = warmUpService.loadHotEntities(hotEntities);
+
+        log.info("warm-up: elapsed={}ms, iterations={}, hotEntities={}", elapsedMillis(start), replayed, loaded);
+        warmLatencyMicros.forEach((name, micros) ->
+                log.info("warm-up: {} cold={}us warm={}us", name, coldLatencyMicros.get(name), micros));
+    }
+
+    /**
+     * 커넥션을 한꺼번에 빌렸다가 반납해서 풀이 미리 열어두게 한다
+     * -> 풀 크기보다 많이 빌리면 connectionTimeout 동안 기다리게 되므로 풀 크기까지만 빌린다
+     */
+    private void openConnections() throws SQLException {
+        int size = connections;
+        if (dataSource.isWrapperFor(HikariDataSource.class)) {
+            size = Math.min(size, dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize());
+        }
+
+        List<Connection> opened = new ArrayList<>();
+        try {
+            for (int i = 0; i < size; i++) {
+                opened.add(dataSource.getConnection());
+            }
+        } finally {
+            for (Connection connection : opened) {
+                connection.close();
+            }
+        }
+    }
+
+    private long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,92 @@
+package jpabook.jpashop.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.repository.order.query.OrderFlatGrouper;
+import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import jpabook.jpashop.repository.order.query.OrderQueryRepository;
+import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 기동 직후 트래픽이 많은 조회 경로를 미리 한 번씩 실행한다 (WarmUpRunner 가 호출)
+ * -> JIT 컴파일, Hibernate 쿼리 플랜 캐시, Jackson 직렬화기, DB 버퍼 캐시가 데워진다
+ */
+@Service
+@Transactional(readOnly = true)
+@RequiredArgsConstructor
+public class WarmUpService {
+
+    private static final int PAGE_SIZE = 100;
+
+    private final OrderQueryRepository orderQueryRepository;
+    private final OrderSimpleQueryRepository orderSimpleQueryRepository;
+    private final ItemRepository itemRepository;
+    private final MemberRepository memberRepository;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 조회(+ API 는 응답 직렬화까지) 화면, API 와 같은 경로로 한 번씩 실행한다
+     * -> 주문 API 는 API 와 같은 쿼리를 setMaxResults(PAGE_SIZE) 로 잘라서 실행한다 (전체 조회는 주문 수만큼 기동이 늦어진다)
+     *
+     * @return 쿼리 이름 -> 소요 시간(us)
+     */
+    public Map<String, Long> replayQueries() {
+        Map<String, Long> latencyMicros = new LinkedHashMap<>();
+        replayApi(latencyMicros, "/api/v4/simple-orders",
+                () -> orderSimpleQueryRepository.findOrderDtos(PAGE_SIZE));
+        replayApi(latencyMicros, "/api/v5/orders",
+                () -> orderQueryRepository.findAllByDto_optimization(PAGE_SIZE));
+        replayApi(latencyMicros, "/api/v6.1/orders", this::findFlatPage);
+        // 주문 화면은 엔티티를 타임리프로 그리므로 조회만 한다
+        replay(latencyMicros, "/order (items)", itemRepository::findAll);
+        replay(latencyMicros, "/order (members)", memberRepository::findAll);
+        return latencyMicros;
+    }
+
+    /**
+     * 주문이 많은 상품, 회원을 엔티티로 한 번씩 읽어 둔다
+     *
+     * @return 읽은 엔티티 수
+     */
+    public int loadHotEntities(int limit) {
+        List<Long> itemIds = itemRepository.findMostOrderedIds(limit);
+        itemIds.forEach(itemRepository::findOne);
+        List<Long> memberIds = memberRepository.findMostOrderingIds(limit);
+        memberIds.forEach(memberRepository::findOne);
+        return itemIds.size() + memberIds.size();
+    }
+
+    private List<OrderQueryDto> findFlatPage() {
+        try (Stream<OrderQueryDto> orders = OrderFlatGrouper.group(orderQueryRepository.streamAllByDto_flat(0L))) {
+            return orders.limit(PAGE_SIZE).collect(Collectors.toList());
+        }
+    }
+
+    private void replayApi(Map<String, Long> latencyMicros, String name, Supplier<?> query) {
+        replay(latencyMicros, name, () -> {
+            try {
+                return objectMapper.writeValueAsBytes(query.get());
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("warm-up 응답 직렬화 실패: " + name, e);
+            }
+        });
+    }
+
+    private void replay(Map<String, Long> latencyMicros, String name, Supplier<?> query) {
+        long start = System.nanoTime();
+        query.get();
+        latencyMicros.put(name, (System.nanoTime() - start) / 1_000);
+    }
+}
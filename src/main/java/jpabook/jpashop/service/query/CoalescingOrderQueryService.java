@@ -0,0 +1,62 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.repository.order.query.OrderFlatDto;
+import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import jpabook.jpashop.repository.order.query.OrderQueryRepository;
+import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryDto;
+import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryRepository;
+import jpabook.jpashop.service.EntityVersions;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 대시보드 새로고침처럼 같은 조회가 동시에 몰리는 DTO 조회 API (V4, V5, V6)
+ * -> 같은 메소드 + 같은 인자의 동시 호출은 SingleFlight 로 DB 조회 1번을 같이 쓴다
+ * <p>
+ * 키에 엔티티 version(EntityVersions)을 넣는다
+ * -> 쓰기가 커밋된 뒤에 들어온 호출은 커밋 전에 시작한 leader 를 기다리지 않는다
+ * -> ResponseCacheFilter 는 요청을 시작할 때의 version 으로 응답을 저장하므로, 합쳐진 호출이 옛날 결과를 새 version 으로 저장하지 못한다
+ * <p>
+ * 트랜잭션을 붙이지 않는다
+ * -> 기다리는 호출까지 트랜잭션(커넥션)을 잡고 기다리면 합치는 의미가 없다
+ * -> leader 가 부르는 리포지토리가 읽기 전용 트랜잭션을 연다 (replica 에서 읽는다)
+ * <p>
+ * 같은 List 를 여러 요청이 나눠 가지므로 수정할 수 없는 List 로 돌려준다
+ */
+@Service
+@RequiredArgsConstructor
+public class CoalescingOrderQueryService {
+
+    private final SingleFlight singleFlight;
+    private final EntityVersions entityVersions;
+    private final OrderQueryRepository orderQueryRepository;
+    private final OrderSimpleQueryRepository orderSimpleQueryRepository;
+
+    public List<OrderSimpleQueryDto> findOrderDtos() {
+        return singleFlight.execute(key("findOrderDtos"),
+                () -> Collections.unmodifiableList(orderSimpleQueryRepository.findOrderDtos()));
+    }
+
+    public List<OrderSimpleQueryDto> findOrderDtos(LocalDateTime from, LocalDateTime to) {
+        return singleFlight.execute(key("findOrderDtos", from, to),
+                () -> Collections.unmodifiableList(orderSimpleQueryRepository.findOrderDtos(from, to)));
+    }
+
+    public List<OrderQueryDto> findAllByDto_optimization() {
+        return singleFlight.execute(key("findAllByDto_optimization"),
+                () -> Collections.unmodifiableList(orderQueryRepository.findAllByDto_optimization()));
+    }
+
+    public List<OrderFlatDto> findAllByDto_flat() {
+        return singleFlight.execute(key("findAllByDto_flat"),
+                () -> Collections.unmodifiableList(orderQueryRepository.findAllByDto_flat()));
+    }
+
+    private Object key(String name, Object... args) {
+        return SingleFlight.key(name + "@" + entityVersions.version(), args);
+    }
+}
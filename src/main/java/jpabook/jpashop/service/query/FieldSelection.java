@@ -0,0 +1,96 @@
+package jpabook.jpashop.service.query;
+
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * fields= 선택자("orderId,status,member.name,orderItems.item.name")를 컴파일한 결과
+ * -> associations : EntityGraph 로 조회할 연관관계 경로 (요청한 필드가 지나가는 연관관계만)
+ * -> write : 요청한 필드만 getter 로 읽어서 Map 트리로 만든다 (getter 는 컴파일 시점에 찾아둔다)
+ *
+ * <p>
+ * FieldSelectionCompiler 가 필드 목록마다 한 번 만들고 재사용한다 (불변)
+ */
+public class FieldSelection {
+
+    private final List<String> associations;
+    private final Node root;
+
+    FieldSelection(List<String> associations, Node root) {
+        this.associations = Collections.unmodifiableList(associations);
+        this.root = root;
+    }
+
+    public List<String> getAssociations() {
+        return associations;
+    }
+
+    /**
+     * 지연 로딩이 일어날 수 있으므로 트랜잭션 안에서 호출한다
+     */
+    public List<Map<String, Object>> writeAll(List<?> sources) {
+        List<Map<String, Object>> result = new ArrayList<>(sources.size());
+        for (Object source : sources) {
+            result.add(root.write(source));
+        }
+        return result;
+    }
+
+    static class Node {
+
+        private final String name;
+        private final Method getter;
+        private final boolean collection;
+        private final Map<String, Node> children = new LinkedHashMap<>();
+
+        Node(String name, Method getter, boolean collection) {
+            this.name = name;
+            this.getter = getter;
+            this.collection = collection;
+        }
+
+        Node child(String name) {
+            return children.get(name);
+        }
+
+        void addChild(Node child) {
+            children.put(child.name, child);
+        }
+
+        boolean isLeaf() {
+            return children.isEmpty();
+        }
+
+        private Map<String, Object> write(Object source) {
+            Map<String, Object> out = new LinkedHashMap<>(children.size() * 2);
+            for (Node child : children.values()) {
+                out.put(child.name, child.read(source));
+            }
+            return out;
+        }
+
+        private Object read(Object source) {
+            Object value = ReflectionUtils.invokeMethod(getter, source);
+            if (isLeaf() || value == null) {
+                return value;
+            }
+            if (!collection) {
+                return write(value);
+            }
+
+            Collection<?> elements = (Collection<?>) value;
+            List<Map<String, Object>> out = new ArrayList<>(elements.size());
+            for (Object element : elements) {
+                out.add(write(element));
+            }
+            return out;
+        }
+    }
+}
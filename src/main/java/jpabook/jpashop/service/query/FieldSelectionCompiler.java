@@ -0,0 +1,171 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.service.query.FieldSelection.Node;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * fields= 선택자를 JPA 메타모델로 검증해서 FieldSelection 으로 컴파일한다
+ * -> "orderId" 처럼 "엔티티이름 + Id" 는 식별자(id) 필드로 읽는다 (DTO 와 같은 이름)
+ * -> 연관관계는 하위 필드까지 지정해야 한다 ("member" X, "member.name" O)
+ *
+ * <p>
+ * 같은 필드 목록은 같은 계획을 재사용한다 (엔티티 타입 + 정규화한 필드 목록으로 캐시)
+ * -> 클라이언트가 보내는 조합은 몇 가지뿐이므로 max-plans 까지만 캐시하고, 넘치면 매번 컴파일한다
+ */
+@Component
+public class FieldSelectionCompiler {
+
+    private final Metamodel metamodel;
+    private final int maxPlans;
+    private final ConcurrentMap<String, FieldSelection> plans = new ConcurrentHashMap<>();
+
+    public FieldSelectionCompiler(EntityManagerFactory emf,
+                                  @Value("${jpashop.fields.max-plans:256}") int maxPlans) {
+        this.metamodel = emf.getMetamodel();
+        this.maxPlans = maxPlans;
+    }
+
+    public FieldSelection compile(Class<?> rootType, String fields) {
+        List<String> fieldList = normalize(fields);
+        String key = rootType.getName() + ':' + String.join(",", fieldList);
+
+        FieldSelection selection = plans.get(key);
+        if (selection != null) {
+            return selection;
+        }
+        selection = compile(metamodel.entity(rootType), fieldList);
+        if (plans.size() < maxPlans) {
+            plans.putIfAbsent(key, selection);
+        }
+        return selection;
+    }
+
+    int cachedPlans() {
+        return plans.size();
+    }
+
+    private FieldSelection compile(EntityType<?> rootType, List<String> fields) {
+        Node root = new Node(null, null, false);
+        Set<String> associations = new LinkedHashSet<>();
+        String fetchedCollection = null;
+
+        for (String field : fields) {
+            String[] names = field.split("\\.");
+            ManagedType<?> type = rootType;
+            Node parent = root;
+            String path = null;
+            boolean fetched = true;
+
+            for (int i = 0; i < names.length; i++) {
+                Attribute<?, ?> attribute = attribute(type, names[i], field);
+                ManagedType<?> next = managedType(attribute);
+                boolean last = i == names.length - 1;
+                if (last && attribute.isAssociation()) {
+                    throw new IllegalArgumentException("연관관계는 하위 필드까지 지정해야 합니다: " + field);
+                }
+                if (!last && next == null) {
+                    throw new IllegalArgumentException("하위 필드가 없는 필드입니다: " + field);
+                }
+
+                Node node = parent.child(names[i]);
+                if (node == null) {
+                    node = new Node(names[i], getter(type, attribute, field), attribute.isCollection());
+                    parent.addChild(node);
+                }
+
+                path = path == null ? attribute.getName() : path + "." + attribute.getName();
+                if (attribute.isCollection()) {
+                    // 컬렉션(bag) 둘을 한 번에 페치 조인하면 MultipleBagFetchException
+                    // -> 두 번째 컬렉션부터는 EntityGraph 에서 빼고 default_batch_fetch_size 로 지연 로딩한다
+                    if (fetchedCollection == null) {
+                        fetchedCollection = path;
+                    }
+                    fetched &= fetchedCollection.equals(path);
+                }
+                if (attribute.isAssociation() && fetched) {
+                    associations.add(path);
+                }
+
+                type = next;
+                parent = node;
+            }
+        }
+        return new FieldSelection(leafPaths(associations), root);
+    }
+
+    private List<String> normalize(String fields) {
+        Set<String> result = new LinkedHashSet<>();
+        if (fields != null) {
+            for (String field : fields.split(",")) {
+                if (StringUtils.hasText(field)) {
+                    result.add(field.trim());
+                }
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("fields 가 비어 있습니다.");
+        }
+        return new ArrayList<>(result);
+    }
+
+    private Attribute<?, ?> attribute(ManagedType<?> type, String name, String field) {
+        for (Attribute<?, ?> attribute : type.getAttributes()) {
+            if (attribute.getName().equals(name)) {
+                return attribute;
+            }
+        }
+        if (type instanceof EntityType && name.equals(StringUtils.uncapitalize(((EntityType<?>) type).getName()) + "Id")) {
+            EntityType<?> entityType = (EntityType<?>) type;
+            return entityType.getId(entityType.getIdType().getJavaType());
+        }
+        throw new IllegalArgumentException("존재하지 않는 필드입니다: " + field);
+    }
+
+    private ManagedType<?> managedType(Attribute<?, ?> attribute) {
+        Type<?> type = attribute instanceof PluralAttribute
+                ? ((PluralAttribute<?, ?, ?>) attribute).getElementType()
+                : ((SingularAttribute<?, ?>) attribute).getType();
+        return type instanceof ManagedType ? (ManagedType<?>) type : null;
+    }
+
+    private Method getter(ManagedType<?> type, Attribute<?, ?> attribute, String field) {
+        PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(type.getJavaType(), attribute.getName());
+        if (descriptor == null || descriptor.getReadMethod() == null) {
+            throw new IllegalArgumentException("getter 가 없는 필드입니다: " + field);
+        }
+        return descriptor.getReadMethod();
+    }
+
+    /**
+     * "orderItems", "orderItems.item" -> "orderItems.item" (하위 경로가 상위 연관관계도 같이 조회한다)
+     */
+    private List<String> leafPaths(Set<String> paths) {
+        List<String> result = new ArrayList<>();
+        for (String path : paths) {
+            if (paths.stream().noneMatch(other -> other.startsWith(path + "."))) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+}
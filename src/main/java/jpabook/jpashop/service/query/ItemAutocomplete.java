@@ -0,0 +1,113 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.datasource.ReadRouting;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.service.ItemSavedEvent;
+import jpabook.jpashop.service.query.ItemNameIndex.Entry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 상품 이름 자동완성 (주문 화면의 상품 선택)
+ * <p>
+ * - 기동 후, 그리고 rebuild-delay 마다 DB 에서 {id, 이름, 주문 수량} 만 읽어 ItemNameIndex 를 새로 만든다
+ * - 그 사이에 등록 / 수정된 상품(ItemSavedEvent)은 pending 에 두고 검색할 때 같이 본다
+ * -> pending 에 있는 상품은 인덱스의 옛날 이름으로는 나오지 않는다
+ * - 인기도(주문 수량)는 다시 만들 때만 바뀐다
+ */
+@Slf4j
+@Component
+public class ItemAutocomplete {
+
+    private final ItemRepository itemRepository;
+    private final int maxLimit;
+
+    private volatile ItemNameIndex index = ItemNameIndex.EMPTY;
+    private final ConcurrentMap<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public ItemAutocomplete(ItemRepository itemRepository,
+                            @Value("${jpashop.autocomplete.max-limit:50}") int maxLimit) {
+        this.itemRepository = itemRepository;
+        this.maxLimit = maxLimit;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${jpashop.autocomplete.rebuild-delay-millis:300000}",
+            initialDelayString = "${jpashop.autocomplete.rebuild-delay-millis:300000}")
+    @Transactional(readOnly = true, label = ReadRouting.PRIMARY)
+    public void rebuild() {
+        // 여기까지 pending 에 들어온 상품은 커밋된 뒤이므로 아래 조회 결과에 들어있다 (replica 에는 아직 없을 수 있으므로 primary 에서 읽는다)
+        long appliedSequence = sequence.get();
+        long start = System.nanoTime();
+
+        Map<Long, Long> orderedCounts = itemRepository.findOrderedCounts();
+        List<Entry> entries = itemRepository.findNames().stream()
+                .map(row -> new Entry((Long) row[0], (String) row[1], orderedCounts.getOrDefault((Long) row[0], 0L)))
+                .collect(Collectors.toList());
+        index = ItemNameIndex.build(entries);
+        pending.values().removeIf(p -> p.sequence <= appliedSequence);
+
+        log.info("item name index rebuilt: items={}, pending={}, elapsed={}ms",
+                index.size(), pending.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onItemSaved(ItemSavedEvent event) {
+        Entry entry = new Entry(event.getItemId(), event.getName(), index.popularityOf(event.getItemId()));
+        pending.put(event.getItemId(), new Pending(entry, sequence.incrementAndGet()));
+    }
+
+    /**
+     * @return query 로 시작하는 상품 (대소문자 무시), 주문 수량이 많은 순으로 최대 limit 개
+     */
+    public List<ItemSuggestion> suggest(String query, int limit) {
+        String prefix = ItemNameIndex.normalize(query);
+        if (prefix.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        limit = Math.min(limit, maxLimit);
+
+        List<Entry> matches = new ArrayList<>(index.search(prefix, limit, pending::containsKey));
+        boolean pendingMatched = false;
+        for (Pending p : pending.values()) {
+            if (p.entry.key.startsWith(prefix)) {
+                matches.add(p.entry);
+                pendingMatched = true;
+            }
+        }
+        if (pendingMatched) {
+            matches.sort(Comparator.comparingLong((Entry e) -> -e.popularity).thenComparing(e -> e.key));
+        }
+        return matches.stream()
+                .limit(limit)
+                .map(e -> new ItemSuggestion(e.id, e.name))
+                .collect(Collectors.toList());
+    }
+
+    private static class Pending {
+
+        private final Entry entry;
+        private final long sequence;
+
+        Pending(Entry entry, long sequence) {
+            this.entry = entry;
+            this.sequence = sequence;
+        }
+    }
+}
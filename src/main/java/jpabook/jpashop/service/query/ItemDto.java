@@ -0,0 +1,19 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.mapper.MapFrom;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 상품 목록 화면, 주문 화면의 상품 선택용
+ */
+@Data
+@NoArgsConstructor
+@MapFrom(Item.class)
+public class ItemDto {
+    private Long id;
+    private String name;
+    private int price;
+    private int stockQuantity;
+}
@@ -0,0 +1,194 @@
+package jpabook.jpashop.service.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.function.LongPredicate;
+
+/**
+ * 상품 이름 prefix 검색 인덱스 (불변, ItemAutocomplete 가 주기적으로 새로 만든다)
+ * <p>
+ * - 정규화한 이름 순으로 정렬한 배열 -> prefix 로 시작하는 이름은 연속된 구간이므로 이진 탐색 2번으로 구간을 찾는다
+ * - 인기도는 세그먼트 트리(구간에서 인기도가 가장 높은 위치)에 둔다
+ * -> 구간의 최댓값을 꺼내고 그 왼쪽 / 오른쪽 구간을 다시 넣는 식으로 상위 limit 개를 O(limit * log n) 에 꺼낸다
+ * -> 구간에 상품이 수만 개 있어도("a" 한 글자) 전부 훑지 않는다
+ */
+class ItemNameIndex {
+
+    static final ItemNameIndex EMPTY = build(new ArrayList<>());
+
+    private final String[] keys;
+    private final long[] ids;
+    private final String[] names;
+    private final long[] popularity;
+
+    // id -> 배열 위치 (sortedIds 를 이진 탐색해서 positions 에서 꺼낸다)
+    private final long[] sortedIds;
+    private final int[] positions;
+
+    private final int leaves;
+    private final int[] tree;
+
+    private ItemNameIndex(List<Entry> entries) {
+        int n = entries.size();
+        keys = new String[n];
+        ids = new long[n];
+        names = new String[n];
+        popularity = new long[n];
+        for (int i = 0; i < n; i++) {
+            Entry entry = entries.get(i);
+            keys[i] = entry.key;
+            ids[i] = entry.id;
+            names[i] = entry.name;
+            popularity[i] = entry.popularity;
+        }
+
+        Integer[] byId = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            byId[i] = i;
+        }
+        Arrays.sort(byId, Comparator.comparingLong(i -> ids[i]));
+        sortedIds = new long[n];
+        positions = new int[n];
+        for (int i = 0; i < n; i++) {
+            sortedIds[i] = ids[byId[i]];
+            positions[i] = byId[i];
+        }
+
+        int size = 1;
+        while (size < n) {
+            size <<= 1;
+        }
+        leaves = size;
+        tree = new int[2 * size];
+        Arrays.fill(tree, -1);
+        for (int i = 0; i < n; i++) {
+            tree[size + i] = i;
+        }
+        for (int node = size - 1; node > 0; node--) {
+            tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+        }
+    }
+
+    static ItemNameIndex build(List<Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing((Entry e) -> e.key).thenComparingLong(e -> e.id));
+        return new ItemNameIndex(sorted);
+    }
+
+    static String normalize(String name) {
+        return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    long popularityOf(long id) {
+        int found = Arrays.binarySearch(sortedIds, id);
+        return found < 0 ? 0 : popularity[positions[found]];
+    }
+
+    List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            entries.add(new Entry(ids[i], names[i], popularity[i]));
+        }
+        return entries;
+    }
+
+    /**
+     * @param prefix  normalize 한 prefix
+     * @param skipped 결과에서 뺄 상품 id (인덱스를 만든 뒤에 이름이 바뀐 상품)
+     * @return 인기도 높은 순 (같으면 이름 순) 최대 limit 개
+     */
+    List<Entry> search(String prefix, int limit, LongPredicate skipped) {
+        int from = lowerBound(prefix);
+        int to = lowerBound(prefix + Character.MAX_VALUE);
+
+        List<Entry> result = new ArrayList<>(Math.min(limit, to - from));
+        // {from, to, 구간 최댓값 위치} -> 최댓값이 큰 구간부터 꺼낸다 (구간끼리 겹치지 않으므로 위치가 같을 일은 없다)
+        PriorityQueue<int[]> ranges = new PriorityQueue<>((a, b) -> better(a[2], b[2]) == a[2] ? -1 : 1);
+        offer(ranges, from, to);
+        while (result.size() < limit && !ranges.isEmpty()) {
+            int[] range = ranges.poll();
+            int best = range[2];
+            if (!skipped.test(ids[best])) {
+                result.add(new Entry(ids[best], names[best], popularity[best]));
+            }
+            offer(ranges, range[0], best);
+            offer(ranges, best + 1, range[1]);
+        }
+        return result;
+    }
+
+    private void offer(PriorityQueue<int[]> ranges, int from, int to) {
+        if (from < to) {
+            ranges.offer(new int[]{from, to, maxIn(from, to)});
+        }
+    }
+
+    /**
+     * [from, to) 에서 인기도가 가장 높은 위치
+     */
+    private int maxIn(int from, int to) {
+        int best = -1;
+        for (int lo = from + leaves, hi = to + leaves; lo < hi; lo >>= 1, hi >>= 1) {
+            if ((lo & 1) == 1) {
+                best = better(best, tree[lo++]);
+            }
+            if ((hi & 1) == 1) {
+                best = better(best, tree[--hi]);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 인기도가 높은 쪽, 같으면 앞쪽(이름 순)
+     */
+    private int better(int a, int b) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        if (popularity[a] != popularity[b]) {
+            return popularity[a] > popularity[b] ? a : b;
+        }
+        return Math.min(a, b);
+    }
+
+    private int lowerBound(String key) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    static class Entry {
+
+        final long id;
+        final String name;
+        final String key;
+        final long popularity;
+
+        Entry(long id, String name, long popularity) {
+            this.id = id;
+            this.name = name;
+            this.key = normalize(name);
+            this.popularity = popularity;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.repository.ItemRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * 화면에는 엔티티 대신 ItemDto 를 넘긴다 (OSIV off, OrderQueryService 참고)
+ */
+@Service
+@Transactional(readOnly = true)
+@RequiredArgsConstructor
+public class ItemQueryService {
+
+    private final ItemRepository itemRepository;
+
+    public List<ItemDto> findItems() {
+        return ItemDtoMapper.mapAll(itemRepository.findAll());
+    }
+}
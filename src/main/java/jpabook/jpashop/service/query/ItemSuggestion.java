@@ -0,0 +1,14 @@
+package jpabook.jpashop.service.query;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 상품 이름 자동완성 결과 (GET /api/v1/items/autocomplete)
+ */
+@Data
+@AllArgsConstructor
+public class ItemSuggestion {
+    private Long id;
+    private String name;
+}
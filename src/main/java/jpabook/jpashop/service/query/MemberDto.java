@@ -0,0 +1,19 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.mapper.MapFrom;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 회원 목록 화면, 주문 화면의 회원 선택용
+ */
+@Data
+@NoArgsConstructor
+@MapFrom(Member.class)
+public class MemberDto {
+    private Long id;
+    private String name;
+    private Address address;
+}
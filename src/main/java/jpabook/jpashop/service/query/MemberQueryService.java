@@ -0,0 +1,23 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.repository.MemberRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * 화면에는 엔티티 대신 MemberDto 를 넘긴다 (OSIV off, OrderQueryService 참고)
+ */
+@Service
+@Transactional(readOnly = true)
+@RequiredArgsConstructor
+public class MemberQueryService {
+
+    private final MemberRepository memberRepository;
+
+    public List<MemberDto> findMembers() {
+        return MemberDtoMapper.mapAll(memberRepository.findAll());
+    }
+}
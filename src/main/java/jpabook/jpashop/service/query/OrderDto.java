@@ -0,0 +1,48 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.mapper.MapFrom;
+import jpabook.jpashop.mapper.MapPath;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * private List<OrderItem> orderItems;
+ * -> DTO가 아닌 엔티티 OrderItem 을 사용하면 안된다.
+ * -> private List<OrderItemDto> orderItems;
+ * <p>
+ * 생성자에서 지연 로딩이 일어나므로 OrderQueryService 의 트랜잭션 안에서만 생성한다
+ * -> OrderQueryService 는 생성자 대신 컴파일 시점에 생성된 OrderDtoMapper 를 사용한다
+ */
+@Data
+@NoArgsConstructor
+@MapFrom(Order.class)
+public class OrderDto {
+    @MapPath("id")
+    private Long orderId;
+    @MapPath("member.name")
+    private String name;
+    private LocalDateTime orderDate; //주문시간
+    @MapPath("status")
+    private OrderStatus orderStatus;
+    @MapPath("delivery.address")
+    private Address address;
+    private List<OrderItemDto> orderItems;
+
+    public OrderDto(Order order) {
+        orderId = order.getId();
+        name = order.getMember().getName();
+        orderDate = order.getOrderDate();
+        orderStatus = order.getStatus();
+        address = order.getDelivery().getAddress();
+        orderItems = order.getOrderItems().stream()
+                .map(OrderItemDto::new)
+                .collect(Collectors.toList());
+    }
+}
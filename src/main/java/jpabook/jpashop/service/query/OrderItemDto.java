@@ -0,0 +1,23 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.mapper.MapFrom;
+import jpabook.jpashop.mapper.MapPath;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@MapFrom(OrderItem.class)
+public class OrderItemDto {
+    @MapPath("item.name")
+    private String itemName;//상품 명
+    private int orderPrice; //주문 가격
+    private int count; //주문 수량
+
+    public OrderItemDto(OrderItem orderItem) {
+        itemName = orderItem.getItem().getName();
+        orderPrice = orderItem.getOrderPrice();
+        count = orderItem.getCount();
+    }
+}
@@ -1,25 +1,19 @@
 package jpabook.jpashop.service.query;
 
-import jpabook.jpashop.repository.order.query.OrderQueryRepository;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-/*
-@Service
-@Transactional(readOnly = true)
-@RequiredArgsConstructor
-public class OrderQueryService {
-
-
-
-}
-
-*/
+import java.util.List;
+import java.util.Map;
 
 /**
- * OrderService 에서 트랜잭션을 타는 부분을 모두 OrderQueryService에 작성한뒤
- * OrderService 에서 private final OrderQueryService 를 호출하여 사용한다.
+ * 지연 로딩이 필요한 조회(트랜잭션을 타는 부분)를 모두 OrderQueryService에 작성한뒤
+ * 컨트롤러에서 private final OrderQueryService 를 호출하여 DTO 만 받아 사용한다.
  *
  * <p>
  * 왜?
@@ -28,4 +22,98 @@ public class OrderQueryService {
  * <p>
  * 왜 OSVI를 꺼야 하는 거야?
  * => 너무 오랜 시간동안 데이터베이스 커넥션 리소스를 사용하기 때문에 장애로 이어지기 때문이다.
- */
\ No newline at end of file
+ *
+ * <p>
+ * spring.jpa.open-in-view: false
+ * -> 영속성 컨텍스트와 커넥션은 트랜잭션이 끝나면 반환된다
+ * -> 컨트롤러, 뷰(JSON 직렬화, 타임리프 렌더링)에서는 지연 로딩을 할 수 없다
+ * -> 엔티티 -> DTO 변환(지연 로딩 포함)을 이 클래스의 읽기 전용 트랜잭션 안에서 끝낸다
+ */
+@Service
+@Transactional(readOnly = true)
+@RequiredArgsConstructor
+public class OrderQueryService {
+
+    /**
+     * 주문 검색 한 페이지 크기 (다음 페이지는 keyset 커서로 조회)
+     */
+    public static final int ORDER_SEARCH_PAGE_SIZE = 100;
+
+    private final OrderRepository orderRepository;
+    private final FieldSelectionCompiler fieldSelectionCompiler;
+
+    /**
+     * V1. 엔티티 직접 노출
+     * -> 응답에 필요한 LAZY 필드를 트랜잭션 안에서 강제 초기화한다
+     */
+    public List<Order> ordersV1() {
+        List<Order> all = orderRepository.findAllByString(new OrderSearch());
+        for (Order order : all) {
+            order.getMember().getName(); // -> Order의 Member : LAZY 강제 초기화
+            order.getDelivery().getAddress();// -> Order의 Delivery : LAZY 강제 초기화
+            List<OrderItem> orderItems = order.getOrderItems(); // -> Order의 OrderItem : LAZY 강제 초기화
+            orderItems.forEach(o -> o.getItem().getName());  // -> OrderItem의 Item : LAZY 강제 초기화
+        }
+        return all;
+    }
+
+    public List<OrderDto> ordersV2() {
+        return toOrderDtos(orderRepository.findAllByString(new OrderSearch()));
+    }
+
+    /**
+     * OrderDtoMapper 가 읽는 연관관계(ASSOCIATIONS)를 EntityGraph 로 한 번에 조회한다
+     */
+    public List<OrderDto> ordersV3() {
+        return toOrderDtos(orderRepository.findAllWithGraph(OrderDtoMapper.ASSOCIATIONS));
+    }
+
+    /**
+     * fields= 로 요청한 필드만 응답한다
+     * -> 요청한 필드가 지나가는 연관관계만 EntityGraph 로 조인하고, 요청한 필드만 읽는다
+     */
+    public List<Map<String, Object>> ordersV3(String fields) {
+        FieldSelection selection = fieldSelectionCompiler.compile(Order.class, fields);
+        return selection.writeAll(orderRepository.findAllWithGraph(selection.getAssociations()));
+    }
+
+    public List<OrderDto> ordersV3_page(int offset, int limit) {
+        return toOrderDtos(orderRepository.findAllWithMemberDelivery(offset, limit));
+    }
+
+    public List<Order> simpleOrdersV1() {
+        List<Order> all = orderRepository.findAllByString(new OrderSearch());
+        for (Order order : all) {
+            // LAZY 로딩된 Member 에 값을 채우기 위해
+            // 강제 초기화
+            order.getMember().getName();
+            order.getMember().getAddress();
+        }
+        return all;
+    }
+
+    public List<SimpleOrderDto> simpleOrdersV2() {
+        return toSimpleOrderDtos(orderRepository.findAllByString(new OrderSearch()));
+    }
+
+    public List<SimpleOrderDto> simpleOrdersV3() {
+        return toSimpleOrderDtos(orderRepository.findAllWithMemberDelivery());
+    }
+
+    /**
+     * 주문 목록 화면 검색
+     * -> 최신 주문부터 ORDER_SEARCH_PAGE_SIZE 건 (다음 페이지는 orderSearch 의 lastOrderDate, lastOrderId)
+     * -> 시작일이 보관 기준일 이전이면 보관된 주문(orders_archive)도 합쳐서 보여준다
+     */
+    public List<OrderDto> findOrders(OrderSearch orderSearch) {
+        return toOrderDtos(orderRepository.search(orderSearch, ORDER_SEARCH_PAGE_SIZE));
+    }
+
+    private List<OrderDto> toOrderDtos(List<Order> orders) {
+        return OrderDtoMapper.mapAll(orders);
+    }
+
+    private List<SimpleOrderDto> toSimpleOrderDtos(List<Order> orders) {
+        return SimpleOrderDtoMapper.mapAll(orders);
+    }
+}
@@ -0,0 +1,34 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.mapper.MapFrom;
+import jpabook.jpashop.mapper.MapPath;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@MapFrom(Order.class)
+public class SimpleOrderDto {
+    @MapPath("id")
+    private Long orderId;
+    @MapPath("member.name")
+    private String name;
+    private LocalDateTime orderDate; //주문시간
+    @MapPath("status")
+    private OrderStatus orderStatus;
+    @MapPath("delivery.address")
+    private Address address;
+
+    public SimpleOrderDto(Order order) {
+        orderId = order.getId();
+        orderDate = order.getOrderDate();
+        orderStatus = order.getStatus();
+        name = order.getMember().getName(); // LAZY 초기화
+        address = order.getDelivery().getAddress(); // LAZY 초기화
+    }
+}
@@ -0,0 +1,128 @@
+package jpabook.jpashop.service.query;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 같은 키로 동시에 들어온 조회를 하나로 합친다 (single-flight)
+ * -> 먼저 들어온 호출(leader)만 DB 를 조회하고, 그동안 같은 키로 들어온 호출은 leader 의 결과를 같이 받는다
+ * -> 결과를 저장해두지는 않는다 (leader 가 끝나면 다음 호출은 다시 조회한다)
+ * <p>
+ * 기다리던 호출은 leader 가 조회를 시작한 시점의 데이터를 받는다 (쓰기 직후 자기 데이터를 읽어야 하는 곳에는 쓰지 않는다)
+ * leader 가 timeout 안에 끝나지 않으면 기다리던 호출은 직접 조회한다
+ * <p>
+ * 합쳐진 호출 수 : jpashop.single-flight.calls{result=collapsed} (/actuator/metrics)
+ */
+@Slf4j
+@Component
+public class SingleFlight {
+
+    private final boolean enabled;
+    private final Duration timeout;
+    private final ConcurrentMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter leaders;
+    private final Counter collapsed;
+    private final Counter timeouts;
+
+    public SingleFlight(MeterRegistry meterRegistry,
+                        @Value("${jpashop.single-flight.enabled:false}") boolean enabled,
+                        @Value("${jpashop.single-flight.timeout-millis:5000}") long timeoutMillis) {
+        this.enabled = enabled;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+
+        this.leaders = callCounter(meterRegistry, "leader");
+        this.collapsed = callCounter(meterRegistry, "collapsed");
+        this.timeouts = callCounter(meterRegistry, "timeout");
+        Gauge.builder("jpashop.single-flight.in-flight", inFlight, ConcurrentMap::size).register(meterRegistry);
+    }
+
+    private static Counter callCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("jpashop.single-flight.calls")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 메소드 이름 + 인자로 키를 만든다 (인자는 equals / hashCode 로 비교한다)
+     */
+    public static Object key(String name, Object... args) {
+        List<Object> key = new ArrayList<>(args.length + 1);
+        key.add(name);
+        key.addAll(Arrays.asList(args));
+        return key;
+    }
+
+    public <T> T execute(Object key, Supplier<T> loader) {
+        return execute(key, timeout, loader);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Object key, Duration timeout, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(key, call);
+        if (leader == null) {
+            return lead(key, call, loader);
+        }
+
+        collapsed.increment();
+        try {
+            return (T) leader.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            log.warn("single-flight timeout: key={}, timeout={}ms", key, timeout.toMillis());
+            return loader.get();
+        } catch (ExecutionException e) {
+            // leader 와 같은 예외를 받는다
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("조회를 기다리는 중에 중단되었습니다.", e);
+        }
+    }
+
+    private <T> T lead(Object key, CompletableFuture<Object> call, Supplier<T> loader) {
+        leaders.increment();
+        try {
+            T result = loader.get();
+            call.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    public long getCollapsedCount() {
+        return (long) collapsed.count();
+    }
+}
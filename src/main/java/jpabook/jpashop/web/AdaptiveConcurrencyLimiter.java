@@ -0,0 +1,72 @@
+package jpabook.jpashop.web;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 쓰기 요청 동시 처리 수 제한 (대기열 없이 넘치면 바로 거절한다)
+ * <p>
+ * 커넥션 풀보다 많은 요청을 받아봐야 커넥션을 기다리며 쌓이기만 한다
+ * -> 처리 중인 요청이 limit 이상이면 바로 거절하고, 클라이언트는 나중에 다시 시도한다
+ * <p>
+ * limit 은 관찰한 응답 시간으로 조절한다 (AIMD)
+ * -> window 개 요청의 평균 응답 시간이 targetLatency 를 넘으면 10% 줄이고, 아니면 1 늘린다 (minLimit ~ maxLimit)
+ */
+class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatencyNanos;
+    private final int window;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger samples = new AtomicInteger();
+    private final LongAdder latencyNanos = new LongAdder();
+    private volatile int limit;
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long targetLatencyNanos, int window) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.window = window;
+    }
+
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release(long elapsedNanos) {
+        inFlight.decrementAndGet();
+        latencyNanos.add(elapsedNanos);
+        // window 번째 요청을 끝낸 스레드 하나만 limit 을 조절한다
+        if (samples.incrementAndGet() % window == 0) {
+            adjust(latencyNanos.sumThenReset() / window);
+        }
+    }
+
+    private void adjust(long averageNanos) {
+        int current = limit;
+        if (averageNanos > targetLatencyNanos) {
+            limit = Math.max(minLimit, current - Math.max(1, current / 10));
+        } else {
+            limit = Math.min(maxLimit, current + 1);
+        }
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+}
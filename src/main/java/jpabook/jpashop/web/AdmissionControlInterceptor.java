@@ -0,0 +1,149 @@
+package jpabook.jpashop.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 주문 엔드포인트 입장 제어 (WebConfig 에서 /order, /api/v1/orders 에 등록)
+ * <p>
+ * 1. 회원 id(memberId 파라미터)별 토큰 버킷 -> 넘치면 429, 숫자가 아니면 버킷을 만들지 않고 400
+ * 2. 클라이언트(요청한 IP)별 토큰 버킷 -> 넘치면 429
+ * -> 클라이언트가 보내는 헤더는 키로 쓰지 않는다 (요청마다 값을 바꾸면 매번 새 버킷을 받는다)
+ * 3. 쓰기 요청(GET 이외)은 전체 동시 처리 수 제한 -> 넘치면 503
+ * <p>
+ * 버킷은 종류별로 max-buckets 개까지만 만든다 (RateLimiter)
+ * <p>
+ * 거절한 요청은 jpashop.admission.shed{reason=member|client|concurrency} 로 센다 (/actuator/metrics)
+ */
+@Slf4j
+@Component
+public class AdmissionControlInterceptor implements HandlerInterceptor {
+
+    private static final String ACQUIRED_AT = AdmissionControlInterceptor.class.getName() + ".ACQUIRED_AT";
+
+    private final boolean enabled;
+    private final RateLimiter memberRateLimiter;
+    private final RateLimiter clientRateLimiter;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    private final Counter memberShed;
+    private final Counter clientShed;
+    private final Counter concurrencyShed;
+
+    public AdmissionControlInterceptor(MeterRegistry meterRegistry,
+                                       @Value("${jpashop.admission.enabled:false}") boolean enabled,
+                                       @Value("${jpashop.admission.member.permits-per-second:5}") double memberPermitsPerSecond,
+                                       @Value("${jpashop.admission.member.burst:10}") int memberBurst,
+                                       @Value("${jpashop.admission.client.permits-per-second:50}") double clientPermitsPerSecond,
+                                       @Value("${jpashop.admission.client.burst:100}") int clientBurst,
+                                       @Value("${jpashop.admission.max-buckets:100000}") int maxBuckets,
+                                       @Value("${jpashop.admission.concurrency.initial-limit:10}") int initialLimit,
+                                       @Value("${jpashop.admission.concurrency.min-limit:2}") int minLimit,
+                                       @Value("${jpashop.admission.concurrency.max-limit:20}") int maxLimit,
+                                       @Value("${jpashop.admission.concurrency.target-latency-millis:200}") long targetLatencyMillis,
+                                       @Value("${jpashop.admission.concurrency.window:50}") int window) {
+        this.enabled = enabled;
+        this.memberRateLimiter = new RateLimiter(memberPermitsPerSecond, memberBurst, maxBuckets);
+        this.clientRateLimiter = new RateLimiter(clientPermitsPerSecond, clientBurst, maxBuckets);
+        this.concurrencyLimiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit,
+                TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis), window);
+
+        this.memberShed = shedCounter(meterRegistry, "member");
+        this.clientShed = shedCounter(meterRegistry, "client");
+        this.concurrencyShed = shedCounter(meterRegistry, "concurrency");
+        Gauge.builder("jpashop.admission.concurrency.limit", concurrencyLimiter, AdaptiveConcurrencyLimiter::getLimit)
+                .register(meterRegistry);
+        Gauge.builder("jpashop.admission.concurrency.in-flight", concurrencyLimiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .register(meterRegistry);
+    }
+
+    private static Counter shedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("jpashop.admission.shed")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (!enabled) {
+            return true;
+        }
+        long now = System.nanoTime();
+
+        String memberId = request.getParameter("memberId");
+        if (memberId != null) {
+            String memberKey = memberKey(memberId);
+            if (memberKey == null) {
+                response.sendError(HttpStatus.BAD_REQUEST.value(), "memberId 는 숫자여야 합니다.");
+                return false;
+            }
+            if (!memberRateLimiter.tryAcquire(memberKey, now)) {
+                return reject(response, HttpStatus.TOO_MANY_REQUESTS, memberShed);
+            }
+        }
+        if (!clientRateLimiter.tryAcquire(request.getRemoteAddr(), now)) {
+            return reject(response, HttpStatus.TOO_MANY_REQUESTS, clientShed);
+        }
+        if (!"GET".equals(request.getMethod())) {
+            if (!concurrencyLimiter.tryAcquire()) {
+                return reject(response, HttpStatus.SERVICE_UNAVAILABLE, concurrencyShed);
+            }
+            request.setAttribute(ACQUIRED_AT, now);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object acquiredAt = request.getAttribute(ACQUIRED_AT);
+        if (acquiredAt != null) {
+            concurrencyLimiter.release(System.nanoTime() - (long) acquiredAt);
+        }
+    }
+
+    /**
+     * 다 채워진 버킷 정리 (회원/클라이언트 수만큼 버킷이 쌓이지 않도록)
+     */
+    @Scheduled(fixedDelayString = "${jpashop.admission.evict-delay-millis:60000}")
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        int evicted = memberRateLimiter.evictIdle(now) + clientRateLimiter.evictIdle(now);
+        if (evicted > 0) {
+            log.debug("admission buckets evicted={}, member={}, client={}",
+                    evicted, memberRateLimiter.size(), clientRateLimiter.size());
+        }
+    }
+
+    /**
+     * 같은 회원이 "1", "01", " 1" 처럼 다른 문자열로 새 버킷을 받지 않도록 숫자로 바꾼 값을 키로 쓴다
+     *
+     * @return 숫자가 아니면 null
+     */
+    private static String memberKey(String memberId) {
+        try {
+            return Long.toString(Long.parseLong(memberId.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean reject(HttpServletResponse response, HttpStatus status, Counter shed) {
+        shed.increment();
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        return false;
+    }
+}
@@ -0,0 +1,62 @@
+package jpabook.jpashop.web;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 키(회원 id, 클라이언트)별 토큰 버킷
+ * <p>
+ * 버킷마다 "다음 토큰이 차는 시각(theoretical arrival time)" 하나만 AtomicLong 으로 들고 있다 (GCRA)
+ * -> 요청마다 CAS 1번, 락 없음
+ * -> 초당 permitsPerSecond 개로 채워지고, 한 번에 최대 burst 개까지 몰아서 쓸 수 있는 토큰 버킷과 같다
+ * <p>
+ * 다 채워진 버킷은 들고 있을 필요가 없으므로 evictIdle 에서 지운다.
+ * 버킷은 maxBuckets 개까지만 만든다 -> 다 찼으면 다 채워진 버킷을 지워보고, 그래도 자리가 없으면 새 키는 거절한다
+ * (키를 계속 바꿔 보내서 새 버킷을 받거나 메모리를 채우지 못하게)
+ */
+class RateLimiter {
+
+    private final long emissionIntervalNanos;
+    private final long burstNanos;
+    private final int maxBuckets;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    RateLimiter(double permitsPerSecond, int burst, int maxBuckets) {
+        this.emissionIntervalNanos = (long) (1_000_000_000L / permitsPerSecond);
+        this.burstNanos = emissionIntervalNanos * burst;
+        this.maxBuckets = maxBuckets;
+    }
+
+    boolean tryAcquire(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxBuckets && evictIdle(now) == 0) {
+                return false;
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        while (true) {
+            long arrivalAt = bucket.get();
+            long nextArrivalAt = Math.max(arrivalAt, now) + emissionIntervalNanos;
+            if (nextArrivalAt - now > burstNanos) {
+                return false;
+            }
+            if (bucket.compareAndSet(arrivalAt, nextArrivalAt)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return 지운 버킷 수
+     */
+    int evictIdle(long now) {
+        int before = buckets.size();
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        return before - buckets.size();
+    }
+
+    int size() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,82 @@
+package jpabook.jpashop.web;
+
+import jpabook.jpashop.datasource.ReadRouting;
+import jpabook.jpashop.datasource.ReadYourWrites;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 최근에 주문 / 취소한 회원의 요청은 처리하는 동안 primary 에서 읽는다 (datasource/ReadYourWrites)
+ * <p>
+ * 회원 : memberId 파라미터, 없으면 쿠키
+ * -> memberId 파라미터가 있는 쓰기 요청(POST /order ...)이 쿠키를 남긴다
+ * -> 주문 후 redirect 되는 /orders 처럼 memberId 가 없는 화면도 자기 주문을 본다
+ * -> memberId 파라미터가 없는 쓰기 요청(POST /orders/{orderId}/cancel)은 핸들러가 WRITER_ATTRIBUTE 에 회원을 넣는다
+ */
+@Component
+@RequiredArgsConstructor
+public class ReadYourWritesInterceptor implements HandlerInterceptor {
+
+    public static final String MEMBER_COOKIE = "jpashop-member";
+    public static final String WRITER_ATTRIBUTE = ReadYourWritesInterceptor.class.getName() + ".WRITER";
+    private static final String PINNED = ReadYourWritesInterceptor.class.getName() + ".PINNED";
+
+    private final ReadYourWrites readYourWrites;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Long memberId = parse(request.getParameter("memberId"));
+        if (memberId != null && !"GET".equals(request.getMethod())) {
+            addMemberCookie(response, memberId);
+        }
+        if (memberId == null) {
+            Cookie cookie = WebUtils.getCookie(request, MEMBER_COOKIE);
+            memberId = cookie == null ? null : parse(cookie.getValue());
+        }
+
+        if (memberId != null && readYourWrites.wroteRecently(memberId)) {
+            ReadRouting.pin();
+            request.setAttribute(PINNED, Boolean.TRUE);
+        }
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+                           ModelAndView modelAndView) {
+        Object writer = request.getAttribute(WRITER_ATTRIBUTE);
+        if (writer instanceof Long) {
+            addMemberCookie(response, (Long) writer);
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(PINNED) != null) {
+            ReadRouting.unpin();
+        }
+    }
+
+    private void addMemberCookie(HttpServletResponse response, Long memberId) {
+        Cookie cookie = new Cookie(MEMBER_COOKIE, memberId.toString());
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge((int) Math.max(1, readYourWrites.getWindowMillis() / 1000));
+        response.addCookie(cookie);
+    }
+
+    private static Long parse(String memberId) {
+        try {
+            return memberId == null ? null : Long.valueOf(memberId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
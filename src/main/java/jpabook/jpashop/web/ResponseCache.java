@@ -0,0 +1,174 @@
+package jpabook.jpashop.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jpabook.jpashop.service.EntityChangedEvent;
+import jpabook.jpashop.service.EntityVersions;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 직렬화가 끝난 응답 바이트 캐시 (ResponseCacheFilter 가 사용한다)
+ * <p>
+ * - 응답 본문과 gzip 으로 미리 압축한 본문을 같이 저장한다 (조회 때는 쿼리, 직렬화, 압축 모두 하지 않는다)
+ * - 전체 크기가 max-bytes 를 넘으면 가장 오래 안 쓴 응답부터 버린다 (LRU)
+ * - 쓰기 서비스가 커밋하면(EntityChangedEvent) 바뀐 엔티티에 의존하는 응답을 지운다
+ * <p>
+ * 커밋 직전에 조회를 시작한 요청이 옛날 응답을 지운 뒤에 다시 넣지 않도록
+ * -> 엔티티 종류별 version(service/EntityVersions)을 조회를 시작할 때와 저장할 때 비교해서 다르면 저장하지 않는다
+ * <p>
+ * jpashop.response-cache.requests{result=hit|miss}, jpashop.response-cache.hit-ratio (/actuator/metrics)
+ */
+@Component
+public class ResponseCache {
+
+    @Getter
+    private final boolean enabled;
+    private final long maxBytes;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private final EntityVersions entityVersions;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter invalidations;
+
+    public ResponseCache(MeterRegistry meterRegistry, EntityVersions entityVersions,
+                         @Value("${jpashop.response-cache.enabled:false}") boolean enabled,
+                         @Value("${jpashop.response-cache.max-bytes:16777216}") long maxBytes) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.entityVersions = entityVersions;
+
+        this.hits = requestCounter(meterRegistry, "hit");
+        this.misses = requestCounter(meterRegistry, "miss");
+        this.invalidations = Counter.builder("jpashop.response-cache.invalidations").register(meterRegistry);
+        Gauge.builder("jpashop.response-cache.hit-ratio", this, ResponseCache::hitRatio).register(meterRegistry);
+        Gauge.builder("jpashop.response-cache.bytes", this, ResponseCache::totalBytes).register(meterRegistry);
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("jpashop.response-cache.requests")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * 조회를 시작하기 전에 읽어둔다 (put 의 version 파라미터)
+     */
+    public long version(Set<Class<?>> dependsOn) {
+        return entityVersions.version(dependsOn);
+    }
+
+    /**
+     * @param version 조회를 시작할 때의 version(dependsOn) -> 그 사이에 커밋된 쓰기가 있으면 저장하지 않는다
+     */
+    public Entry put(String key, String contentType, byte[] body, Set<Class<?>> dependsOn, long version) {
+        Entry entry = new Entry(contentType, body, gzip(body), dependsOn);
+        synchronized (this) {
+            if (version(dependsOn) != version || entry.size() > maxBytes) {
+                return entry;
+            }
+            Entry old = entries.put(key, entry);
+            totalBytes += entry.size() - (old == null ? 0 : old.size());
+
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (totalBytes > maxBytes) {
+                totalBytes -= eldest.next().size();
+                eldest.remove();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 쓰기 트랜잭션이 커밋된 뒤에 받는다 (트랜잭션 밖에서 발행하면 바로 받는다)
+     * -> version 은 EntityVersions 가 먼저 올려둔다 (지금 조회 중인 요청은 옛날 결과를 저장하지 못한다)
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEntityChanged(EntityChangedEvent event) {
+        synchronized (this) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.dependsOn(event.getEntityTypes())) {
+                    totalBytes -= entry.size();
+                    iterator.remove();
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // 압축해도 작아지지 않으면(아주 짧은 응답) 원본만 보낸다
+        return out.size() < body.length ? out.toByteArray() : null;
+    }
+
+    @Getter
+    public static class Entry {
+
+        private final String contentType;
+        private final byte[] body;
+        private final byte[] gzipBody;
+        private final Set<Class<?>> dependsOn;
+
+        Entry(String contentType, byte[] body, byte[] gzipBody, Set<Class<?>> dependsOn) {
+            this.contentType = contentType;
+            this.body = body;
+            this.gzipBody = gzipBody;
+            this.dependsOn = dependsOn;
+        }
+
+        long size() {
+            return body.length + (gzipBody == null ? 0 : gzipBody.length);
+        }
+
+        boolean dependsOn(Set<Class<?>> entityTypes) {
+            for (Class<?> entityType : entityTypes) {
+                if (dependsOn.contains(entityType)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
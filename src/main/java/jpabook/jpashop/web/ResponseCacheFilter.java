@@ -0,0 +1,94 @@
+package jpabook.jpashop.web;
+
+import jpabook.jpashop.datasource.ReadRouting;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 자주 읽는 GET 엔드포인트의 응답을 ResponseCache 에 저장하고, 같은 요청은 저장된 바이트로 바로 응답한다
+ * -> WebConfig 에서 엔드포인트별로 어떤 엔티티에 의존하는지(dependsOn) 같이 등록한다
+ * <p>
+ * 캐시 키 : 경로 + 쿼리 스트링
+ * 응답 헤더 X-Cache : HIT | MISS
+ */
+public class ResponseCacheFilter extends OncePerRequestFilter {
+
+    public static final String CACHE_HEADER = "X-Cache";
+
+    private final ResponseCache responseCache;
+    private final Map<String, Set<Class<?>>> endpoints;
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    public ResponseCacheFilter(ResponseCache responseCache, Map<String, Set<Class<?>>> endpoints) {
+        this.responseCache = responseCache;
+        this.endpoints = endpoints;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !responseCache.isEnabled()
+                || !"GET".equals(request.getMethod())
+                || !endpoints.containsKey(urlPathHelper.getPathWithinApplication(request));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String path = urlPathHelper.getPathWithinApplication(request);
+        String key = request.getQueryString() == null ? path : path + "?" + request.getQueryString();
+
+        ResponseCache.Entry entry = responseCache.get(key);
+        if (entry != null) {
+            response.setContentType(entry.getContentType());
+            write(request, response, entry, "HIT");
+            return;
+        }
+
+        Set<Class<?>> dependsOn = endpoints.get(path);
+        long version = responseCache.version(dependsOn);
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        // 캐시를 채우는 조회는 primary 에서 읽는다
+        // -> replica 에서 읽으면 커밋으로 지워진 직후 아직 복제되지 않은 옛날 응답을 다시 캐시할 수 있다
+        ReadRouting.pin();
+        try {
+            filterChain.doFilter(request, wrapper);
+        } finally {
+            ReadRouting.unpin();
+        }
+
+        if (wrapper.getStatus() != HttpServletResponse.SC_OK || wrapper.getContentType() == null) {
+            wrapper.copyBodyToResponse();
+            return;
+        }
+        entry = responseCache.put(key, wrapper.getContentType(), wrapper.getContentAsByteArray(), dependsOn, version);
+        write(request, response, entry, "MISS");
+    }
+
+    private void write(HttpServletRequest request, HttpServletResponse response, ResponseCache.Entry entry, String result)
+            throws IOException {
+        byte[] body = entry.getBody();
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        response.setHeader(CACHE_HEADER, result);
+        if (entry.getGzipBody() != null && acceptsGzip(request)) {
+            body = entry.getGzipBody();
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+}
@@ -0,0 +1,106 @@
+package jpabook.jpashop.web;
+
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.item.Item;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+import org.springframework.web.servlet.resource.ResourceUrlEncodingFilter;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
+
+    /**
+     * 내용 해시(md5 32자)가 붙은 css -> "/css/**" 보다 구체적이라 먼저 고른다
+     * -> {변수:정규식} 안에는 '{' 를 쓸 수 없어서 [0-9a-f] 를 32번 적는다
+     * -> '*' 가 있어야 파일 이름이 리소스 경로(path within handler mapping)로 넘어간다
+     */
+    private static final String FINGERPRINTED_CSS = "/css/*-{hash:" + "[0-9a-f]".repeat(32) + "}.css";
+
+    private final AdmissionControlInterceptor admissionControlInterceptor;
+    private final ReadYourWritesInterceptor readYourWritesInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(admissionControlInterceptor)
+                .addPathPatterns("/order", "/orders/*/cancel", "/api/v1/orders", "/api/v1/orders/**");
+        registry.addInterceptor(readYourWritesInterceptor)
+                .excludePathPatterns("/css/**");
+    }
+
+    /**
+     * 쓰기보다 읽기가 훨씬 많은 엔드포인트 -> 직렬화된 응답을 캐시한다
+     * (값 : 응답에 들어가는 엔티티, 해당 엔티티의 쓰기가 커밋되면 응답을 지운다)
+     */
+    @Bean
+    public FilterRegistrationBean<ResponseCacheFilter> responseCacheFilter(ResponseCache responseCache) {
+        Map<String, Set<Class<?>>> endpoints = Map.of(
+                "/api/v4/simple-orders", Set.of(Order.class, Member.class),
+                "/api/v2/members", Set.of(Member.class),
+                "/items", Set.of(Item.class));
+
+        FilterRegistrationBean<ResponseCacheFilter> registration =
+                new FilterRegistrationBean<>(new ResponseCacheFilter(responseCache, endpoints));
+        registration.addUrlPatterns(endpoints.keySet().toArray(new String[0]));
+        return registration;
+    }
+
+    /**
+     * 정적 리소스 (/css)
+     * - 파일 이름에 내용 해시를 붙인다 (bootstrap.min-{md5}.css) -> 내용이 바뀌면 이름이 바뀌므로 브라우저가 1년 동안 다시 묻지 않아도 된다
+     * - 해시가 없는 이름(/css/bootstrap.min.css)은 내용이 바뀌어도 이름이 같으므로 no-cache (매번 Last-Modified 로 재검증)
+     * - 빌드(processResources)에서 미리 압축해둔 .br / .gz 를 Accept-Encoding 에 맞게 보낸다 (요청마다 압축하지 않는다)
+     * -> 템플릿은 th:href="@{/css/...}" 로 링크해야 ResourceUrlEncodingFilter 가 해시가 붙은 이름으로 바꿔준다
+     * -> 두 핸들러 모두 VersionResourceResolver 가 있어야 한다 (해시 없는 경로의 핸들러가 링크를 해시가 붙은 이름으로 바꾼다)
+     */
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        addCssHandler(registry, FINGERPRINTED_CSS, new ImmutableCacheControl(Duration.ofDays(365)));
+        addCssHandler(registry, "/css/**", CacheControl.noCache());
+    }
+
+    private static void addCssHandler(ResourceHandlerRegistry registry, String pathPattern, CacheControl cacheControl) {
+        registry.addResourceHandler(pathPattern)
+                .addResourceLocations("classpath:/static/css/")
+                .setCacheControl(cacheControl)
+                .resourceChain(true)
+                .addResolver(new EncodedResourceResolver())
+                .addResolver(new VersionResourceResolver().addContentVersionStrategy("/**"));
+    }
+
+    @Bean
+    public ResourceUrlEncodingFilter resourceUrlEncodingFilter() {
+        return new ResourceUrlEncodingFilter();
+    }
+
+    /**
+     * "max-age=..., public, immutable"
+     * -> 스프링 5.3 의 CacheControl 에는 immutable 이 없다 (브라우저가 새로고침 때도 재검증하지 않는다)
+     */
+    static class ImmutableCacheControl extends CacheControl {
+
+        private final String headerValue;
+
+        ImmutableCacheControl(Duration maxAge) {
+            this.headerValue = CacheControl.maxAge(maxAge).cachePublic().getHeaderValue() + ", immutable";
+        }
+
+        @Override
+        public String getHeaderValue() {
+            return headerValue;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package jpabook.jpashop.datasource;
+
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.service.ItemService;
+import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.OrderService;
+import jpabook.jpashop.web.ReadYourWritesInterceptor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.servlet.http.Cookie;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * H2 메모리 DB 2개 (primary, replica)
+ * -> 복제 대신 copyPrimaryToReplica() 가 primary 를 통째로 replica 에 복사한다 (복사하기 전까지 replica 는 뒤처져 있다)
+ * -> 상태 확인은 스케줄러 대신 테스트에서 직접 호출한다
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReplicaRoutingTest.PRIMARY_URL,
+        "jpashop.replica.enabled=true",
+        "jpashop.replica.urls=" + ReplicaRoutingTest.REPLICA_URL,
+        "jpashop.replica.check-millis=3600000",
+        "jpashop.replica.max-lag-millis=60000",
+        "jpashop.replica.read-your-writes-millis=60000"
+})
+@AutoConfigureMockMvc
+public class ReplicaRoutingTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:rwprimary";
+    static final String REPLICA_URL = "jdbc:h2:mem:rwreplica;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    ReplicaSet replicaSet;
+
+    @Autowired
+    MemberService memberService;
+
+    @Autowired
+    ItemService itemService;
+
+    @Autowired
+    OrderService orderService;
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Before
+    public void 복제() throws Exception {
+        replicaSet.checkHealth(); // heartbeat 기록
+        copyPrimaryToReplica();
+        replicaSet.checkHealth();
+    }
+
+    @Test
+    public void 읽기_전용_트랜잭션은_replica_에서_읽는다() throws Exception {
+        // given
+        Long memberId = join("복제전회원");
+
+        // when
+        boolean beforeCopy = containsMember(memberService.findMembers(), memberId);
+        copyPrimaryToReplica();
+        boolean afterCopy = containsMember(memberService.findMembers(), memberId);
+
+        // then
+        Assert.assertFalse(beforeCopy);
+        Assert.assertTrue(afterCopy);
+    }
+
+    @Test
+    public void 뒤처진_replica_는_빼고_primary_에서_읽는다() throws Exception {
+        // given
+        Long memberId = join("지연회원");
+        try (Connection replica = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement statement = replica.createStatement()) {
+            statement.executeUpdate("update replica_heartbeat set beat_at = 0"); // 복제가 오래 멈춘 replica
+        }
+
+        // when
+        replicaSet.checkHealth();
+
+        // then
+        Assert.assertTrue(containsMember(memberService.findMembers(), memberId));
+        Assert.assertEquals(Boolean.FALSE, replicaDetail("healthy"));
+    }
+
+    @Test
+    public void 주문한_회원은_자기_주문을_primary_에서_읽는다() throws Exception {
+        // given
+        Long memberId = join("주문회원");
+        Long itemId = createBook("복제확인책");
+        copyPrimaryToReplica();
+
+        // when
+        Cookie cookie = mockMvc.perform(post("/order")
+                        .param("memberId", memberId.toString())
+                        .param("itemId", itemId.toString())
+                        .param("count", "1"))
+                .andReturn().getResponse().getCookie(ReadYourWritesInterceptor.MEMBER_COOKIE);
+        String mine = mockMvc.perform(get("/orders").cookie(cookie))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        String others = mockMvc.perform(get("/orders"))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        // then
+        Assert.assertNotNull(cookie);
+        Assert.assertTrue(mine.contains("복제확인책"));
+        Assert.assertFalse(others.contains("복제확인책")); // 다른 사용자는 아직 복제되지 않은 replica 를 본다
+    }
+
+    @Test
+    public void 주문_취소도_회원_쿠키를_남긴다() throws Exception {
+        // given
+        Long memberId = join("취소회원");
+        Long orderId = orderService.order(memberId, createBook("취소확인책"), 1);
+
+        // when
+        Cookie cookie = mockMvc.perform(post("/orders/" + orderId + "/cancel"))
+                .andReturn().getResponse().getCookie(ReadYourWritesInterceptor.MEMBER_COOKIE);
+
+        // then
+        Assert.assertNotNull(cookie);
+        Assert.assertEquals(memberId.toString(), cookie.getValue());
+    }
+
+    @Test
+    public void DTO_조회_API_도_replica_에서_읽는다() throws Exception {
+        // given
+        String name = "V4회원" + System.nanoTime();
+        Member member = new Member();
+        member.setName(name);
+        Long memberId = memberService.join(member);
+        orderService.order(memberId, createBook("V4책"), 1);
+
+        // when
+        String beforeCopy = mockMvc.perform(get("/api/v4/simple-orders"))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        copyPrimaryToReplica();
+        String afterCopy = mockMvc.perform(get("/api/v4/simple-orders"))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        // then
+        Assert.assertFalse(beforeCopy.contains(name));
+        Assert.assertTrue(afterCopy.contains(name));
+    }
+
+    private Long join(String name) {
+        Member member = new Member();
+        member.setName(name + System.nanoTime());
+        return memberService.join(member);
+    }
+
+    private Long createBook(String name) {
+        Book book = new Book();
+        book.setName(name);
+        book.setPrice(10000);
+        book.setStockQuantity(10);
+        itemService.saveItem(book);
+        return book.getId();
+    }
+
+    private boolean containsMember(List<Member> members, Long memberId) {
+        return members.stream().anyMatch(member -> member.getId().equals(memberId));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object replicaDetail(String key) {
+        return ((Map<String, Object>) replicaSet.health().getDetails().get("replica-0")).get(key);
+    }
+
+    private void copyPrimaryToReplica() throws SQLException {
+        List<String> script = new ArrayList<>();
+        try (Connection primary = DriverManager.getConnection(PRIMARY_URL, "sa", "");
+             Statement statement = primary.createStatement();
+             ResultSet rs = statement.executeQuery("SCRIPT")) {
+            while (rs.next()) {
+                script.add(rs.getString(1));
+            }
+        }
+        try (Connection replica = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement statement = replica.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+            for (String sql : script) {
+                statement.execute(sql);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package jpabook.jpashop.datasource;
+
+import jpabook.jpashop.JpashopApplication;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import jpabook.jpashop.repository.order.query.OrderQueryRepository;
+import jpabook.jpashop.service.ItemService;
+import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.OrderService;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 샤드 수(메인 DB 포함 1, 2, 4개)별 주문 처리량과 V5 조회(샤드마다 동시에 조회해서 합치기) 지연 측정
+ * -> 샤드 수마다 H2 메모리 DB 로 애플리케이션을 새로 띄워서 같은 부하를 준다 (jpashop.shard.urls 만 다르다)
+ * -> 시간이 오래 걸리므로 평소 테스트에서는 빼고, 샤드 관련 변경 전후에 @Ignore 를 지우고 직접 실행한다
+ * <p>
+ * 부하 크기는 시스템 프로퍼티로 바꿀 수 있다 (-Djpashop.bench.orders=10000 ...)
+ */
+@Ignore("성능 측정용 -> 직접 실행한다")
+public class ShardBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardBenchmarkTest.class);
+
+    private static final int THREADS = Integer.getInteger("jpashop.bench.threads", 8);
+    private static final int ORDERS = Integer.getInteger("jpashop.bench.orders", 2000);
+    private static final int MEMBERS = Integer.getInteger("jpashop.bench.members", 64);
+    private static final int V5_ROUNDS = Integer.getInteger("jpashop.bench.v5-rounds", 50);
+
+    @Test
+    public void 샤드_수별_주문_처리량과_V5_조회_지연() throws Exception {
+        for (int shardCount : new int[]{1, 2, 4}) {
+            try (ConfigurableApplicationContext context = start(shardCount)) {
+                run(shardCount, context);
+            }
+        }
+    }
+
+    /**
+     * 1개면 샤드를 끄고 메인 DB 만 쓴다
+     */
+    private ConfigurableApplicationContext start(int shardCount) {
+        String database = "bench" + shardCount + "_" + System.nanoTime();
+        List<String> properties = new ArrayList<>(Arrays.asList(
+                "spring.datasource.url=jdbc:h2:mem:" + database + "_0",
+                "spring.jpa.properties.hibernate.show_sql=false",
+                "logging.level.org.hibernate.SQL=warn",
+                "logging.level.org.hibernate.type=warn",
+                "jpashop.shard.enabled=" + (shardCount > 1)));
+        if (shardCount > 1) {
+            properties.add("jpashop.shard.urls=" + IntStream.range(1, shardCount)
+                    .mapToObj(shard -> "jdbc:h2:mem:" + database + "_" + shard + ";DB_CLOSE_DELAY=-1")
+                    .collect(Collectors.joining(",")));
+        }
+        return new SpringApplicationBuilder(JpashopApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(properties.toArray(new String[0]))
+                .run();
+    }
+
+    private void run(int shardCount, ConfigurableApplicationContext context) throws Exception {
+        OrderService orderService = context.getBean(OrderService.class);
+        OrderQueryRepository orderQueryRepository = context.getBean(OrderQueryRepository.class);
+
+        List<Long> memberIds = joinMembers(context.getBean(MemberService.class));
+        // 스레드마다 다른 상품을 주문한다 -> 같은 상품 row 의 재고 차감 락을 기다리지 않는다
+        List<Long> itemIds = createBooks(context.getBean(ItemService.class));
+        int expectedOrders = orderQueryRepository.findAllByDto_optimization().size() + ORDERS; // InitDb 의 주문 포함
+
+        // 주문 처리량: THREADS 개 스레드가 ORDERS 건을 나눠서 주문한다
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int threadIndex = thread;
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int i = threadIndex; i < ORDERS; i += THREADS) {
+                    orderService.order(memberIds.get(i % memberIds.size()), itemIds.get(threadIndex), 1);
+                }
+                return null;
+            }));
+        }
+        long orderStart = System.nanoTime();
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        long orderNanos = System.nanoTime() - orderStart;
+        executor.shutdown();
+
+        // V5 조회 지연: 전체 주문을 샤드마다 조회해서 합친다 (첫 번째는 warm-up 으로 버린다)
+        Assert.assertEquals(expectedOrders, orderQueryRepository.findAllByDto_optimization().size());
+        long[] v5Micros = new long[V5_ROUNDS];
+        for (int round = 0; round < V5_ROUNDS; round++) {
+            long queryStart = System.nanoTime();
+            List<OrderQueryDto> orders = orderQueryRepository.findAllByDto_optimization();
+            v5Micros[round] = (System.nanoTime() - queryStart) / 1_000;
+            Assert.assertEquals(expectedOrders, orders.size());
+        }
+        Arrays.sort(v5Micros);
+
+        log.info("shards={}, orders={}, threads={}, throughput={} orders/s, v5 p50={}us p95={}us max={}us",
+                shardCount, ORDERS, THREADS, ORDERS * 1_000_000_000L / orderNanos,
+                v5Micros[V5_ROUNDS / 2], v5Micros[V5_ROUNDS * 95 / 100], v5Micros[V5_ROUNDS - 1]);
+    }
+
+    private List<Long> joinMembers(MemberService memberService) {
+        List<Long> memberIds = new ArrayList<>();
+        for (int i = 0; i < MEMBERS; i++) {
+            Member member = new Member();
+            member.setName("벤치회원" + i);
+            member.setAddress(new Address("서울", "강가", "123-123"));
+            memberIds.add(memberService.join(member));
+        }
+        return memberIds;
+    }
+
+    private List<Long> createBooks(ItemService itemService) {
+        List<Long> itemIds = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Book book = new Book();
+            book.setName("벤치책" + i);
+            book.setPrice(10000);
+            book.setStockQuantity(ORDERS);
+            itemService.saveItem(book);
+            itemIds.add(book.getId());
+        }
+        return itemIds;
+    }
+}
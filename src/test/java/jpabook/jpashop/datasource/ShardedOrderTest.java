@@ -0,0 +1,346 @@
+package jpabook.jpashop.datasource;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.repository.order.archive.OrderArchiveRepository;
+import jpabook.jpashop.repository.order.query.OrderFlatDto;
+import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import jpabook.jpashop.repository.order.query.OrderQueryRepository;
+import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryDto;
+import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryRepository;
+import jpabook.jpashop.service.ChunkedIterator;
+import jpabook.jpashop.service.DeliveryPipeline;
+import jpabook.jpashop.service.ItemService;
+import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.OrderArchiveJob;
+import jpabook.jpashop.service.OrderService;
+import jpabook.jpashop.service.query.OrderDto;
+import jpabook.jpashop.service.query.OrderQueryService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * H2 메모리 DB 3개 (메인 DB = 0번 샤드, 1번, 2번 샤드)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ShardedOrderTest.SHARD_0_URL,
+        "jpashop.shard.enabled=true",
+        "jpashop.shard.urls=" + ShardedOrderTest.SHARD_1_URL + "," + ShardedOrderTest.SHARD_2_URL
+})
+public class ShardedOrderTest {
+
+    static final String SHARD_0_URL = "jdbc:h2:mem:shard0";
+    static final String SHARD_1_URL = "jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1";
+    static final String SHARD_2_URL = "jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1";
+    private static final List<String> URLS = List.of(SHARD_0_URL, SHARD_1_URL, SHARD_2_URL);
+
+    @Autowired
+    Shards shards;
+
+    @Autowired
+    OrderService orderService;
+
+    @Autowired
+    MemberService memberService;
+
+    @Autowired
+    ItemService itemService;
+
+    @Autowired
+    OrderRepository orderRepository;
+
+    @Autowired
+    OrderQueryRepository orderQueryRepository;
+
+    @Autowired
+    OrderQueryService orderQueryService;
+
+    @Autowired
+    OrderSimpleQueryRepository orderSimpleQueryRepository;
+
+    @Autowired
+    ItemRepository itemRepository;
+
+    @Autowired
+    ChunkedIterator chunkedIterator;
+
+    @Autowired
+    DeliveryPipeline deliveryPipeline;
+
+    @Autowired
+    OrderArchiveJob orderArchiveJob;
+
+    @Autowired
+    OrderArchiveRepository orderArchiveRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 주문은_회원의_샤드에_저장하고_재고는_메인_DB_에서_깐다() throws Exception {
+        // given
+        Long itemId = createBook("샤드책", 100);
+        List<Long> memberIds = joinOnEveryShard();
+
+        // when
+        List<Long> orderIds = new ArrayList<>();
+        for (Long memberId : memberIds) {
+            orderIds.add(orderService.order(memberId, itemId, 2));
+        }
+
+        // then
+        for (int i = 0; i < memberIds.size(); i++) {
+            int shard = shards.shardOfMember(memberIds.get(i));
+            Assert.assertEquals(shard, shards.shardOfOrder(orderIds.get(i)));
+            Assert.assertEquals(OrderStatus.ORDER.name(), orderStatus(shard, orderIds.get(i)));
+            for (int other = 0; other < shards.count(); other++) {
+                if (other != shard) {
+                    Assert.assertNull(orderStatus(other, orderIds.get(i)));
+                }
+            }
+        }
+        Assert.assertEquals(100 - 2 * memberIds.size(), itemService.findOne(itemId).getStockQuantity());
+    }
+
+    @Test
+    public void 주문_id_로_샤드를_찾아_취소하고_재고를_메인_DB_에_복구한다() throws Exception {
+        // given
+        Long itemId = createBook("취소책", 100);
+        List<Long> memberIds = joinOnEveryShard();
+        List<Long> orderIds = new ArrayList<>();
+        for (Long memberId : memberIds) {
+            orderIds.add(orderService.order(memberId, itemId, 3));
+        }
+
+        // when
+        Long cancelledBy = orderService.cancelOrder(orderIds.get(1));
+        int canceled = orderService.cancelOrders(orderIds);
+
+        // then
+        Assert.assertEquals(memberIds.get(1), cancelledBy);
+        Assert.assertEquals(orderIds.size() - 1, canceled); // 이미 취소한 주문은 건너뛴다
+        for (Long orderId : orderIds) {
+            Assert.assertEquals(OrderStatus.CANCEL.name(), orderStatus(shards.shardOfOrder(orderId), orderId));
+        }
+        Assert.assertEquals(100, itemService.findOne(itemId).getStockQuantity());
+    }
+
+    @Test
+    public void 주문_목록은_샤드를_동시에_조회해서_id_순으로_합친다() throws Exception {
+        // given
+        Long itemId = createBook("목록책", 100);
+        Set<Long> orderIds = new HashSet<>();
+        for (Long memberId : joinOnEveryShard()) {
+            orderIds.add(orderService.order(memberId, itemId, 1));
+        }
+
+        // when
+        List<Long> byString = orderRepository.findAllByString(new OrderSearch()).stream()
+                .map(order -> order.getId()).collect(Collectors.toList());
+        List<OrderDto> dtos = orderQueryService.ordersV2(); // 샤드 트랜잭션 밖에서 연관관계를 읽는다
+        List<Long> optimized = orderQueryRepository.findAllByDto_optimization().stream()
+                .map(OrderQueryDto::getOrderId).collect(Collectors.toList());
+        List<Long> firstPage = orderQueryRepository.findAllByDto_optimization(0L, 2).stream()
+                .map(OrderQueryDto::getOrderId).collect(Collectors.toList());
+        List<Long> flat;
+        try (Stream<OrderFlatDto> rows = orderQueryRepository.streamAllByDto_flat(0L)) {
+            flat = rows.map(OrderFlatDto::getOrderId).distinct().collect(Collectors.toList());
+        }
+        List<Order> withMemberDelivery = orderRepository.findAllWithMemberDelivery();
+        List<Order> withItem = orderRepository.findAllWithItem();
+        List<Order> withGraph = orderRepository.findAllWithGraph(List.of("member", "delivery"));
+        List<Order> secondPage = orderRepository.findAllWithMemberDelivery(1, 2);
+        List<Long> simple = orderSimpleQueryRepository.findOrderDtos().stream()
+                .map(OrderSimpleQueryDto::getOrderId).collect(Collectors.toList());
+        List<Long> simpleFirstPage = orderSimpleQueryRepository.findOrderDtos(2).stream()
+                .map(OrderSimpleQueryDto::getOrderId).collect(Collectors.toList());
+
+        // then
+        Assert.assertTrue(byString.containsAll(orderIds));
+        Assert.assertEquals(sorted(byString), byString);
+        Assert.assertEquals(byString, optimized);
+        Assert.assertEquals(optimized.subList(0, 2), firstPage);
+        Assert.assertEquals(optimized, flat);
+        Assert.assertEquals(byString, ids(withMemberDelivery));
+        Assert.assertEquals(byString, ids(withItem));
+        Assert.assertEquals(byString, ids(withGraph));
+        Assert.assertEquals(byString.subList(1, 3), ids(secondPage));
+        Assert.assertEquals(byString, simple);
+        Assert.assertEquals(byString.subList(0, 2), simpleFirstPage);
+        Assert.assertTrue(withGraph.stream().allMatch(order -> order.getMember().getName() != null
+                && order.getOrderItems().get(0).getItem().getName() != null)); // 샤드 트랜잭션 안에서 미리 읽었다
+        Assert.assertEquals(Long.valueOf(orderIds.size()), itemRepository.findOrderedCounts().get(itemId));
+        Assert.assertTrue(itemRepository.findMostOrderedIds(100).contains(itemId));
+        Assert.assertTrue(dtos.stream()
+                .filter(dto -> orderIds.contains(dto.getOrderId()))
+                .allMatch(dto -> dto.getName() != null && dto.getOrderItems().get(0).getItemName().equals("목록책")));
+    }
+
+    @Test
+    public void 배치는_샤드를_차례로_돌면서_처리한다() throws Exception {
+        // given
+        Long itemId = createBook("배치책", 100);
+        List<Long> orderIds = new ArrayList<>();
+        for (Long memberId : joinOnEveryShard()) {
+            orderIds.add(orderService.order(memberId, itemId, 1));
+        }
+
+        // when
+        Set<Long> iterated = ConcurrentHashMap.newKeySet();
+        chunkedIterator.forEachParallel(Order.class, 1, orderRepository::findChunkWithMemberDelivery,
+                orders -> orders.forEach(order -> iterated.add(order.getId())));
+        deliveryPipeline.process();
+        orderArchiveJob.archive(LocalDateTime.now().plusDays(1));
+        List<Long> history = orderArchiveRepository.findOrderDtos(LocalDateTime.now().minusDays(1), LocalDateTime.now().plusDays(1))
+                .stream().map(OrderSimpleQueryDto::getOrderId).collect(Collectors.toList());
+
+        // then
+        Assert.assertTrue(iterated.containsAll(orderIds));
+        for (Long orderId : orderIds) {
+            Assert.assertNull("배송 완료 후 자기 샤드에서 보관됐다", orderStatus(shards.shardOfOrder(orderId), orderId));
+        }
+        Assert.assertTrue(history.containsAll(orderIds));
+    }
+
+    @Test
+    public void 회원_상품을_수정하면_샤드의_사본도_바뀐다() throws Exception {
+        // given
+        Long itemId = createBook("사본책", 100);
+        List<Long> memberIds = joinOnEveryShard();
+        Set<Long> orderIds = new HashSet<>();
+        for (Long memberId : memberIds) {
+            orderIds.add(orderService.order(memberId, itemId, 1));
+        }
+
+        // when
+        for (Long memberId : memberIds) {
+            memberService.update(memberId, "바뀐회원" + memberId);
+        }
+        itemService.updateItem(itemId, "바뀐사본책", 10000, 50);
+
+        // then
+        for (Long memberId : memberIds) {
+            int shard = shards.shardOfMember(memberId);
+            Assert.assertEquals("바뀐회원" + memberId, name(shard, "member", "member_id", memberId));
+        }
+        for (int shard = 1; shard < shards.count(); shard++) {
+            Assert.assertEquals("바뀐사본책", name(shard, "item", "item_id", itemId));
+        }
+        Assert.assertTrue(orderSimpleQueryRepository.findOrderDtos().stream()
+                .filter(dto -> orderIds.contains(dto.getOrderId()))
+                .allMatch(dto -> dto.getName().startsWith("바뀐회원")));
+    }
+
+    @Test
+    public void 메인_DB_트랜잭션이_롤백되면_샤드의_주문을_취소한다() throws Exception {
+        // given
+        Long itemId = createBook("보상책", 100);
+        Long memberId = joinOnEveryShard().stream()
+                .filter(id -> shards.shardOfMember(id) != Shards.MAIN)
+                .findFirst().orElseThrow();
+
+        // when
+        Long orderId = transactionTemplate.execute(status -> {
+            Long placed = orderService.order(memberId, itemId, 2); // 샤드 트랜잭션은 여기서 커밋된다
+            status.setRollbackOnly();
+            return placed;
+        });
+
+        // then
+        Assert.assertEquals(OrderStatus.CANCEL.name(), orderStatus(shards.shardOfOrder(orderId), orderId));
+        Assert.assertEquals(100, itemService.findOne(itemId).getStockQuantity()); // 재고 차감도 롤백됐다
+    }
+
+    @Test
+    public void 샤드별_정렬된_결과를_limit_건까지_합친다() {
+        // given
+        List<List<Integer>> sorted = List.of(List.of(1, 4, 9), List.of(), List.of(2, 3, 10));
+
+        // when
+        List<Integer> merged = Shards.merge(sorted, Integer::compare, 5);
+
+        // then
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 9), merged);
+    }
+
+    /**
+     * 샤드마다 회원이 1명 이상 있도록 가입시킨다
+     */
+    private List<Long> joinOnEveryShard() {
+        List<Long> memberIds = new ArrayList<>();
+        Set<Integer> covered = new HashSet<>();
+        while (covered.size() < shards.count()) {
+            Member member = new Member();
+            member.setName("샤드회원" + System.nanoTime());
+            member.setAddress(new Address("서울", "강가", "123-123"));
+            Long memberId = memberService.join(member);
+            memberIds.add(memberId);
+            covered.add(shards.shardOfMember(memberId));
+        }
+        return memberIds;
+    }
+
+    private Long createBook(String name, int stockQuantity) {
+        Book book = new Book();
+        book.setName(name);
+        book.setPrice(10000);
+        book.setStockQuantity(stockQuantity);
+        itemService.saveItem(book);
+        return book.getId();
+    }
+
+    private List<Long> ids(List<Order> orders) {
+        return orders.stream().map(Order::getId).collect(Collectors.toList());
+    }
+
+    private List<Long> sorted(List<Long> ids) {
+        return ids.stream().sorted().collect(Collectors.toList());
+    }
+
+    private String name(int shard, String table, String idColumn, Long id) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(URLS.get(shard), "sa", "");
+             PreparedStatement statement = connection.prepareStatement("select name from " + table + " where " + idColumn + " = ?")) {
+            statement.setLong(1, id);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private String orderStatus(int shard, Long orderId) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(URLS.get(shard), "sa", "");
+             PreparedStatement statement = connection.prepareStatement("select status from orders where order_id = ?")) {
+            statement.setLong(1, orderId);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package jpabook.jpashop.domain;
+
+import jpabook.jpashop.domain.item.Book;
+import org.hibernate.Hibernate;
+import org.hibernate.engine.spi.SelfDirtinessTracker;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 바이트코드 향상(build.gradle 의 hibernate.enhance)이 적용된 엔티티인지 확인한다
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties =
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+                "jpabook.jpashop.domain.DeliveryTest$SqlCounter")
+@Transactional
+public class DeliveryTest {
+
+    private static final Logger log = LoggerFactory.getLogger(DeliveryTest.class);
+
+    @Autowired
+    EntityManager em;
+
+    @Test
+    public void 배송_조회시_주문을_조회하지_않는다() throws Exception {
+        // given
+        Order order = createOrder(createBook(10));
+        em.flush();
+        em.clear();
+
+        // when
+        SqlCounter.reset();
+        Delivery delivery = em.find(Delivery.class, order.getDelivery().getId());
+
+        // then
+        Assert.assertEquals("delivery 조회 쿼리 1번만 나가야 한다", 1, SqlCounter.count());
+        Assert.assertFalse(Hibernate.isPropertyInitialized(delivery, "order"));
+
+        Assert.assertEquals("getOrder() 시점에 order 를 조회한다", order.getId(), delivery.getOrder().getId());
+    }
+
+    @Test
+    public void flush_는_변경된_엔티티만_update_한다() throws Exception {
+        // given
+        int size = 2_000;
+        List<Long> bookIds = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            bookIds.add(createBook(10).getId());
+        }
+        em.flush();
+        em.clear();
+
+        List<Book> books = new ArrayList<>();
+        for (Long bookId : bookIds) {
+            books.add(em.find(Book.class, bookId));
+        }
+
+        // when
+        Book changed = books.get(size / 2);
+        changed.removeStock(1);
+
+        SqlCounter.reset();
+        long start = System.nanoTime();
+        em.flush();
+        long elapsedMicros = (System.nanoTime() - start) / 1_000;
+        log.info("managed entities={}, flush={}us", size, elapsedMicros);
+
+        // then
+        Assert.assertTrue(changed instanceof SelfDirtinessTracker);
+        Assert.assertEquals(1, SqlCounter.count());
+    }
+
+    /**
+     * 변경 필드는 스냅샷 비교 없이 엔티티가 직접 기록한다
+     */
+    @Test
+    public void 변경된_필드를_엔티티가_기록한다() throws Exception {
+        // given
+        Book book = createBook(10);
+        em.flush();
+        em.clear();
+        Book found = em.find(Book.class, book.getId());
+
+        // when
+        found.removeStock(1);
+
+        // then
+        Assert.assertEquals(List.of("stockQuantity"),
+                Arrays.asList(((SelfDirtinessTracker) found).$$_hibernate_getDirtyAttributes()));
+    }
+
+    private Book createBook(int stockQuantity) {
+        Book book = new Book();
+        book.setName("시골 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(stockQuantity);
+        em.persist(book);
+        return book;
+    }
+
+    private Order createOrder(Book book) {
+        Member member = new Member();
+        member.setName("회원1");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        em.persist(member);
+
+        Delivery delivery = new Delivery();
+        delivery.setAddress(member.getAddress());
+        Order order = Order.createOrder(member, delivery, OrderItem.createOrderItem(book, 10000, 1));
+        em.persist(order);
+        return order;
+    }
+
+    public static class SqlCounter implements StatementInspector {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final AtomicInteger count = new AtomicInteger();
+
+        static void reset() {
+            count.set(0);
+        }
+
+        static int count() {
+            return count.get();
+        }
+
+        @Override
+        public String inspect(String sql) {
+            count.incrementAndGet();
+            return sql;
+        }
+    }
+}
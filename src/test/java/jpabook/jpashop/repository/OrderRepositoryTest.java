@@ -0,0 +1,225 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.domain.item.Book;
+import org.hibernate.Session;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 검색 조건 조합마다 실제로 나가는 SQL 을 EXPLAIN 해서 인덱스를 타는지 확인한다
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties =
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+                "jpabook.jpashop.repository.OrderRepositoryTest$LastSqlInspector")
+@Transactional
+public class OrderRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    OrderRepository orderRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void 최신순_keyset_페이징() throws Exception {
+        // given
+        Member member = createMember("회원1");
+        Long oldest = createOrder(member, LocalDateTime.of(2021, 1, 1, 0, 0));
+        Long middle = createOrder(member, LocalDateTime.of(2021, 2, 1, 0, 0));
+        Long newest = createOrder(member, LocalDateTime.of(2021, 3, 1, 0, 0));
+
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setMemberId(member.getId());
+
+        // when
+        List<Order> firstPage = orderRepository.search(orderSearch, 2);
+        Order last = firstPage.get(firstPage.size() - 1);
+        orderSearch.setLastOrderDate(last.getOrderDate());
+        orderSearch.setLastOrderId(last.getId());
+        List<Order> secondPage = orderRepository.search(orderSearch, 2);
+
+        // then
+        Assert.assertEquals(List.of(newest, middle), ids(firstPage));
+        Assert.assertEquals(List.of(oldest), ids(secondPage));
+    }
+
+    @Test
+    public void 기간_검색은_끝날짜를_포함한다() throws Exception {
+        // given
+        Member member = createMember("회원1");
+        createOrder(member, LocalDateTime.of(2021, 1, 31, 23, 59));
+        Long february = createOrder(member, LocalDateTime.of(2021, 2, 28, 23, 59));
+
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setMemberId(member.getId());
+        orderSearch.setOrderDateFrom(LocalDate.of(2021, 2, 1));
+        orderSearch.setOrderDateTo(LocalDate.of(2021, 2, 28));
+
+        // when
+        List<Order> orders = orderRepository.search(orderSearch, 100);
+
+        // then
+        Assert.assertEquals(List.of(february), ids(orders));
+    }
+
+    @Test
+    public void 검색한_주문은_읽기_전용이다() throws Exception {
+        // given
+        Member member = createMember("회원1");
+        Long orderId = createOrder(member, LocalDateTime.of(2021, 1, 1, 0, 0));
+        em.flush();
+        em.clear();
+
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setMemberId(member.getId());
+
+        // when
+        Order order = orderRepository.search(orderSearch, 1).get(0);
+        order.setStatus(OrderStatus.CANCEL);
+        boolean readOnly = em.unwrap(Session.class).isReadOnly(order);
+        em.flush();
+        em.clear();
+
+        // then
+        Assert.assertTrue("쓰기 트랜잭션에서도 스냅샷 없이 조회한다", readOnly);
+        Assert.assertEquals("flush 때 변경 감지를 하지 않는다", OrderStatus.ORDER, orderRepository.findOne(orderId).getStatus());
+    }
+
+    @Test
+    public void 주문상태_기간_검색은_인덱스를_탄다() throws Exception {
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setOrderStatus(OrderStatus.ORDER);
+        orderSearch.setOrderDateFrom(LocalDate.of(2021, 1, 1));
+
+        assertUsesIndex(orderSearch, "IDX_ORDERS_STATUS_ORDER_DATE",
+                "ORDER", LocalDate.of(2021, 1, 1).atStartOfDay(), 100);
+    }
+
+    @Test
+    public void 회원_기간_검색은_인덱스를_탄다() throws Exception {
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setMemberId(1L);
+        orderSearch.setOrderDateFrom(LocalDate.of(2021, 1, 1));
+        orderSearch.setOrderDateTo(LocalDate.of(2021, 1, 31));
+
+        assertUsesIndex(orderSearch, "IDX_ORDERS_MEMBER_ORDER_DATE",
+                1L, LocalDate.of(2021, 1, 1).atStartOfDay(), LocalDate.of(2021, 2, 1).atStartOfDay(), 100);
+    }
+
+    @Test
+    public void 기간_검색은_인덱스를_탄다() throws Exception {
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setOrderDateFrom(LocalDate.of(2021, 1, 1));
+        orderSearch.setOrderDateTo(LocalDate.of(2021, 1, 31));
+
+        assertUsesIndex(orderSearch, "IDX_ORDERS_ORDER_DATE",
+                LocalDate.of(2021, 1, 1).atStartOfDay(), LocalDate.of(2021, 2, 1).atStartOfDay(), 100);
+    }
+
+    @Test
+    public void 배송상태_검색은_인덱스를_탄다() throws Exception {
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setDeliveryStatus(DeliveryStatus.READY);
+
+        assertUsesIndex(orderSearch, "IDX_DELIVERY_STATUS", "READY", 100);
+    }
+
+    @Test
+    public void 회원이름_검색은_인덱스를_탄다() throws Exception {
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setMemberName("userA");
+
+        assertUsesIndex(orderSearch, "IDX_MEMBER_NAME", "userA", 100);
+    }
+
+    @Test
+    public void 다음_페이지_조회는_인덱스를_탄다() throws Exception {
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setLastOrderDate(LocalDateTime.of(2021, 1, 1, 0, 0));
+        orderSearch.setLastOrderId(100L);
+
+        assertUsesIndex(orderSearch, "IDX_ORDERS_ORDER_DATE",
+                LocalDateTime.of(2021, 1, 1, 0, 0), LocalDateTime.of(2021, 1, 1, 0, 0), 100L, 100);
+    }
+
+    /**
+     * orderRepository.search 가 hot 테이블(orders)에 실제로 만든 SQL 을 같은 파라미터로 EXPLAIN 한다
+     * -> 시작일이 보관 기준일 이전이면 뒤이어 orders_archive 도 조회하므로 마지막 SQL 이 아니라 orders 의 SQL 을 본다
+     *
+     * @param parameters SQL 에 바인딩되는 순서대로의 파라미터 값
+     */
+    private void assertUsesIndex(OrderSearch orderSearch, String indexName, Object... parameters) {
+        orderRepository.search(orderSearch, 100);
+        String plan = jdbcTemplate.queryForObject("explain " + LastSqlInspector.lastSql, String.class, parameters);
+
+        Assert.assertTrue(plan, plan.contains(indexName));
+        Assert.assertFalse(plan, plan.contains("ORDERS.tableScan"));
+    }
+
+    private List<Long> ids(List<Order> orders) {
+        return orders.stream().map(Order::getId).collect(Collectors.toList());
+    }
+
+    private Member createMember(String name) {
+        Member member = new Member();
+        member.setName(name);
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        em.persist(member);
+        return member;
+    }
+
+    private Long createOrder(Member member, LocalDateTime orderDate) {
+        Book book = new Book();
+        book.setName("시골 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(10);
+        em.persist(book);
+
+        Delivery delivery = new Delivery();
+        delivery.setAddress(member.getAddress());
+        delivery.setStatus(DeliveryStatus.READY);
+        Order order = Order.createOrder(member, delivery, OrderItem.createOrderItem(book, 10000, 1));
+        order.setOrderDate(orderDate);
+        em.persist(order);
+        return order.getId();
+    }
+
+    public static class LastSqlInspector implements StatementInspector {
+
+        private static final long serialVersionUID = 1L;
+
+        static volatile String lastSql;
+
+        @Override
+        public String inspect(String sql) {
+            if (sql.contains(" from orders ")) {
+                lastSql = sql;
+            }
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package jpabook.jpashop.repository.order.query;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.OrderStatus;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class OrderFlatGrouperTest {
+
+    @Test
+    public void 정렬된_row를_주문단위로_묶는다() throws Exception {
+        // given
+        Stream<OrderFlatDto> flats = Stream.of(
+                flat(3L, "userB", "SPRING1 BOOK"),
+                flat(3L, "userB", "SPRING2 BOOK"),
+                flat(1L, "userA", "JPA1 BOOK"),
+                flat(2L, "userA", "JPA1 BOOK"),
+                flat(2L, "userA", "JPA2 BOOK"));
+
+        // when
+        List<OrderQueryDto> orders = OrderFlatGrouper.group(flats).collect(Collectors.toList());
+
+        // then
+        Assert.assertEquals("쿼리 정렬 순서를 유지해야 한다", List.of(3L, 1L, 2L),
+                orders.stream().map(OrderQueryDto::getOrderId).collect(Collectors.toList()));
+        Assert.assertEquals(2, orders.get(0).getOrderItems().size());
+        Assert.assertEquals(1, orders.get(1).getOrderItems().size());
+        Assert.assertEquals(2, orders.get(2).getOrderItems().size());
+        Assert.assertSame("같은 상품 이름은 같은 인스턴스를 재사용한다",
+                orders.get(1).getOrderItems().get(0).getItemName(),
+                orders.get(2).getOrderItems().get(0).getItemName());
+    }
+
+    @Test
+    public void 필요한_주문만큼만_읽는다() throws Exception {
+        // given
+        Stream<OrderFlatDto> flats = Stream.of(
+                flat(1L, "userA", "JPA1 BOOK"),
+                flat(2L, "userA", "JPA2 BOOK"),
+                flat(3L, "userB", "SPRING1 BOOK"));
+
+        // when
+        List<OrderQueryDto> orders = OrderFlatGrouper.group(flats).limit(2).collect(Collectors.toList());
+
+        // then
+        Assert.assertEquals(2, orders.size());
+        Assert.assertEquals(Long.valueOf(2L), orders.get(1).getOrderId());
+    }
+
+    private OrderFlatDto flat(Long orderId, String name, String itemName) {
+        return new OrderFlatDto(orderId, new String(name), LocalDateTime.now(), OrderStatus.ORDER,
+                new Address("서울", "1", "111"), new String(itemName), 10000, 1);
+    }
+}
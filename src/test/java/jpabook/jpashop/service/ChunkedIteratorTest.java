@@ -0,0 +1,123 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.repository.OrderRepository;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 청크마다 새 트랜잭션으로 커밋하므로 @Transactional 없이 별도 DB 로 실행한다
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:chunk")
+public class ChunkedIteratorTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    ChunkedIterator chunkedIterator;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    OrderRepository orderRepository;
+
+    @Test
+    public void 청크마다_영속성_컨텍스트를_비운다() throws Exception {
+        // given
+        transactionTemplate.execute(status -> createMembers(25));
+        long memberCount = em.createQuery("select count(m) from Member m", Long.class).getSingleResult();
+
+        // when
+        List<Long> ids = new ArrayList<>();
+        List<Integer> managed = new ArrayList<>();
+        long processed = chunkedIterator.forEach(Member.class, 10, memberRepository::findChunk, members -> {
+            members.forEach(member -> ids.add(member.getId()));
+            managed.add(em.unwrap(SessionImplementor.class).getPersistenceContext().getNumberOfManagedEntities());
+        });
+
+        // then
+        Assert.assertEquals(memberCount, processed);
+        Assert.assertEquals(memberCount, ids.size());
+        List<Long> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        Assert.assertEquals("id 순으로 빠짐없이 한 번씩", sorted, ids);
+        Assert.assertTrue("영속성 컨텍스트에는 청크 하나만 있다 " + managed, managed.stream().allMatch(count -> count <= 10));
+    }
+
+    @Test
+    public void 청크를_병렬로_처리한다() throws Exception {
+        // given
+        long orderCount = em.createQuery("select count(o) from Order o", Long.class).getSingleResult();
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        // when
+        long processed = chunkedIterator.forEachParallel(Order.class, 1, orderRepository::findChunkWithMemberDelivery,
+                orders -> {
+                    for (Order order : orders) {
+                        ids.add(order.getId());
+                        order.getMember().getName();
+                    }
+                    threads.add(Thread.currentThread().getName());
+                });
+
+        // then
+        Assert.assertEquals(orderCount, processed);
+        Assert.assertEquals(orderCount, ids.size());
+        Assert.assertFalse(threads.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void 청크가_실패하면_다음_청크를_넘기지_않는다() throws Exception {
+        // given
+        transactionTemplate.execute(status -> createMembers(40));
+        AtomicInteger calls = new AtomicInteger();
+
+        // when
+        try {
+            chunkedIterator.forEachParallel(Member.class, 1, memberRepository::findChunk, members -> {
+                calls.incrementAndGet();
+                throw new IllegalStateException("청크 실패");
+            });
+            Assert.fail("청크 처리 실패 예외가 발생해야 한다.");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("청크 실패", e.getCause().getMessage());
+        }
+
+        // then
+        Assert.assertTrue("처리 중이던 청크까지만 호출된다 " + calls, calls.get() <= 2 * 4); // parallelism 기본값 4
+    }
+
+    private Void createMembers(int count) {
+        for (int i = 0; i < count; i++) {
+            Member member = new Member();
+            member.setName("회원" + i);
+            member.setAddress(new Address("서울", "강가", "123-123"));
+            em.persist(member);
+        }
+        return null;
+    }
+}
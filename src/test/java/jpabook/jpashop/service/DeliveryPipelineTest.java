@@ -0,0 +1,99 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 워커 스레드가 커밋된 데이터를 봐야 하므로 @Transactional 없이 별도 DB 로 실행한다
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:delivery",
+        "jpashop.delivery.workers=4",
+        "jpashop.delivery.batch-size=7"
+})
+public class DeliveryPipelineTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    OrderService orderService;
+
+    @Autowired
+    DeliveryPipeline deliveryPipeline;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void 배송은_한번씩만_처리된다() throws Exception {
+        // given
+        deliveryPipeline.process(); // InitDb 등 이미 있는 배송은 먼저 처리해둔다
+        int orderCount = 100;
+        Long[] ids = transactionTemplate.execute(status -> createMemberAndBook(orderCount));
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < orderCount; i++) {
+            orderIds.add(orderService.order(ids[0], ids[1], 1));
+        }
+        Long canceledOrderId = orderIds.get(0);
+        orderService.cancelOrder(canceledOrderId);
+
+        // when
+        int completed = deliveryPipeline.process();
+
+        // then
+        Assert.assertEquals("취소된 주문을 제외하고 한 번씩만 처리된다", orderCount - 1, completed);
+        Assert.assertEquals(0, deliveryPipeline.process());
+        Assert.assertEquals("READY", deliveryStatusOf(canceledOrderId));
+        Assert.assertEquals("COMP", deliveryStatusOf(orderIds.get(1)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void 배송완료된_주문은_취소할_수_없다() throws Exception {
+        // given
+        Long[] ids = transactionTemplate.execute(status -> createMemberAndBook(1));
+        Long orderId = orderService.order(ids[0], ids[1], 1);
+        deliveryPipeline.process();
+
+        // when
+        orderService.cancelOrder(orderId);
+    }
+
+    private String deliveryStatusOf(Long orderId) {
+        return jdbcTemplate.queryForObject(
+                "select d.status from orders o join delivery d on o.delivery_id = d.delivery_id where o.order_id = ?",
+                String.class, orderId);
+    }
+
+    private Long[] createMemberAndBook(int stockQuantity) {
+        Member member = new Member();
+        member.setName("회원" + System.nanoTime());
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        em.persist(member);
+
+        Book book = new Book();
+        book.setName("시골 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(stockQuantity);
+        em.persist(book);
+        return new Long[]{member.getId(), book.getId()};
+    }
+}
@@ -0,0 +1,159 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.OrderIdempotencyKey;
+import jpabook.jpashop.domain.item.Book;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 동시에 들어온 요청이 서로의 커밋을 봐야 하므로 @Transactional 없이 별도 DB 로 실행한다
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:idempotency",
+        "jpashop.idempotency.max-keys=1"
+})
+public class IdempotentOrderServiceTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    IdempotentOrderService idempotentOrderService;
+
+    @Autowired
+    IdempotencyKeyCleanupJob idempotencyKeyCleanupJob;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void 동시에_들어온_같은_키의_주문은_한번만_처리된다() throws Exception {
+        // given
+        Long[] ids = transactionTemplate.execute(status -> createMemberAndBook(100));
+        String idempotencyKey = UUID.randomUUID().toString();
+        int requests = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // when
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return idempotentOrderService.order(idempotencyKey, ids[0], ids[1], 3);
+            }));
+        }
+        start.countDown();
+        Set<Long> orderIds = new HashSet<>();
+        for (Future<Long> result : results) {
+            orderIds.add(result.get());
+        }
+        executor.shutdown();
+
+        // then
+        Assert.assertEquals("모든 요청이 같은 주문 id 를 받는다", 1, orderIds.size());
+        Assert.assertEquals(1, countOrders(ids[0]));
+        Assert.assertEquals("재고는 한 번만 줄어든다", 97, stockOf(ids[1]));
+    }
+
+    @Test
+    public void 캐시에서_빠진_키도_같은_주문으로_처리된다() throws Exception {
+        // given
+        Long[] ids = transactionTemplate.execute(status -> createMemberAndBook(100));
+        String first = UUID.randomUUID().toString();
+        Long orderId = idempotentOrderService.order(first, ids[0], ids[1], 1);
+        idempotentOrderService.order(UUID.randomUUID().toString(), ids[0], ids[1], 1); // max-keys=1 -> first 는 캐시에서 빠진다
+
+        // when
+        Long retried = idempotentOrderService.order(first, ids[0], ids[1], 1);
+
+        // then
+        Assert.assertEquals(orderId, retried);
+        Assert.assertEquals(2, countOrders(ids[0]));
+        Assert.assertEquals(98, stockOf(ids[1]));
+    }
+
+    @Test
+    public void 보관_기간이_지난_키는_지우고_같은_키는_새_주문이_된다() throws Exception {
+        // given
+        Long[] ids = transactionTemplate.execute(status -> createMemberAndBook(100));
+        String expired = UUID.randomUUID().toString();
+        idempotentOrderService.order(expired, ids[0], ids[1], 1);
+        jdbcTemplate.update("update order_idempotency_key set created_at = ? where idempotency_key = ?",
+                LocalDateTime.now().minusDays(2), expired);
+        String fresh = UUID.randomUUID().toString();
+        idempotentOrderService.order(fresh, ids[0], ids[1], 1); // max-keys=1 -> expired 는 캐시에서 빠진다
+
+        // when
+        int deleted = idempotencyKeyCleanupJob.cleanup(LocalDateTime.now().minusDays(1));
+        idempotentOrderService.order(expired, ids[0], ids[1], 1);
+
+        // then
+        Assert.assertEquals(1, deleted);
+        Assert.assertEquals("보관 기간 안의 키는 남는다", 1, countKeys(fresh));
+        Assert.assertEquals("지운 키로 다시 들어온 요청은 새 주문이다", 3, countOrders(ids[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void 너무_긴_키는_거절한다() throws Exception {
+        // given
+        Long[] ids = transactionTemplate.execute(status -> createMemberAndBook(100));
+
+        // when
+        idempotentOrderService.order("k".repeat(OrderIdempotencyKey.MAX_KEY_LENGTH + 1), ids[0], ids[1], 1);
+
+        // then
+        Assert.fail("IllegalArgumentException 이 발생해야 한다.");
+    }
+
+    private int countKeys(String idempotencyKey) {
+        return jdbcTemplate.queryForObject("select count(*) from order_idempotency_key where idempotency_key = ?",
+                Integer.class, idempotencyKey);
+    }
+
+    private int countOrders(Long memberId) {
+        return jdbcTemplate.queryForObject("select count(*) from orders where member_id = ?", Integer.class, memberId);
+    }
+
+    private int stockOf(Long itemId) {
+        return jdbcTemplate.queryForObject("select stock_quantity from item where item_id = ?", Integer.class, itemId);
+    }
+
+    private Long[] createMemberAndBook(int stockQuantity) {
+        Member member = new Member();
+        member.setName("회원" + System.nanoTime());
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        em.persist(member);
+
+        Book book = new Book();
+        book.setName("시골 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(stockQuantity);
+        em.persist(book);
+        return new Long[]{member.getId(), book.getId()};
+    }
+}
@@ -0,0 +1,137 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.archive.ArchivedOrder;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.repository.order.archive.OrderArchiveRepository;
+import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryDto;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class OrderArchiveServiceTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    OrderService orderService;
+
+    @Autowired
+    OrderArchiveService orderArchiveService;
+
+    @Autowired
+    OrderRepository orderRepository;
+
+    @Autowired
+    OrderArchiveRepository orderArchiveRepository;
+
+    @Test
+    public void 오래된_완료주문_보관() throws Exception {
+        // given
+        Member member = createMember();
+        Book book = createBook("시골 JPA", 10000, 10);
+        LocalDateTime longAgo = LocalDateTime.now().minusDays(100);
+
+        Long deliveredId = orderService.order(member.getId(), book.getId(), 1);
+        Order delivered = orderRepository.findOne(deliveredId);
+        delivered.setOrderDate(longAgo);
+        delivered.getDelivery().setStatus(DeliveryStatus.COMP);
+
+        Long readyId = orderService.order(member.getId(), book.getId(), 1);
+        orderRepository.findOne(readyId).setOrderDate(longAgo); // 아직 배송 전
+
+        em.flush();
+
+        // when
+        int archived = orderArchiveService.archiveChunk(LocalDateTime.now().minusDays(90), 100);
+        em.clear();
+
+        // then
+        Assert.assertEquals(1, archived);
+        Assert.assertNull("보관된 주문은 orders 에서 삭제된다", orderRepository.findOne(deliveredId));
+        Assert.assertNotNull("처리가 끝나지 않은 주문은 남아있어야 한다", orderRepository.findOne(readyId));
+        Assert.assertNotNull(em.find(ArchivedOrder.class, deliveredId));
+
+        List<OrderSimpleQueryDto> history = orderArchiveRepository.findOrderDtos(longAgo.minusDays(1), LocalDateTime.now());
+        Assert.assertEquals(1, history.size());
+        Assert.assertEquals("회원1", history.get(0).getName());
+        Assert.assertEquals("서울", history.get(0).getAddress().getCity());
+    }
+
+    @Test
+    public void 보관된_주문도_기간_검색에_나온다() throws Exception {
+        // given
+        Member member = createMember();
+        Book book = createBook("시골 JPA", 10000, 10);
+        LocalDateTime longAgo = LocalDateTime.now().minusDays(100);
+
+        Long archivedId = orderService.order(member.getId(), book.getId(), 2);
+        Order archivedOrder = orderRepository.findOne(archivedId);
+        archivedOrder.setOrderDate(longAgo);
+        archivedOrder.getDelivery().setStatus(DeliveryStatus.COMP);
+        Long hotId = orderService.order(member.getId(), book.getId(), 1);
+        em.flush();
+        orderArchiveService.archiveChunk(LocalDateTime.now().minusDays(90), 100);
+        em.clear();
+
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setMemberId(member.getId());
+        orderSearch.setOrderDateFrom(longAgo.toLocalDate().minusDays(1));
+
+        // when
+        List<Order> orders = orderRepository.search(orderSearch, 10);
+        List<Long> orderIds = orderRepository.findOrderIds(orderSearch);
+
+        // then
+        Assert.assertNull("보관된 주문은 orders 에서 삭제된다", orderRepository.findOne(archivedId));
+        Assert.assertEquals("최신 주문부터 보관된 주문까지", List.of(hotId, archivedId),
+                orders.stream().map(Order::getId).collect(Collectors.toList()));
+        Order archived = orders.get(1);
+        Assert.assertEquals("회원1", archived.getMember().getName());
+        Assert.assertEquals(DeliveryStatus.COMP, archived.getDelivery().getStatus());
+        Assert.assertEquals("서울", archived.getDelivery().getAddress().getCity());
+        Assert.assertEquals(20000, archived.getTotalPrice());
+        Assert.assertEquals("시골 JPA", archived.getOrderItems().get(0).getItem().getName());
+        Assert.assertEquals(List.of(archivedId, hotId), orderIds);
+
+        orderSearch.setOrderDateFrom(LocalDate.now());
+        Assert.assertEquals("기간이 보관 기준일 이후면 hot 테이블만 조회한다", List.of(hotId),
+                orderRepository.search(orderSearch, 10).stream().map(Order::getId).collect(Collectors.toList()));
+    }
+
+    private Book createBook(String name, int price, int stockQuantity) {
+        Book book = new Book();
+        book.setName(name);
+        book.setPrice(price);
+        book.setStockQuantity(stockQuantity);
+        em.persist(book);
+        return book;
+    }
+
+    private Member createMember() {
+        Member member = new Member();
+        member.setName("회원1");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        em.persist(member);
+        return member;
+    }
+}
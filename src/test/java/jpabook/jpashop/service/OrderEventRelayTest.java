@@ -0,0 +1,136 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.OrderEvent;
+import jpabook.jpashop.domain.OrderEventType;
+import jpabook.jpashop.domain.item.Book;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class OrderEventRelayTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    OrderService orderService;
+
+    @Autowired
+    OrderEventService orderEventService;
+
+    @Autowired
+    OrderEventRelay orderEventRelay;
+
+    @Autowired
+    RecordingSink sink;
+
+    @Test
+    public void 주문_이벤트는_순서대로_한번씩_보낸다() throws Exception {
+        // given
+        Member member = createMember();
+        Book book = createBook(10);
+        Long orderId = orderService.order(member.getId(), book.getId(), 2);
+        orderService.cancelOrder(orderId);
+        em.flush();
+        sink.published.clear();
+
+        // when
+        orderEventRelay.relay();
+        em.clear();
+
+        // then
+        Assert.assertEquals(List.of(OrderEventType.ORDER_PLACED, OrderEventType.ORDER_CANCELLED),
+                typesOf(orderId));
+        Assert.assertTrue("보낸 이벤트는 다시 보내지 않는다", orderEventService.findPending(100).isEmpty());
+    }
+
+    @Test
+    public void sink_가_밀리면_받은_만큼만_표시한다() throws Exception {
+        // given
+        Member member = createMember();
+        Book book = createBook(10);
+        Long orderId = orderService.order(member.getId(), book.getId(), 2);
+        orderService.cancelOrder(orderId);
+        em.flush();
+        sink.published.clear();
+        sink.capacity = 1;
+
+        // when
+        orderEventRelay.relay();
+        em.clear();
+        sink.capacity = Integer.MAX_VALUE;
+
+        // then
+        List<OrderEvent> pending = orderEventService.findPending(100);
+        Assert.assertFalse(pending.isEmpty());
+        Assert.assertEquals("받지 못한 이벤트는 다음에 다시 보낸다", OrderEventType.ORDER_CANCELLED,
+                pending.get(pending.size() - 1).getType());
+        Assert.assertTrue("sink 가 밀리면 relay 가 쉰다", orderEventRelay.getBackoffCount() > 0);
+    }
+
+    private List<OrderEventType> typesOf(Long orderId) {
+        List<OrderEventType> types = new ArrayList<>();
+        for (OrderEvent event : sink.published) {
+            if (event.getOrderId().equals(orderId)) {
+                types.add(event.getType());
+            }
+        }
+        return types;
+    }
+
+    private Book createBook(int stockQuantity) {
+        Book book = new Book();
+        book.setName("시골 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(stockQuantity);
+        em.persist(book);
+        return book;
+    }
+
+    private Member createMember() {
+        Member member = new Member();
+        member.setName("회원1");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        em.persist(member);
+        return member;
+    }
+
+    @TestConfiguration
+    static class SinkConfig {
+
+        @Bean
+        @Primary
+        RecordingSink recordingSink() {
+            return new RecordingSink();
+        }
+    }
+
+    static class RecordingSink implements OrderEventSink {
+
+        final List<OrderEvent> published = new ArrayList<>();
+        int capacity = Integer.MAX_VALUE;
+
+        @Override
+        public int publish(List<OrderEvent> events) {
+            int accepted = Math.min(capacity, events.size());
+            published.addAll(events.subList(0, accepted));
+            return accepted;
+        }
+    }
+}
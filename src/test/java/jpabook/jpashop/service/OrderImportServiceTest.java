@@ -0,0 +1,189 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.web.ResponseCache;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * StatelessSession 은 별도 커넥션으로 커밋하므로 @Transactional 없이 별도 DB 로 실행한다
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:import",
+        "jpashop.import.chunk-size=2",
+        "jpashop.import.cache-size=1"
+})
+public class OrderImportServiceTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    OrderImportService orderImportService;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    ResponseCache responseCache;
+
+    @Test
+    public void CSV_주문_가져오기() throws Exception {
+        // given
+        Long[] ids = transactionTemplate.execute(status -> new Long[]{
+                createMember().getId(), createMember().getId(), createBook(10).getId(), createBook(10).getId()});
+        String csv = "memberId,itemId,count\n" +
+                ids[0] + "," + ids[2] + ",1\n" +
+                ids[1] + "," + ids[3] + ",2\n" +
+                ids[0] + "," + ids[3] + ",3\n" +
+                "\n" +
+                ids[1] + "," + ids[2] + ",4\n" +
+                ids[0] + "," + ids[2] + ",5\n";
+
+        // when
+        OrderImportResult result = orderImportService.importOrders("partner-a.csv", new StringReader(csv));
+
+        // then
+        Assert.assertEquals(5, result.getImportedOrders());
+        Assert.assertEquals(0, stockOf(ids[2]));
+        Assert.assertEquals(5, stockOf(ids[3]));
+        Assert.assertEquals(3, countOrders(ids[0]));
+        Assert.assertEquals(2, countOrders(ids[1]));
+        Assert.assertEquals(Integer.valueOf(15), jdbcTemplate.queryForObject(
+                "select sum(oi.order_price * oi.count) / 10000 from order_item oi" +
+                        " join orders o on oi.order_id = o.order_id where o.member_id in (?, ?)",
+                Integer.class, ids[0], ids[1]));
+        Assert.assertTrue(result.getPeakHeapBytes() > 0);
+    }
+
+    @Test
+    public void 실패한_가져오기는_커밋된_다음_줄부터_이어서_한다() throws Exception {
+        // given
+        Long[] ids = transactionTemplate.execute(status -> new Long[]{createMember().getId(), createBook(3).getId()});
+        String csv = ids[0] + "," + ids[1] + ",1\n" +
+                ids[0] + "," + ids[1] + ",1\n" +
+                ids[0] + "," + ids[1] + ",1\n" +
+                ids[0] + "," + ids[1] + ",1\n"; // 두 번째 청크에서 재고 부족
+        try {
+            orderImportService.importOrders("partner-b.csv", new StringReader(csv));
+            Assert.fail("재고 부족 예외가 발생해야 한다.");
+        } catch (NotEnoughStockException e) {
+            // 첫 번째 청크만 커밋된다
+        }
+        Assert.assertEquals(2, countOrders(ids[0]));
+        jdbcTemplate.update("update item set stock_quantity = 2 where item_id = ?", ids[1]);
+
+        // when
+        OrderImportResult result = orderImportService.importOrders("partner-b.csv", new StringReader(csv));
+
+        // then
+        Assert.assertEquals(2, result.getResumedFromLine());
+        Assert.assertEquals(2, result.getImportedOrders());
+        Assert.assertEquals(4, countOrders(ids[0]));
+        Assert.assertEquals(0, stockOf(ids[1]));
+    }
+
+    @Test
+    public void 뒤_청크가_실패해도_커밋된_청크는_캐시를_지운다() throws Exception {
+        // given
+        Long[] ids = transactionTemplate.execute(status -> new Long[]{createMember().getId(), createBook(2).getId()});
+        String csv = ids[0] + "," + ids[1] + ",1\n" +
+                ids[0] + "," + ids[1] + ",1\n" +
+                ids[0] + "," + ids[1] + ",1\n"; // 두 번째 청크에서 재고 부족
+        Set<Class<?>> dependsOn = Set.of(Item.class);
+        responseCache.put("/items", "text/html", "재고 2".getBytes(StandardCharsets.UTF_8), dependsOn,
+                responseCache.version(dependsOn));
+        Assert.assertNotNull(responseCache.get("/items"));
+
+        // when
+        try {
+            orderImportService.importOrders("partner-d.csv", new StringReader(csv));
+            Assert.fail("재고 부족 예외가 발생해야 한다.");
+        } catch (NotEnoughStockException e) {
+            // 첫 번째 청크만 커밋된다
+        }
+
+        // then
+        Assert.assertEquals(0, stockOf(ids[1]));
+        Assert.assertNull("첫 번째 청크가 커밋되면서 재고에 의존하는 응답을 지웠다", responseCache.get("/items"));
+    }
+
+    @Test
+    public void 같은_source_를_동시에_가져오면_먼저_커밋한_쪽만_넣는다() throws Exception {
+        // given
+        Long[] ids = transactionTemplate.execute(status -> new Long[]{createMember().getId(), createBook(10).getId()});
+        String csv = ids[0] + "," + ids[1] + ",1\n" +
+                ids[0] + "," + ids[1] + ",1\n";
+        // 첫 번째 실행이 진행 상황(0줄)을 읽은 뒤, 첫 줄을 읽을 때 두 번째 실행이 끝까지 커밋한다
+        Reader racing = new StringReader(csv) {
+            private boolean raced;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                if (!raced) {
+                    raced = true;
+                    orderImportService.importOrders("partner-c.csv", new StringReader(csv));
+                }
+                return super.read(buffer, offset, length);
+            }
+        };
+
+        // when
+        try {
+            orderImportService.importOrders("partner-c.csv", racing);
+            Assert.fail("다른 가져오기가 커밋한 줄이면 예외가 발생해야 한다.");
+        } catch (IllegalStateException e) {
+            // 청크는 롤백된다
+        }
+
+        // then
+        Assert.assertEquals(2, countOrders(ids[0]));
+        Assert.assertEquals(8, stockOf(ids[1]));
+    }
+
+    private int countOrders(Long memberId) {
+        return jdbcTemplate.queryForObject("select count(*) from orders where member_id = ?", Integer.class, memberId);
+    }
+
+    private int stockOf(Long itemId) {
+        return jdbcTemplate.queryForObject("select stock_quantity from item where item_id = ?", Integer.class, itemId);
+    }
+
+    private Member createMember() {
+        Member member = new Member();
+        member.setName("회원" + System.nanoTime());
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        em.persist(member);
+        return member;
+    }
+
+    private Book createBook(int stockQuantity) {
+        Book book = new Book();
+        book.setName("시골 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(stockQuantity);
+        em.persist(book);
+        return book;
+    }
+}
@@ -1,6 +1,7 @@
 package jpabook.jpashop.service;
 
 import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.DeliveryStatus;
 import jpabook.jpashop.domain.Member;
 import jpabook.jpashop.domain.Order;
 import jpabook.jpashop.domain.OrderStatus;
@@ -17,6 +18,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -92,6 +94,66 @@ public class OrderServiceTest {
 
     }
 
+    @Test
+    public void 주문_일괄취소() throws Exception {
+        // given
+        Member member = createMember();
+        Book book1 = createBook("시골 JPA", 10000, 10);
+        Book book2 = createBook("토비의 봄", 20000, 10);
+
+        Long orderId1 = orderService.order(member.getId(), book1.getId(), 2);
+        Long orderId2 = orderService.order(member.getId(), book1.getId(), 3);
+        Long orderId3 = orderService.order(member.getId(), book2.getId(), 4);
+        orderService.cancelOrder(orderId3); // 이미 취소된 주문
+
+        // when
+        int canceled = orderService.cancelOrders(List.of(orderId1, orderId2, orderId3));
+
+        // then
+        Assert.assertEquals("이미 취소된 주문은 건너뛴다", 2, canceled);
+        Assert.assertEquals(OrderStatus.CANCEL, orderRepository.findOne(orderId1).getStatus());
+        Assert.assertEquals(OrderStatus.CANCEL, orderRepository.findOne(orderId2).getStatus());
+        Assert.assertEquals("상품별 주문 수량 합만큼 재고가 복구되어야 한다", 10,
+                em.find(Book.class, book1.getId()).getStockQuantity());
+        Assert.assertEquals("재고가 두 번 복구되면 안된다", 10,
+                em.find(Book.class, book2.getId()).getStockQuantity());
+    }
+
+    @Test
+    public void 배송_상태가_없는_주문도_일괄취소한다() throws Exception {
+        // given
+        Member member = createMember();
+        Book book = createBook("시골 JPA", 10000, 10);
+
+        Long orderId = orderService.order(member.getId(), book.getId(), 2);
+        orderRepository.findOne(orderId).getDelivery().setStatus(null); // 배송 상태가 생기기 전의 주문
+
+        // when
+        int canceled = orderService.cancelOrders(List.of(orderId));
+
+        // then
+        Assert.assertEquals(1, canceled);
+        Assert.assertEquals(OrderStatus.CANCEL, orderRepository.findOne(orderId).getStatus());
+        Assert.assertEquals(10, em.find(Book.class, book.getId()).getStockQuantity());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void 배송완료_주문_일괄취소_예외() throws Exception {
+        // given
+        Member member = createMember();
+        Book book = createBook("시골 JPA", 10000, 10);
+
+        Long orderId1 = orderService.order(member.getId(), book.getId(), 2);
+        Long orderId2 = orderService.order(member.getId(), book.getId(), 3);
+        orderRepository.findOne(orderId2).getDelivery().setStatus(DeliveryStatus.COMP);
+
+        // when
+        orderService.cancelOrders(List.of(orderId1, orderId2));
+
+        // then
+        fail("배송완료된 주문이 있으면 예외가 발생해야 한다.");
+    }
+
     private Book createBook(String name, int price, int stockQuantity) {
         Book book = new Book();
         book.setName(name);
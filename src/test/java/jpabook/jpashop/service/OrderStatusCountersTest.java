@@ -0,0 +1,93 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.DeliveryStatus;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.domain.item.Book;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * 커밋된 뒤에 카운터가 바뀌는지 보기 위해 @Transactional 을 붙이지 않는다 -> 별도 DB 사용
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:statuscounters")
+public class OrderStatusCountersTest {
+
+    @Autowired
+    OrderStatusCounters orderStatusCounters;
+
+    @Autowired
+    OrderService orderService;
+
+    @Autowired
+    MemberService memberService;
+
+    @Autowired
+    ItemService itemService;
+
+    @Test
+    public void 주문과_취소가_커밋되면_카운터가_바뀐다() throws Exception {
+        // given
+        Long memberId = createMember("카운터회원1");
+        Long itemId = createBook(10000);
+        orderStatusCounters.reconcile();
+        OrderStatusCounts before = orderStatusCounters.snapshot();
+
+        // when
+        Long orderId = orderService.order(memberId, itemId, 2);
+        OrderStatusCounts ordered = orderStatusCounters.snapshot();
+        orderService.cancelOrder(orderId);
+        OrderStatusCounts cancelled = orderStatusCounters.snapshot();
+
+        // then
+        Assert.assertEquals(before.getOrders().get(OrderStatus.ORDER) + 1, (long) ordered.getOrders().get(OrderStatus.ORDER));
+        Assert.assertEquals(before.getDeliveries().get(DeliveryStatus.READY) + 1, (long) ordered.getDeliveries().get(DeliveryStatus.READY));
+        Assert.assertEquals(before.getTodayRevenue() + 20000, ordered.getTodayRevenue());
+
+        Assert.assertEquals(before.getOrders().get(OrderStatus.ORDER), cancelled.getOrders().get(OrderStatus.ORDER));
+        Assert.assertEquals(before.getOrders().get(OrderStatus.CANCEL) + 1, (long) cancelled.getOrders().get(OrderStatus.CANCEL));
+        Assert.assertEquals(before.getTodayRevenue(), cancelled.getTodayRevenue());
+    }
+
+    @Test
+    public void 어긋난_카운터는_DB_값으로_맞춘다() throws Exception {
+        // given
+        Long orderId = orderService.order(createMember("카운터회원2"), createBook(5000), 1);
+        orderStatusCounters.reconcile();
+        OrderStatusCounts actual = orderStatusCounters.snapshot();
+        orderStatusCounters.onStatusChanged(OrderStatusChangedEvent.placed(3, 99999)); // DB 에는 없는 변경
+
+        // when
+        orderStatusCounters.reconcile();
+
+        // then
+        OrderStatusCounts reconciled = orderStatusCounters.snapshot();
+        Assert.assertNotNull(orderId);
+        Assert.assertEquals(actual.getOrders(), reconciled.getOrders());
+        Assert.assertEquals(actual.getDeliveries(), reconciled.getDeliveries());
+        Assert.assertEquals(actual.getTodayRevenue(), reconciled.getTodayRevenue());
+        Assert.assertNotNull(reconciled.getReconciledAt());
+    }
+
+    private Long createMember(String name) {
+        Member member = new Member();
+        member.setName(name);
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        return memberService.join(member);
+    }
+
+    private Long createBook(int price) {
+        Book book = new Book();
+        book.setName("시골 JPA");
+        book.setPrice(price);
+        book.setStockQuantity(10);
+        itemService.saveItem(book);
+        return book.getId();
+    }
+}
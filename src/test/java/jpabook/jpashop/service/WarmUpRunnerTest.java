@@ -0,0 +1,31 @@
+package jpabook.jpashop.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"jpashop.warmup.enabled=true", "jpashop.warmup.iterations=3"})
+public class WarmUpRunnerTest {
+
+    @Autowired
+    WarmUpRunner warmUpRunner;
+
+    @Autowired
+    ApplicationAvailability applicationAvailability;
+
+    @Test
+    public void 기동시_warm_up_후_트래픽을_받는다() throws Exception {
+        Assert.assertEquals(List.of("/api/v4/simple-orders", "/api/v5/orders",
+                        "/api/v6.1/orders", "/order (items)", "/order (members)"),
+                List.copyOf(warmUpRunner.getWarmLatencyMicros().keySet()));
+        Assert.assertEquals(ReadinessState.ACCEPTING_TRAFFIC, applicationAvailability.getReadinessState());
+    }
+}
@@ -0,0 +1,125 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.service.ItemService;
+import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.OrderService;
+import jpabook.jpashop.service.query.ItemNameIndex.Entry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * 커밋된 상품 등록 / 수정이 인덱스에 반영되는지 보기 위해 @Transactional 을 붙이지 않는다 -> 별도 DB 사용
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:autocomplete")
+public class ItemAutocompleteTest {
+
+    @Autowired
+    ItemAutocomplete itemAutocomplete;
+
+    @Autowired
+    ItemService itemService;
+
+    @Autowired
+    MemberService memberService;
+
+    @Autowired
+    OrderService orderService;
+
+    @Test
+    public void 주문_수량이_많은_상품부터_추천한다() throws Exception {
+        // given
+        Long basic = createBook("Autocomplete JPA 기본");
+        Long advanced = createBook("autocomplete JPA 활용");
+        Long spring = createBook("Autocomplete Spring");
+        Long memberId = createMember();
+        orderService.order(memberId, advanced, 3);
+        orderService.order(memberId, spring, 1);
+
+        // when
+        itemAutocomplete.rebuild();
+
+        // then
+        Assert.assertEquals(List.of(advanced, spring, basic), ids(itemAutocomplete.suggest("autocomplete", 10)));
+        Assert.assertEquals(List.of(advanced, basic), ids(itemAutocomplete.suggest("AUTOCOMPLETE jpa", 10)));
+        Assert.assertEquals(List.of(advanced), ids(itemAutocomplete.suggest("autocomplete", 1)));
+    }
+
+    @Test
+    public void 수정된_상품은_다시_만들기_전에도_새_이름으로_찾는다() throws Exception {
+        // given
+        Long itemId = createBook("Rename JPA");
+        itemAutocomplete.rebuild();
+
+        // when
+        itemService.updateItem(itemId, "Rename Querydsl", 10000, 10);
+        Long added = createBook("Rename JPA 2");
+
+        // then
+        Assert.assertEquals(List.of(added), ids(itemAutocomplete.suggest("rename jpa", 10)));
+        Assert.assertEquals(List.of(itemId), ids(itemAutocomplete.suggest("rename q", 10)));
+    }
+
+    @Test
+    public void 구간_최댓값으로_꺼낸_결과는_전부_정렬한_결과와_같다() throws Exception {
+        // given
+        Random random = new Random(42);
+        List<Entry> entries = new ArrayList<>();
+        for (long id = 1; id <= 5_000; id++) {
+            String name = "" + (char) ('a' + random.nextInt(3)) + (char) ('a' + random.nextInt(3)) + random.nextInt(1000);
+            entries.add(new Entry(id, name, random.nextInt(50)));
+        }
+        ItemNameIndex index = ItemNameIndex.build(entries);
+
+        for (String prefix : List.of("a", "ab", "c2", "ba1", "zz")) {
+            // when
+            List<Long> found = index.search(prefix, 20, id -> false).stream()
+                    .map(e -> e.id)
+                    .collect(Collectors.toList());
+
+            // then
+            List<Long> expected = entries.stream()
+                    .filter(e -> e.key.startsWith(prefix))
+                    .sorted(Comparator.comparingLong((Entry e) -> -e.popularity)
+                            .thenComparing((Entry e) -> e.key)
+                            .thenComparingLong(e -> e.id))
+                    .limit(20)
+                    .map(e -> e.id)
+                    .collect(Collectors.toList());
+            Assert.assertEquals(prefix, expected, found);
+        }
+    }
+
+    private List<Long> ids(List<ItemSuggestion> suggestions) {
+        return suggestions.stream().map(ItemSuggestion::getId).collect(Collectors.toList());
+    }
+
+    private Long createBook(String name) {
+        Book book = new Book();
+        book.setName(name);
+        book.setPrice(10000);
+        book.setStockQuantity(10);
+        itemService.saveItem(book);
+        return book.getId();
+    }
+
+    private Long createMember() {
+        Member member = new Member();
+        member.setName("자동완성회원" + System.nanoTime());
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        return memberService.join(member);
+    }
+}
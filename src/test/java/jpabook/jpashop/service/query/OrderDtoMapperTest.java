@@ -0,0 +1,49 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.item.Book;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class OrderDtoMapperTest {
+
+    @Test
+    public void 매퍼가_필요한_연관관계를_알려준다() throws Exception {
+        Assert.assertEquals(List.of("member", "delivery", "orderItems", "orderItems.item"), OrderDtoMapper.ASSOCIATIONS);
+        Assert.assertEquals(List.of("member", "delivery"), SimpleOrderDtoMapper.ASSOCIATIONS);
+    }
+
+    @Test
+    public void 생성자와_같은_결과를_만든다() throws Exception {
+        // given
+        Member member = new Member();
+        member.setName("userA");
+        member.setAddress(new Address("서울", "1", "1111"));
+        Delivery delivery = new Delivery();
+        delivery.setAddress(member.getAddress());
+        Order order = Order.createOrder(member, delivery,
+                OrderItem.createOrderItem(createBook("JPA1 BOOK"), 10000, 1),
+                OrderItem.createOrderItem(createBook("JPA2 BOOK"), 20000, 2));
+
+        // when
+        OrderDto mapped = OrderDtoMapper.map(order);
+
+        // then
+        Assert.assertEquals(new OrderDto(order), mapped);
+        Assert.assertEquals(new SimpleOrderDto(order), SimpleOrderDtoMapper.map(order));
+    }
+
+    private Book createBook(String name) {
+        Book book = new Book();
+        book.setName(name);
+        book.setPrice(10000);
+        book.setStockQuantity(100);
+        return book;
+    }
+}
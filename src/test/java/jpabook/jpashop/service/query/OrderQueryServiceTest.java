@@ -0,0 +1,105 @@
+package jpabook.jpashop.service.query;
+
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.repository.OrderSearch;
+import org.hibernate.Hibernate;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * OSIV off 상태에서 트랜잭션 밖(컨트롤러와 같은 위치)에서 결과를 사용한다
+ * -> @Transactional 을 붙이지 않는다 (InitDb 의 샘플 주문을 조회한다)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class OrderQueryServiceTest {
+
+    @Autowired
+    OrderQueryService orderQueryService;
+
+    @Autowired
+    FieldSelectionCompiler fieldSelectionCompiler;
+
+    @Test
+    public void 트랜잭션_밖에서_DTO를_사용한다() throws Exception {
+        // when
+        List<OrderDto> orders = orderQueryService.ordersV3_page(0, 100);
+
+        // then
+        OrderDto userA = orders.stream()
+                .filter(o -> o.getName().equals("userA"))
+                .findFirst()
+                .orElseThrow();
+        Assert.assertEquals("서울", userA.getAddress().getCity());
+        Assert.assertEquals(List.of("JPA1 BOOK", "JPA2 BOOK"),
+                userA.getOrderItems().stream().map(OrderItemDto::getItemName).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void 엔티티_직접_노출도_트랜잭션_안에서_초기화한다() throws Exception {
+        // when
+        List<Order> orders = orderQueryService.ordersV1();
+
+        // then
+        Assert.assertFalse(orders.isEmpty());
+        for (Order order : orders) {
+            Assert.assertTrue(Hibernate.isInitialized(order.getMember()));
+            Assert.assertTrue(Hibernate.isInitialized(order.getOrderItems()));
+            order.getOrderItems().forEach(orderItem -> Assert.assertTrue(Hibernate.isInitialized(orderItem.getItem())));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void 요청한_필드만_응답한다() throws Exception {
+        // when
+        List<Map<String, Object>> orders = orderQueryService.ordersV3("orderId,status,member.name,orderItems.item.name");
+
+        // then
+        Map<String, Object> userA = orders.stream()
+                .filter(o -> ((Map<String, Object>) o.get("member")).get("name").equals("userA"))
+                .findFirst()
+                .orElseThrow();
+        Assert.assertEquals(List.of("orderId", "status", "member", "orderItems"), List.copyOf(userA.keySet()));
+        Assert.assertEquals(List.of(Map.of("item", Map.of("name", "JPA1 BOOK")), Map.of("item", Map.of("name", "JPA2 BOOK"))),
+                userA.get("orderItems"));
+    }
+
+    @Test
+    public void 필드_목록마다_한번만_컴파일한다() throws Exception {
+        // when
+        FieldSelection selection = fieldSelectionCompiler.compile(Order.class, "orderId, status,member.address.city");
+        FieldSelection same = fieldSelectionCompiler.compile(Order.class, "orderId,status,member.address.city,status");
+
+        // then
+        Assert.assertSame(selection, same);
+        Assert.assertEquals("배송, 주문상품은 조인하지 않는다", List.of("member"), selection.getAssociations());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void 연관관계는_하위_필드를_지정해야_한다() throws Exception {
+        fieldSelectionCompiler.compile(Order.class, "orderId,member");
+    }
+
+    @Test
+    public void 주문_목록_화면_검색() throws Exception {
+        // given
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setMemberName("userB");
+
+        // when
+        List<OrderDto> orders = orderQueryService.findOrders(orderSearch);
+
+        // then
+        Assert.assertEquals(1, orders.size());
+        Assert.assertEquals("SPRING1 BOOK", orders.get(0).getOrderItems().get(0).getItemName());
+    }
+}
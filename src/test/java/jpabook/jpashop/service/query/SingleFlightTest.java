@@ -0,0 +1,83 @@
+package jpabook.jpashop.service.query;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+    SingleFlight singleFlight = new SingleFlight(new SimpleMeterRegistry(), true, 5000);
+
+    @Test
+    public void 같은_키의_동시_조회는_한번만_실행한다() throws Exception {
+        // given
+        int threads = 8;
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // when
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> singleFlight.execute(SingleFlight.key("findOrderDtos"), () -> {
+                loads.incrementAndGet();
+                await(release);
+                return List.of("userA", "userB");
+            })));
+        }
+        while (singleFlight.getCollapsedCount() < threads - 1) {
+            Thread.sleep(10); // 나머지 호출이 leader 를 기다릴 때까지
+        }
+        release.countDown();
+
+        // then
+        List<String> first = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<List<String>> result : results) {
+            Assert.assertSame(first, result.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(threads - 1, singleFlight.getCollapsedCount());
+        executor.shutdown();
+    }
+
+    @Test
+    public void leader_가_timeout_안에_끝나지_않으면_직접_조회한다() throws Exception {
+        // given
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<String> leader = executor.submit(() -> singleFlight.execute(SingleFlight.key("findOrderDtos", 1L), () -> {
+            await(release);
+            return "leader";
+        }));
+        Thread.sleep(100);
+
+        // when
+        String result = singleFlight.execute(SingleFlight.key("findOrderDtos", 1L), Duration.ofMillis(50), () -> "follower");
+
+        // then
+        Assert.assertEquals("follower", result);
+        Assert.assertEquals("다른 인자는 합치지 않는다", "other",
+                singleFlight.execute(SingleFlight.key("findOrderDtos", 2L), () -> "other"));
+        release.countDown();
+        Assert.assertEquals("leader", leader.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package jpabook.jpashop.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class AdmissionControlInterceptorTest {
+
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void 회원별_요청은_burst_만큼만_받는다() throws Exception {
+        // given
+        AdmissionControlInterceptor interceptor = interceptor(1);
+
+        // when
+        int admitted = 0;
+        for (int i = 0; i < 20; i++) {
+            if (interceptor.preHandle(get("1", "10.0.0.1"), new MockHttpServletResponse(), null)) {
+                admitted++;
+            }
+        }
+        MockHttpServletResponse otherMember = new MockHttpServletResponse();
+        boolean otherAdmitted = interceptor.preHandle(get("2", "10.0.0.1"), otherMember, null);
+
+        // then
+        Assert.assertEquals(10, admitted);
+        Assert.assertTrue("다른 회원은 영향을 받지 않는다", otherAdmitted);
+        Assert.assertEquals(10.0, shed("member"), 0);
+    }
+
+    @Test
+    public void 클라이언트는_요청한_IP_로_구분한다() throws Exception {
+        // given
+        AdmissionControlInterceptor interceptor = interceptor(1, 5, 100000, 10);
+
+        // when
+        int admitted = 0;
+        for (int i = 0; i < 20; i++) {
+            MockHttpServletRequest request = get(String.valueOf(i), "10.0.0.1");
+            request.addHeader("X-Client-Id", "client-" + i); // 헤더를 바꿔도 새 버킷을 받지 못한다
+            if (interceptor.preHandle(request, new MockHttpServletResponse(), null)) {
+                admitted++;
+            }
+        }
+
+        // then
+        Assert.assertEquals(5, admitted);
+        Assert.assertEquals(15.0, shed("client"), 0);
+    }
+
+    @Test
+    public void 숫자가_아닌_회원_id_는_버킷을_만들지_않고_400() throws Exception {
+        // given
+        AdmissionControlInterceptor interceptor = interceptor(1);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // when
+        boolean admitted = interceptor.preHandle(get("abc", "10.0.0.1"), response, null);
+        int sameMember = 0;
+        for (String memberId : new String[]{"1", "01", "001", " 1"}) {
+            for (int i = 0; i < 5; i++) {
+                if (interceptor.preHandle(get(memberId, "10.0.0.1"), new MockHttpServletResponse(), null)) {
+                    sameMember++;
+                }
+            }
+        }
+
+        // then
+        Assert.assertFalse(admitted);
+        Assert.assertEquals(400, response.getStatus());
+        Assert.assertEquals("모양만 다른 같은 회원 id 는 버킷 하나를 같이 쓴다", 10, sameMember);
+    }
+
+    @Test
+    public void 버킷이_가득_차면_새_키는_거절한다() {
+        // given
+        RateLimiter limiter = new RateLimiter(1, 10, 2);
+        long now = System.nanoTime();
+
+        // when
+        boolean first = limiter.tryAcquire("1", now);
+        boolean second = limiter.tryAcquire("2", now);
+        boolean third = limiter.tryAcquire("3", now);
+        boolean afterIdle = limiter.tryAcquire("3", now + 10_000_000_000L); // 앞의 버킷이 다 채워진 뒤
+
+        // then
+        Assert.assertTrue(first && second);
+        Assert.assertFalse(third);
+        Assert.assertTrue(afterIdle);
+        Assert.assertEquals(1, limiter.size());
+    }
+
+    @Test
+    public void 동시_쓰기요청이_limit_을_넘으면_503() throws Exception {
+        // given
+        AdmissionControlInterceptor interceptor = interceptor(2);
+        MockHttpServletRequest first = post("1", "10.0.0.1");
+        MockHttpServletRequest second = post("2", "10.0.0.2");
+        interceptor.preHandle(first, new MockHttpServletResponse(), null);
+        interceptor.preHandle(second, new MockHttpServletResponse(), null);
+
+        // when
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        boolean admitted = interceptor.preHandle(post("3", "10.0.0.3"), response, null);
+
+        // then
+        Assert.assertFalse(admitted);
+        Assert.assertEquals(503, response.getStatus());
+        Assert.assertEquals(1.0, shed("concurrency"), 0);
+
+        interceptor.afterCompletion(first, new MockHttpServletResponse(), null, null);
+        Assert.assertTrue("처리가 끝나면 다시 받는다",
+                interceptor.preHandle(post("4", "10.0.0.4"), new MockHttpServletResponse(), null));
+    }
+
+    @Test
+    public void 응답이_느리면_limit_을_줄인다() throws Exception {
+        // given
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 20, 1_000_000, 5);
+
+        // when
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire();
+            limiter.release(50_000_000);
+        }
+        int slow = limiter.getLimit();
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire();
+            limiter.release(100_000);
+        }
+
+        // then
+        Assert.assertEquals(9, slow);
+        Assert.assertEquals(10, limiter.getLimit());
+    }
+
+    private AdmissionControlInterceptor interceptor(int concurrencyLimit) {
+        return interceptor(1000, 1000, 100000, concurrencyLimit);
+    }
+
+    private AdmissionControlInterceptor interceptor(double clientPermitsPerSecond, int clientBurst, int maxBuckets,
+                                                    int concurrencyLimit) {
+        return new AdmissionControlInterceptor(meterRegistry, true,
+                1, 10, clientPermitsPerSecond, clientBurst, maxBuckets,
+                concurrencyLimit, 1, concurrencyLimit, 200, 50);
+    }
+
+    private double shed(String reason) {
+        return meterRegistry.counter("jpashop.admission.shed", "reason", reason).count();
+    }
+
+    private MockHttpServletRequest get(String memberId, String clientIp) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/orders");
+        request.setParameter("memberId", memberId);
+        request.setRemoteAddr(clientIp);
+        return request;
+    }
+
+    private MockHttpServletRequest post(String memberId, String clientIp) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/order");
+        request.setParameter("memberId", memberId);
+        request.setRemoteAddr(clientIp);
+        return request;
+    }
+}
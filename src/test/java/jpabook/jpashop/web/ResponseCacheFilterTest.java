@@ -0,0 +1,82 @@
+package jpabook.jpashop.web;
+
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.service.MemberService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * 커밋된 회원 가입이 캐시를 지우는지 보기 위해 @Transactional 을 붙이지 않는다 -> 별도 DB 사용
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:responsecache",
+        "jpashop.response-cache.enabled=true"
+})
+@AutoConfigureMockMvc
+public class ResponseCacheFilterTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    MemberService memberService;
+
+    @Test
+    public void 같은_요청은_압축해둔_응답을_보낸다() throws Exception {
+        // given
+        MockHttpServletResponse miss = perform("/api/v4/simple-orders?case=gzip", null);
+
+        // when
+        MockHttpServletResponse hit = perform("/api/v4/simple-orders?case=gzip", "gzip, deflate");
+
+        // then
+        Assert.assertEquals("MISS", miss.getHeader(ResponseCacheFilter.CACHE_HEADER));
+        Assert.assertEquals("HIT", hit.getHeader(ResponseCacheFilter.CACHE_HEADER));
+        Assert.assertEquals("gzip", hit.getHeader(HttpHeaders.CONTENT_ENCODING));
+        Assert.assertEquals(miss.getContentAsString(StandardCharsets.UTF_8), gunzip(hit.getContentAsByteArray()));
+    }
+
+    @Test
+    public void 회원_가입이_커밋되면_회원_목록_캐시를_지운다() throws Exception {
+        // given
+        perform("/api/v2/members?case=invalidate", null);
+        Assert.assertEquals("HIT", perform("/api/v2/members?case=invalidate", null).getHeader(ResponseCacheFilter.CACHE_HEADER));
+
+        // when
+        Member member = new Member();
+        member.setName("캐시회원");
+        memberService.join(member);
+
+        // then
+        MockHttpServletResponse response = perform("/api/v2/members?case=invalidate", null);
+        Assert.assertEquals("MISS", response.getHeader(ResponseCacheFilter.CACHE_HEADER));
+        Assert.assertTrue(response.getContentAsString(StandardCharsets.UTF_8).contains("캐시회원"));
+    }
+
+    private MockHttpServletResponse perform(String url, String acceptEncoding) throws Exception {
+        return mockMvc.perform(acceptEncoding == null ? get(url) : get(url).header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding))
+                .andReturn()
+                .getResponse();
+    }
+
+    private String gunzip(byte[] body) throws Exception {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
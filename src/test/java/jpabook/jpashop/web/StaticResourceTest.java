@@ -0,0 +1,68 @@
+package jpabook.jpashop.web;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class StaticResourceTest {
+
+    private static final Pattern BOOTSTRAP = Pattern.compile("/css/bootstrap\\.min-[0-9a-f]{32}\\.css");
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Test
+    public void 화면은_내용_해시가_붙은_css_를_링크한다() throws Exception {
+        // when
+        String html = mockMvc.perform(get("/")).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        // then
+        Assert.assertTrue(html, BOOTSTRAP.matcher(html).find());
+        Assert.assertFalse(html.contains("href=\"/css/bootstrap.min.css\""));
+    }
+
+    @Test
+    public void 해시가_붙은_css_는_미리_압축한_파일을_immutable_로_보낸다() throws Exception {
+        // given
+        String html = mockMvc.perform(get("/")).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        Matcher matcher = BOOTSTRAP.matcher(html);
+        Assert.assertTrue(matcher.find());
+
+        // when
+        MockHttpServletResponse plain = mockMvc.perform(get(matcher.group())).andReturn().getResponse();
+        MockHttpServletResponse gzip = mockMvc.perform(get(matcher.group())
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")).andReturn().getResponse();
+
+        // then
+        Assert.assertEquals(200, gzip.getStatus());
+        Assert.assertEquals("max-age=31536000, public, immutable", gzip.getHeader(HttpHeaders.CACHE_CONTROL));
+        Assert.assertEquals("gzip", gzip.getHeader(HttpHeaders.CONTENT_ENCODING));
+        Assert.assertTrue(gzip.getContentAsByteArray().length < plain.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void 해시가_없는_css_는_매번_재검증한다() throws Exception {
+        // when
+        MockHttpServletResponse response = mockMvc.perform(get("/css/bootstrap.min.css")).andReturn().getResponse();
+
+        // then
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("no-cache", response.getHeader(HttpHeaders.CACHE_CONTROL));
+    }
+}